@@ -0,0 +1,100 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import csv.CSVReader;
+import csv.CsvAggregator;
+
+/**
+* Class AggregateBenchmark
+* Throughput of a count and a sum grouped by one column (one operation = one file):
+* CsvAggregator against a HashMap of the cells of getNextRow(). The number of groups
+* goes from a few (the table stays in the cache) to one per 10 rows.
+* @version
+*/
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AggregateBenchmark {
+
+	@Param({"100000"})
+	public int rows;
+
+	@Param({"10", "10000"})
+	public int groups;
+
+	private File file;
+
+	private File output;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Random random = new Random(42);
+		List<List<String>> data = new ArrayList<List<String>>();
+		for (int i = 0; i < rows; i++) {
+			data.add(Arrays.asList(String.valueOf(i), "customer" + random.nextInt(groups),
+					String.valueOf(random.nextInt(1000000) / 100.0), "note, " + i, String.valueOf(random.nextInt(1000))));
+		}
+		file = CsvData.write(data);
+		output = File.createTempFile("bench", ".csv");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+		output.delete();
+	}
+
+	@Benchmark
+	public long csvAggregator() throws IOException {
+		CsvAggregator aggregator = new CsvAggregator("UTF-8");
+		aggregator.groupBy(1);
+		aggregator.count();
+		aggregator.sum(4);
+		return aggregator.aggregate(file.getPath(), output.getPath());
+	}
+
+	@Benchmark
+	public Map<String, long[]> hashMap() throws IOException {
+		CSVReader reader = new CSVReader(file.getPath(), "UTF-8");
+		Map<String, long[]> sums = new HashMap<String, long[]>();
+		List<String> cells;
+		while ((cells = reader.getNextRow()) != null) {
+			long[] sum = sums.get(cells.get(1));
+			if (sum == null) {
+				sum = new long[2];
+				sums.put(cells.get(1), sum);
+			}
+			sum[0]++;
+			sum[1] += Long.parseLong(cells.get(4));
+		}
+		reader.close();
+		return sums;
+	}
+}
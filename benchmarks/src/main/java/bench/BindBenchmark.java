@@ -0,0 +1,123 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import csv.CSVReader;
+import csv.CsvRow;
+import csv.RowBinder;
+
+/**
+* Class BindBenchmark
+* Throughput of reading a file of typed columns into objects (one operation = one file):
+* RowBinder against hand-written mappers from the cells of getNextRow() and from a CsvRow.
+* @version
+*/
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BindBenchmark {
+
+	/**
+	 * A row of the file
+	 */
+	public static class Order {
+		int id;
+		String customer;
+		double price;
+		long quantity;
+		String status;
+	}
+
+	@Param({"100000"})
+	public int rows;
+
+	private File file;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Random random = new Random(42);
+		List<List<String>> data = new ArrayList<List<String>>();
+		data.add(Arrays.asList("id", "customer", "price", "quantity", "status"));
+		for (int i = 0; i < rows; i++) {
+			data.add(Arrays.asList(String.valueOf(i), "customer" + random.nextInt(10000),
+					String.valueOf(random.nextInt(1000000) / 100.0), String.valueOf(random.nextInt(1000)),
+					random.nextBoolean() ? "OPEN" : "CLOSED"));
+		}
+		file = CsvData.write(data);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public void rowBinder(Blackhole bh) throws IOException {
+		CSVReader reader = new CSVReader(file.getPath(), "UTF-8");
+		RowBinder<Order> binder = reader.bind(Order.class);
+		Order order;
+		while ((order = reader.readObject(binder)) != null) {
+			bh.consume(order);
+		}
+		reader.close();
+	}
+
+	@Benchmark
+	public void handWritten(Blackhole bh) throws IOException {
+		CSVReader reader = new CSVReader(file.getPath(), "UTF-8");
+		reader.getNextRow();
+		List<String> cells;
+		while ((cells = reader.getNextRow()) != null) {
+			Order order = new Order();
+			order.id = Integer.parseInt(cells.get(0));
+			order.customer = cells.get(1);
+			order.price = Double.parseDouble(cells.get(2));
+			order.quantity = Long.parseLong(cells.get(3));
+			order.status = cells.get(4);
+			bh.consume(order);
+		}
+		reader.close();
+	}
+
+	@Benchmark
+	public void handWrittenCsvRow(Blackhole bh) throws IOException {
+		CSVReader reader = new CSVReader(file.getPath(), "UTF-8");
+		reader.getNextRow();
+		CsvRow row = new CsvRow();
+		while (reader.getNextRow(row)) {
+			Order order = new Order();
+			order.id = row.getInt(0);
+			order.customer = row.toString(1);
+			order.price = row.getDouble(2);
+			order.quantity = row.getLong(3);
+			order.status = row.toString(4);
+			bh.consume(order);
+		}
+		reader.close();
+	}
+}
@@ -0,0 +1,131 @@
+package bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+* Class CsvData
+* Synthetic CSV data for the benchmarks. The data is the same for the same shape and size.
+* @version
+*/
+
+public class CsvData {
+
+	/**
+	 * Shapes of data
+	 *   NARROW:    5 short ASCII cells per row
+	 *   WIDE:      100 short ASCII cells per row
+	 *   QUOTED:    most cells contain SEPARATOR or quotes, so they are enclosed in double quotation
+	 *   MULTILINE: cells with line-feeds inside double quotation
+	 *   MULTIBYTE: Vietnamese and Japanese text like test.csv
+	 *   TEXT:      long ASCII cells of words, special chars are rare
+	 */
+	public enum Shape {
+		NARROW, WIDE, QUOTED, MULTILINE, MULTIBYTE, TEXT
+	}
+
+	private static final String[] WORDS = {
+		"alpha", "beta", "gamma", "delta", "status", "ACTIVE", "closed", "1234", "98.6", "x"
+	};
+
+	private static final String[] MULTIBYTE_WORDS = {
+		"Không có việc gì khó", "chỉ sợ lòng ko bền", "dụng văn dung hòa", "dụng võ tề chỉnh",
+		"東京都", "日本語のテキスト", "ありがとう", "漢字"
+	};
+
+	/**
+	 * Create the cells of the rows, the cells are values (not in CSV format)
+	 *
+	 * @param shape  shape of data
+	 * @param rows   number of rows
+	 * @return the rows
+	 */
+	public static List<List<String>> values(Shape shape, int rows) {
+		Random random = new Random(42);
+		int columns = (shape == Shape.WIDE) ? 100 : 5;
+		List<List<String>> data = new ArrayList<List<String>>(rows);
+		for (int r = 0; r < rows; r++) {
+			List<String> cells = new ArrayList<String>(columns);
+			cells.add(Integer.toString(r));
+			for (int c = 1; c < columns; c++) {
+				cells.add(value(shape, random));
+			}
+			data.add(cells);
+		}
+		return data;
+	}
+
+	private static String value(Shape shape, Random random) {
+		String word = WORDS[random.nextInt(WORDS.length)];
+		switch (shape) {
+		case QUOTED:
+			switch (random.nextInt(3)) {
+			case 0:
+				return word + ", " + WORDS[random.nextInt(WORDS.length)];
+			case 1:
+				return "say \"" + word + "\"";
+			default:
+				return word;
+			}
+		case MULTILINE:
+			return random.nextInt(3) == 0 ? word + "\n" + WORDS[random.nextInt(WORDS.length)] + "\nend" : word;
+		case MULTIBYTE:
+			return MULTIBYTE_WORDS[random.nextInt(MULTIBYTE_WORDS.length)];
+		case TEXT:
+			StringBuilder text = new StringBuilder(word);
+			for (int i = 0; i < 40; i++) {
+				text.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+			}
+			return text.toString();
+		default:
+			return word;
+		}
+	}
+
+	/**
+	 * Convert a value to CSV format
+	 */
+	static String format(String value) {
+		if (value.indexOf('"') < 0 && value.indexOf(',') < 0 && value.indexOf('\n') < 0) {
+			return value;
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	/**
+	 * Write the rows to a new temporary UTF-8 file, the file is deleted on exit
+	 *
+	 * @param data  the rows
+	 * @return the file
+	 * @throws IOException
+	 */
+	public static File write(List<List<String>> data) throws IOException {
+		File file = File.createTempFile("bench", ".csv");
+		file.deleteOnExit();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			StringBuilder line = new StringBuilder();
+			for (List<String> cells : data) {
+				line.setLength(0);
+				for (int i = 0; i < cells.size(); i++) {
+					if (i > 0) {
+						line.append(',');
+					}
+					line.append(format(cells.get(i)));
+				}
+				line.append('\n');
+				writer.write(line.toString());
+			}
+		}
+		finally {
+			writer.close();
+		}
+		return file;
+	}
+}
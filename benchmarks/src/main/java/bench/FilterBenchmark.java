@@ -0,0 +1,113 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import csv.CSVReader;
+import csv.CsvRow;
+import csv.RowFilter;
+
+/**
+* Class FilterBenchmark
+* Throughput of keeping the rows with status "ACTIVE" (about 5% of the rows, one operation = one file):
+* a RowFilter of the reader against a test on the cells of getNextRow() and of a CsvRow.
+* The status is the first column, so a rejected row is only scanned for its end.
+* @version
+*/
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilterBenchmark {
+
+	@Param({"100000"})
+	public int rows;
+
+	private File file;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Random random = new Random(42);
+		List<List<String>> data = new ArrayList<List<String>>();
+		for (int i = 0; i < rows; i++) {
+			data.add(Arrays.asList((random.nextInt(20) == 0) ? "ACTIVE" : "CLOSED", String.valueOf(i),
+					"customer" + random.nextInt(10000), String.valueOf(random.nextInt(1000000) / 100.0),
+					"note, " + random.nextInt(1000), String.valueOf(random.nextInt(1000))));
+		}
+		file = CsvData.write(data);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public void rowFilter(Blackhole bh) throws IOException {
+		CSVReader reader = new CSVReader(file.getPath(), "UTF-8");
+		reader.setFilter(RowFilter.equalTo(0, "ACTIVE"));
+		List<String> cells;
+		while ((cells = reader.getNextRow()) != null) {
+			bh.consume(cells);
+		}
+		reader.close();
+	}
+
+	@Benchmark
+	public void rowFilterCsvRow(Blackhole bh) throws IOException {
+		CSVReader reader = new CSVReader(file.getPath(), "UTF-8");
+		reader.setFilter(RowFilter.equalTo(0, "ACTIVE"));
+		CsvRow row = new CsvRow();
+		while (reader.getNextRow(row)) {
+			bh.consume(row.length(1));
+		}
+		reader.close();
+	}
+
+	@Benchmark
+	public void cellsTest(Blackhole bh) throws IOException {
+		CSVReader reader = new CSVReader(file.getPath(), "UTF-8");
+		List<String> cells;
+		while ((cells = reader.getNextRow()) != null) {
+			if (cells.get(0).equals("ACTIVE")) {
+				bh.consume(cells);
+			}
+		}
+		reader.close();
+	}
+
+	@Benchmark
+	public void csvRowTest(Blackhole bh) throws IOException {
+		CSVReader reader = new CSVReader(file.getPath(), "UTF-8");
+		CsvRow row = new CsvRow();
+		while (reader.getNextRow(row)) {
+			if (row.equals(0, "ACTIVE")) {
+				bh.consume(row.length(1));
+			}
+		}
+		reader.close();
+	}
+}
@@ -0,0 +1,124 @@
+package bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import csv.CSVReader;
+import csv.CSVWriter;
+import csv.CsvJoiner;
+
+/**
+* Class JoinBenchmark
+* Throughput of joining a fact file with a dimension file by one column (one operation = one join):
+* CsvJoiner against a HashMap of the cells of getNextRow() of the dimension. With budgetMB=1
+* the dimension does not fit and CsvJoiner spills both files to partitions.
+* @version
+*/
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JoinBenchmark {
+
+	@Param({"200000"})
+	public int facts;
+
+	@Param({"50000"})
+	public int dimensions;
+
+	@Param({"1", "64"})
+	public int budgetMB;
+
+	private File factFile;
+
+	private File dimensionFile;
+
+	private File output;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Random random = new Random(42);
+		List<List<String>> data = new ArrayList<List<String>>();
+		for (int i = 0; i < dimensions; i++) {
+			data.add(Arrays.asList("customer" + i, "name " + random.nextInt(100000), "city, " + random.nextInt(500),
+					String.valueOf(random.nextInt(100))));
+		}
+		dimensionFile = CsvData.write(data);
+		data.clear();
+		for (int i = 0; i < facts; i++) {
+			// about 10% of the facts have no customer
+			data.add(Arrays.asList(String.valueOf(i), "customer" + random.nextInt(dimensions + dimensions / 10),
+					String.valueOf(random.nextInt(1000000) / 100.0), String.valueOf(random.nextInt(1000))));
+		}
+		factFile = CsvData.write(data);
+		output = File.createTempFile("bench", ".csv");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		factFile.delete();
+		dimensionFile.delete();
+		output.delete();
+	}
+
+	@Benchmark
+	public long csvJoiner() throws IOException {
+		CsvJoiner joiner = new CsvJoiner("UTF-8", budgetMB * 1024L * 1024);
+		joiner.on(new int[] {1}, new int[] {0});
+		return joiner.join(factFile.getPath(), dimensionFile.getPath(), output.getPath());
+	}
+
+	@Benchmark
+	public long hashMap() throws IOException {
+		CSVReader reader = new CSVReader(dimensionFile.getPath(), "UTF-8");
+		Map<String, List<String>> dimension = new HashMap<String, List<String>>();
+		List<String> cells;
+		while ((cells = reader.getNextRow()) != null) {
+			dimension.put(cells.get(0), cells.subList(1, cells.size()));
+		}
+		reader.close();
+
+		// CSVWriter appends to the file
+		new FileOutputStream(output).close();
+		CSVWriter writer = new CSVWriter(output.getPath(), "UTF-8");
+		reader = new CSVReader(factFile.getPath(), "UTF-8");
+		long rows = 0;
+		while ((cells = reader.getNextRow()) != null) {
+			List<String> match = dimension.get(cells.get(1));
+			if (match != null) {
+				List<String> joined = new ArrayList<String>(cells);
+				joined.addAll(match);
+				writer.appendRow(joined);
+				rows++;
+			}
+		}
+		reader.close();
+		writer.close();
+		return rows;
+	}
+}
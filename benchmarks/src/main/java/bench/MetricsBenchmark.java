@@ -0,0 +1,114 @@
+package bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import csv.CSVReader;
+import csv.CSVWriter;
+import csv.CsvMetrics;
+import csv.CsvRow;
+
+/**
+* Class MetricsBenchmark
+* Cost of the metrics (see CsvMetrics): the same reads and writes as ReadBenchmark and
+* WriteBenchmark with the metrics off and on. With the metrics off the scores should be
+* the same as ReadBenchmark.csvReader and WriteBenchmark.csvWriter.
+* @version
+*/
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+	@Param({"NARROW", "QUOTED", "MULTILINE"})
+	public CsvData.Shape shape;
+
+	@Param({"100000"})
+	public int rows;
+
+	@Param({"false", "true"})
+	public boolean metricsOn;
+
+	private List<List<String>> data;
+
+	private File file;
+
+	private File output;
+
+	private CsvMetrics metrics;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		data = CsvData.values(shape, rows);
+		file = CsvData.write(data);
+		output = File.createTempFile("bench", ".csv");
+		output.deleteOnExit();
+		metrics = metricsOn ? new CsvMetrics() : null;
+	}
+
+	/**
+	 * CSVWriter appends to the file, so the file is emptied before each operation
+	 */
+	@Setup(Level.Invocation)
+	public void emptyFile() throws IOException {
+		new FileOutputStream(output).close();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+		output.delete();
+	}
+
+	@Benchmark
+	public void csvReader(Blackhole bh) throws IOException {
+		CSVReader reader = new CSVReader(file.getPath(), "UTF-8");
+		reader.setMetrics(metrics);
+		List<String> cells;
+		while ((cells = reader.getNextRow()) != null) {
+			bh.consume(cells);
+		}
+		reader.close();
+	}
+
+	@Benchmark
+	public void csvReaderCsvRow(Blackhole bh) throws IOException {
+		CSVReader reader = new CSVReader(file.getPath(), "UTF-8");
+		reader.setMetrics(metrics);
+		CsvRow row = new CsvRow();
+		while (reader.getNextRow(row)) {
+			bh.consume(row.length(0));
+		}
+		reader.close();
+	}
+
+	@Benchmark
+	public void csvWriter() throws IOException {
+		CSVWriter writer = new CSVWriter(output.getPath(), "UTF-8");
+		writer.setMetrics(metrics);
+		writer.appendRows(data);
+		writer.close();
+	}
+}
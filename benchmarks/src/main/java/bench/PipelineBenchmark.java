@@ -0,0 +1,135 @@
+package bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import csv.CSVReader;
+import csv.CSVWriter;
+import csv.CsvPipeline;
+import csv.RowTransform;
+
+/**
+* Class PipelineBenchmark
+* Throughput of reading, transforming and writing a file (one operation = one file), the transform
+* waits 1 ms every 100 rows like a lookup in a remote service: a loop on the calling thread against
+* a CsvPipeline with a blocking stage of some threads and a CPU stage.
+* @version
+*/
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+	@Param({"20000"})
+	public int rows;
+
+	@Param({"1", "32"})
+	public int lookupThreads;
+
+	private File file;
+
+	private File output;
+
+	/**
+	 * Waits 1 ms every 100 rows
+	 */
+	private static final RowTransform LOOKUP = new RowTransform() {
+		public List<String> transform(List<String> cells) throws IOException {
+			if (cells.get(1).endsWith("00")) {
+				try {
+					Thread.sleep(1);
+				}
+				catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+			return cells;
+		}
+	};
+
+	/**
+	 * Upper case of the third cell
+	 */
+	private static final RowTransform UPPER = new RowTransform() {
+		public List<String> transform(List<String> cells) {
+			List<String> transformed = new ArrayList<String>(cells);
+			transformed.set(2, cells.get(2).toUpperCase());
+			return transformed;
+		}
+	};
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Random random = new Random(42);
+		List<List<String>> data = new ArrayList<List<String>>();
+		for (int i = 0; i < rows; i++) {
+			data.add(Arrays.asList("ACTIVE", String.valueOf(i), "customer" + random.nextInt(10000),
+					String.valueOf(random.nextInt(1000000) / 100.0), "note, " + random.nextInt(1000)));
+		}
+		file = CsvData.write(data);
+		output = File.createTempFile("bench", ".csv");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+		output.delete();
+	}
+
+	@Benchmark
+	public long sequential() throws IOException {
+		CSVReader reader = new CSVReader(file.getPath(), "UTF-8");
+		// CSVWriter appends to the file
+		new FileOutputStream(output).close();
+		CSVWriter writer = new CSVWriter(output.getPath(), "UTF-8");
+		long count = 0;
+		List<String> cells;
+		while ((cells = reader.getNextRow()) != null) {
+			writer.appendRow(UPPER.transform(LOOKUP.transform(cells)));
+			count++;
+		}
+		reader.close();
+		writer.close();
+		return count;
+	}
+
+	@Benchmark
+	public long pipeline() throws IOException {
+		CSVReader reader = new CSVReader(file.getPath(), "UTF-8");
+		// CSVWriter appends to the file
+		new FileOutputStream(output).close();
+		CSVWriter writer = new CSVWriter(output.getPath(), "UTF-8");
+		CsvPipeline pipeline = new CsvPipeline(reader, writer);
+		pipeline.setBatchRows(256);
+		pipeline.addBlockingStage("lookup", LOOKUP, lookupThreads);
+		pipeline.addStage("upper", UPPER, 1);
+		long count = pipeline.run();
+		reader.close();
+		writer.close();
+		return count;
+	}
+}
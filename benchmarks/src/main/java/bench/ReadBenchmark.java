@@ -0,0 +1,105 @@
+package bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import csv.CSVReader;
+import csv.CsvRow;
+import csv.MappedCSVReader;
+
+/**
+* Class ReadBenchmark
+* Throughput of reading a whole file (one operation = one file).
+* Use "-prof gc" for the allocation rate (gc.alloc.rate.norm is per file).
+* @version
+*/
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReadBenchmark {
+
+	@Param({"NARROW", "WIDE", "QUOTED", "MULTILINE", "MULTIBYTE"})
+	public CsvData.Shape shape;
+
+	@Param({"1000", "100000"})
+	public int rows;
+
+	private File file;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		file = CsvData.write(CsvData.values(shape, rows));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public void csvReader(Blackhole bh) throws IOException {
+		CSVReader reader = new CSVReader(file.getPath(), "UTF-8");
+		List<String> cells;
+		while ((cells = reader.getNextRow()) != null) {
+			bh.consume(cells);
+		}
+		reader.close();
+	}
+
+	@Benchmark
+	public void csvReaderCsvRow(Blackhole bh) throws IOException {
+		CSVReader reader = new CSVReader(file.getPath(), "UTF-8");
+		CsvRow row = new CsvRow();
+		while (reader.getNextRow(row)) {
+			bh.consume(row.length(0));
+		}
+		reader.close();
+	}
+
+	@Benchmark
+	public void mappedCsvReader(Blackhole bh) throws IOException {
+		MappedCSVReader reader = new MappedCSVReader(file.getPath());
+		List<String> cells;
+		while ((cells = reader.getNextRow()) != null) {
+			bh.consume(cells);
+		}
+		reader.close();
+	}
+
+	@Benchmark
+	public void commonsCsv(Blackhole bh) throws IOException {
+		Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+		CSVParser parser = CSVFormat.DEFAULT.parse(reader);
+		for (CSVRecord record : parser) {
+			bh.consume(record);
+		}
+		parser.close();
+	}
+}
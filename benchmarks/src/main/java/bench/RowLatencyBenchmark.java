@@ -0,0 +1,93 @@
+package bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import csv.CSVReader;
+
+/**
+* Class RowLatencyBenchmark
+* Latency of reading one row (one operation = one row), the file is opened again at EOF.
+* @version
+*/
+
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RowLatencyBenchmark {
+
+	@Param({"NARROW", "WIDE", "QUOTED", "MULTILINE", "MULTIBYTE"})
+	public CsvData.Shape shape;
+
+	private File file;
+
+	private CSVReader reader;
+
+	private CSVParser parser;
+
+	private Iterator<CSVRecord> records;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		file = CsvData.write(CsvData.values(shape, 100000));
+		reader = new CSVReader(file.getPath(), "UTF-8");
+		openParser();
+	}
+
+	private void openParser() throws IOException {
+		parser = CSVFormat.DEFAULT.parse(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		records = parser.iterator();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		reader.close();
+		parser.close();
+		file.delete();
+	}
+
+	@Benchmark
+	public List<String> csvReader() throws IOException {
+		List<String> cells = reader.getNextRow();
+		if (cells == null) {
+			reader.close();
+			reader = new CSVReader(file.getPath(), "UTF-8");
+			cells = reader.getNextRow();
+		}
+		return cells;
+	}
+
+	@Benchmark
+	public CSVRecord commonsCsv() throws IOException {
+		if (!records.hasNext()) {
+			parser.close();
+			openParser();
+		}
+		return records.next();
+	}
+}
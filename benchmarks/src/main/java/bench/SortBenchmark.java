@@ -0,0 +1,79 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import csv.CsvSorter;
+
+/**
+* Class SortBenchmark
+* Throughput of sorting a file by a LONG and a STRING key (one operation = one file). A small memory
+* budget sorts the file in many runs merged from run files, a large one sorts it in memory.
+* @version
+*/
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SortBenchmark {
+
+	@Param({"100000"})
+	public int rows;
+
+	@Param({"1", "256"})
+	public int budgetMB;
+
+	private File file;
+
+	private File output;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Random random = new Random(42);
+		List<List<String>> data = new ArrayList<List<String>>();
+		for (int i = 0; i < rows; i++) {
+			data.add(Arrays.asList(String.valueOf(random.nextInt(1000000)), "customer" + random.nextInt(10000),
+					String.valueOf(random.nextInt(1000000) / 100.0), "note, " + i, String.valueOf(random.nextInt(1000))));
+		}
+		file = CsvData.write(data);
+		output = File.createTempFile("bench", ".csv");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+		output.delete();
+	}
+
+	@Benchmark
+	public long csvSorter() throws IOException {
+		CsvSorter sorter = new CsvSorter("UTF-8", budgetMB * 1024L * 1024, ForkJoinPool.commonPool(),
+				ForkJoinPool.getCommonPoolParallelism());
+		sorter.addKey(0, CsvSorter.KeyType.LONG, false);
+		sorter.addKey(1, CsvSorter.KeyType.STRING, false);
+		return sorter.sort(file.getPath(), output.getPath());
+	}
+}
@@ -0,0 +1,97 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import csv.CSVWriter;
+
+/**
+* Class WriteBenchmark
+* Throughput of writing all the rows to a new file (one operation = one file).
+* Use "-prof gc" for the allocation rate.
+* @version
+*/
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WriteBenchmark {
+
+	@Param({"NARROW", "WIDE", "QUOTED", "MULTILINE", "MULTIBYTE"})
+	public CsvData.Shape shape;
+
+	@Param({"1000", "100000"})
+	public int rows;
+
+	private List<List<String>> data;
+
+	private File file;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		data = CsvData.values(shape, rows);
+		file = File.createTempFile("bench", ".csv");
+		file.deleteOnExit();
+	}
+
+	/**
+	 * CSVWriter appends to the file, so the file is emptied before each operation
+	 */
+	@Setup(Level.Invocation)
+	public void emptyFile() throws IOException {
+		new FileOutputStream(file).close();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public void csvWriter() throws IOException {
+		CSVWriter writer = new CSVWriter(file.getPath(), "UTF-8");
+		writer.appendRows(data);
+		writer.close();
+	}
+
+	@Benchmark
+	public void csvWriterParallel() throws IOException {
+		CSVWriter writer = new CSVWriter(file.getPath(), "UTF-8");
+		writer.appendRowsParallel(data);
+		writer.close();
+	}
+
+	@Benchmark
+	public void commonsCsv() throws IOException {
+		CSVPrinter printer = new CSVPrinter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")),
+				CSVFormat.DEFAULT.withRecordSeparator('\n'));
+		for (List<String> cells : data) {
+			printer.printRecord(cells);
+		}
+		printer.close();
+	}
+}
@@ -0,0 +1,126 @@
+package csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bench.CsvData;
+
+/**
+* Class ScanBenchmark
+* Speed of finding the special bytes (SEPARATOR, quote, CR, LF) of a file in memory:
+* 8 bytes at a time (SWAR) against one byte at a time, and the rows of MappedCSVReader
+* without decoding the cells. The "bytes" counter is the scanned bytes per second.
+* It is in package csv because ByteScanner is not public.
+* @version
+*/
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScanBenchmark {
+
+	@Param({"NARROW", "MULTIBYTE", "TEXT"})
+	public CsvData.Shape shape;
+
+	@Param({"100000"})
+	public int rows;
+
+	private File file;
+
+	private ByteBuffer data;
+
+	/**
+	 * Number of scanned bytes, reported per second
+	 */
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Counters {
+
+		public long bytes;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			bytes = 0;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		file = CsvData.write(CsvData.values(shape, rows));
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			data = ByteBuffer.allocateDirect((int) in.length()).order(ByteOrder.LITTLE_ENDIAN);
+			in.getChannel().read(data);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public int swar(Counters counters) {
+		int limit = data.capacity();
+		int count = 0;
+		for (int p = ByteScanner.indexOfSpecial(data, 0, limit); p < limit;
+				p = ByteScanner.indexOfSpecial(data, p + 1, limit)) {
+			count++;
+		}
+		counters.bytes += limit;
+		return count;
+	}
+
+	@Benchmark
+	public int scalar(Counters counters) {
+		int limit = data.capacity();
+		int count = 0;
+		for (int p = ByteScanner.indexOfSpecialScalar(data, 0, limit); p < limit;
+				p = ByteScanner.indexOfSpecialScalar(data, p + 1, limit)) {
+			count++;
+		}
+		counters.bytes += limit;
+		return count;
+	}
+
+	@Benchmark
+	public int mappedRows(Counters counters) throws IOException {
+		MappedCSVReader reader = new MappedCSVReader(file.getPath());
+		int cells = 0;
+		try {
+			while (reader.nextRow()) {
+				cells += reader.getCellCount();
+			}
+		}
+		finally {
+			reader.close();
+		}
+		counters.bytes += file.length();
+		return cells;
+	}
+}
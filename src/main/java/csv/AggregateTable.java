@@ -0,0 +1,660 @@
+package csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+* Class AggregateTable
+* The groups of CsvAggregator: an open-addressing hash table of primitive arrays. The keys of
+* all the groups are in one char buffer, a group is an int, its aggregates are longs
+* (the bits of a double for a decimal value). A row is looked up from the chars of its CsvRow,
+* the key is only copied when the group is new.
+*
+* When the table is larger than its memory budget, its groups are spilled to one of PARTITIONS
+* files by the high bits of the hash of their key and the table is emptied. The groups of a
+* partition are then loaded and merged again by CsvAggregator, partition by partition.
+* @version
+*/
+
+final class AggregateTable {
+
+	/**
+	 * aggregate functions
+	 */
+	static final int COUNT = 0;
+	static final int SUM = 1;
+	static final int MIN = 2;
+	static final int MAX = 3;
+
+	/**
+	 * states of an aggregate of a group: no number yet, a long, the bits of a double
+	 */
+	static final byte NONE = 0;
+	static final byte LONG = 1;
+	static final byte DOUBLE = 2;
+
+	/**
+	 * number of spill partitions, the partition of a group is the top PARTITION_BITS of its hash
+	 */
+	static final int PARTITION_BITS = 6;
+	static final int PARTITIONS = 1 << PARTITION_BITS;
+
+	/**
+	 * number of cells of a key
+	 */
+	private final int keyCells;
+
+	/**
+	 * function of each aggregate
+	 */
+	private final int[] functions;
+
+	/**
+	 * cell of the row of each aggregate, -1 for COUNT
+	 */
+	private final int[] valueCells;
+
+	private final long memoryBudget;
+
+	private final File tempDirectory;
+
+	/**
+	 * group + 1 of each slot, 0 for an empty slot
+	 */
+	private int[] slots = new int[1024];
+
+	private int mask = slots.length - 1;
+
+	/**
+	 * number of groups
+	 */
+	int groupCount;
+
+	/**
+	 * chars of the keys: cell c of group g is keyChars[keyBounds[g * keyCells + c], keyBounds[g * keyCells + c + 1])
+	 */
+	private char[] keyChars = new char[4096];
+	private int charCount;
+	private int[] keyBounds = new int[513];
+
+	private int[] hashes = new int[512];
+
+	/**
+	 * position of the first row of each group in the file, the groups are written in this order
+	 */
+	private long[] firsts = new long[512];
+
+	/**
+	 * value and state of each aggregate of each group
+	 */
+	private final long[][] values;
+	private final byte[][] states;
+
+	/**
+	 * key being looked up: cell c is keyBuf[c][keyStart[c], keyEnd[c])
+	 */
+	private final char[][] keyBuf;
+	private final int[] keyStart;
+	private final int[] keyEnd;
+
+	/**
+	 * unquoted chars of the key cells enclosed in double quotation
+	 */
+	private char[] unquoted = new char[256];
+
+	/**
+	 * spill files of the partitions, null until the table spills
+	 */
+	private File[] spillFiles;
+	private DataOutputStream[] spillOutputs;
+
+	private byte[] spillBytes = new byte[1024];
+
+	/**
+	 * @param keyCells       number of cells of a key, the first cells of the rows
+	 * @param functions      the function of each aggregate
+	 * @param valueCells     the cell of the rows of each aggregate, -1 for COUNT
+	 * @param memoryBudget   max size of the table before it spills
+	 * @param tempDirectory  directory of the spill files, null for the default temporary directory
+	 */
+	AggregateTable(int keyCells, int[] functions, int[] valueCells, long memoryBudget, File tempDirectory) {
+		this.keyCells = keyCells;
+		this.functions = functions;
+		this.valueCells = valueCells;
+		this.memoryBudget = memoryBudget;
+		this.tempDirectory = tempDirectory;
+		values = new long[functions.length][512];
+		states = new byte[functions.length][512];
+		keyBuf = new char[keyCells][];
+		keyStart = new int[keyCells];
+		keyEnd = new int[keyCells];
+		keyBounds = new int[512 * Math.max(keyCells, 1) + 1];
+	}
+
+	/**
+	 * @return the number of bytes of the table in memory (about)
+	 */
+	long size() {
+		return 2L * charCount + 4L * slots.length + (4L * keyCells + 12L + 9L * functions.length) * groupCount;
+	}
+
+	/**
+	 * @return true if some groups are spilled
+	 */
+	boolean spilled() {
+		return spillFiles != null;
+	}
+
+	/**
+	 * Add a row to its group
+	 *
+	 * @param row    the key cells then the value cells
+	 * @param first  position of the row in the file
+	 */
+	void add(CsvRow row, long first) throws IOException {
+		int pos = 0;
+		char[] buf = row.buffer();
+		for (int c = 0; c < keyCells; c++) {
+			int start = row.start(c);
+			int end = row.end(c);
+			if (end - start >= 2 && buf[start] == '"' && buf[end - 1] == '"') {
+				// the value of the cell: without the enclosing double quotation and with single quotes
+				if (unquoted.length < pos + end - start) {
+					unquoted = Arrays.copyOf(unquoted, Math.max(unquoted.length * 2, pos + end - start));
+					for (int k = 0; k < c; k++) {
+						if (keyBuf[k] != buf) {
+							keyBuf[k] = unquoted;
+						}
+					}
+				}
+				keyStart[c] = pos;
+				for (int i = start + 1; i < end - 1; i++) {
+					char ch = buf[i];
+					unquoted[pos++] = ch;
+					if (ch == '"' && i + 1 < end - 1 && buf[i + 1] == '"') {
+						i++;
+					}
+				}
+				keyBuf[c] = unquoted;
+				keyEnd[c] = pos;
+			}
+			else {
+				keyBuf[c] = buf;
+				keyStart[c] = start;
+				keyEnd[c] = end;
+			}
+		}
+		int g = findOrAdd(keyHash(), first);
+		for (int a = 0; a < functions.length; a++) {
+			if (functions[a] == COUNT) {
+				values[a][g]++;
+				continue;
+			}
+			int cell = valueCells[a];
+			int start = row.start(cell);
+			int end = row.end(cell);
+			if (start == end) {
+				continue;
+			}
+			if (isLong(buf, start, end)) {
+				combine(a, g, LONG, NumberParser.parseLong(buf, start, end));
+			}
+			else if (startsLikeNumber(buf, start, end)) {
+				try {
+					double value = NumberParser.parseDouble(buf, start, end);
+					combine(a, g, DOUBLE, Double.doubleToRawLongBits(value));
+				}
+				catch (NumberFormatException e) {
+					// a cell which is not a number is not aggregated
+				}
+			}
+		}
+		if (size() > memoryBudget) {
+			spill();
+		}
+	}
+
+	/**
+	 * @return true if the cell is a long of at most 18 digits, so it is parsed without overflow
+	 */
+	private static boolean isLong(char[] buf, int start, int end) {
+		if (end - start >= 2 && buf[start] == '"' && buf[end - 1] == '"') {
+			start++;
+			end--;
+		}
+		if (start < end && (buf[start] == '-' || buf[start] == '+')) {
+			start++;
+		}
+		int len = end - start;
+		if (len == 0 || len > 18) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			char c = buf[i];
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return false if the cell does not start like a number, so most texts are skipped without an exception
+	 */
+	private static boolean startsLikeNumber(char[] buf, int start, int end) {
+		int i = (buf[start] == '"') ? start + 1 : start;
+		if (i >= end) {
+			return false;
+		}
+		char c = buf[i];
+		return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.';
+	}
+
+	/**
+	 * Combine a number with an aggregate of a group
+	 */
+	private void combine(int a, int g, byte state, long value) {
+		byte current = states[a][g];
+		if (current == NONE) {
+			states[a][g] = state;
+			values[a][g] = value;
+			return;
+		}
+		long old = values[a][g];
+		switch (functions[a]) {
+		case SUM:
+			if (current == LONG && state == LONG) {
+				long sum = old + value;
+				if (((old ^ sum) & (value ^ sum)) >= 0) {
+					values[a][g] = sum;
+					return;
+				}
+			}
+			// a decimal number or an overflow: the sum becomes a double
+			states[a][g] = DOUBLE;
+			values[a][g] = Double.doubleToRawLongBits(toDouble(current, old) + toDouble(state, value));
+			break;
+		case MIN:
+		case MAX:
+			int c = (current == LONG && state == LONG) ? Long.compare(value, old)
+					: Double.compare(toDouble(state, value), toDouble(current, old));
+			if ((functions[a] == MIN) ? c < 0 : c > 0) {
+				states[a][g] = state;
+				values[a][g] = value;
+			}
+			break;
+		default:
+			values[a][g] += value;
+		}
+	}
+
+	private static double toDouble(byte state, long value) {
+		return (state == LONG) ? value : Double.longBitsToDouble(value);
+	}
+
+	/**
+	 * @return the hash of the key being looked up
+	 */
+	private int keyHash() {
+		int h = 0;
+		for (int c = 0; c < keyCells; c++) {
+			char[] buf = keyBuf[c];
+			for (int i = keyStart[c]; i < keyEnd[c]; i++) {
+				h = 31 * h + buf[i];
+			}
+			h = 31 * h + ',';
+		}
+		// spread the bits: the low bits index the slots, the high bits the partitions
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	/**
+	 * Find the group of the key being looked up, add it if it is new
+	 *
+	 * @param first  position of the first row of a new group
+	 * @return the group
+	 */
+	private int findOrAdd(int hash, long first) {
+		int slot = hash & mask;
+		int entry;
+		while ((entry = slots[slot]) != 0) {
+			int g = entry - 1;
+			if (hashes[g] == hash && keyEquals(g)) {
+				if (first < firsts[g]) {
+					firsts[g] = first;
+				}
+				return g;
+			}
+			slot = (slot + 1) & mask;
+		}
+		int g = groupCount;
+		ensureGroups(g + 1);
+		int bound = g * keyCells;
+		for (int c = 0; c < keyCells; c++) {
+			int len = keyEnd[c] - keyStart[c];
+			if (charCount + len > keyChars.length) {
+				keyChars = Arrays.copyOf(keyChars, Math.max(keyChars.length * 2, charCount + len));
+			}
+			System.arraycopy(keyBuf[c], keyStart[c], keyChars, charCount, len);
+			charCount += len;
+			keyBounds[++bound] = charCount;
+		}
+		hashes[g] = hash;
+		firsts[g] = first;
+		for (int a = 0; a < functions.length; a++) {
+			values[a][g] = 0;
+			states[a][g] = NONE;
+		}
+		slots[slot] = g + 1;
+		groupCount++;
+		if (groupCount * 2 > slots.length) {
+			rehash(slots.length * 2);
+		}
+		return g;
+	}
+
+	private boolean keyEquals(int g) {
+		int bound = g * keyCells;
+		for (int c = 0; c < keyCells; c++) {
+			int start = keyBounds[bound + c];
+			int len = keyBounds[bound + c + 1] - start;
+			int keyPos = keyStart[c];
+			if (keyEnd[c] - keyPos != len) {
+				return false;
+			}
+			char[] buf = keyBuf[c];
+			for (int i = 0; i < len; i++) {
+				if (keyChars[start + i] != buf[keyPos + i]) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Make room for n groups
+	 */
+	private void ensureGroups(int n) {
+		if (n <= hashes.length) {
+			return;
+		}
+		int length = hashes.length * 2;
+		hashes = Arrays.copyOf(hashes, length);
+		firsts = Arrays.copyOf(firsts, length);
+		keyBounds = Arrays.copyOf(keyBounds, length * Math.max(keyCells, 1) + 1);
+		for (int a = 0; a < functions.length; a++) {
+			values[a] = Arrays.copyOf(values[a], length);
+			states[a] = Arrays.copyOf(states[a], length);
+		}
+	}
+
+	private void rehash(int capacity) {
+		slots = new int[capacity];
+		mask = capacity - 1;
+		for (int g = 0; g < groupCount; g++) {
+			int slot = hashes[g] & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = g + 1;
+		}
+	}
+
+	/**
+	 * Remove all the groups
+	 */
+	private void clear() {
+		Arrays.fill(slots, 0);
+		groupCount = 0;
+		charCount = 0;
+	}
+
+	/**
+	 * Set the key being looked up to the key of a group of another table
+	 */
+	private void lookUp(AggregateTable table, int g) {
+		int bound = g * keyCells;
+		for (int c = 0; c < keyCells; c++) {
+			keyBuf[c] = table.keyChars;
+			keyStart[c] = table.keyBounds[bound + c];
+			keyEnd[c] = table.keyBounds[bound + c + 1];
+		}
+	}
+
+	/**
+	 * Move the groups of another table into this table, the spilled groups of the other table stay in its files
+	 */
+	void merge(AggregateTable table) throws IOException {
+		for (int g = 0; g < table.groupCount; g++) {
+			lookUp(table, g);
+			int target = findOrAdd(table.hashes[g], table.firsts[g]);
+			for (int a = 0; a < functions.length; a++) {
+				byte state = table.states[a][g];
+				if (functions[a] == COUNT) {
+					values[a][target] += table.values[a][g];
+				}
+				else if (state != NONE) {
+					combine(a, target, state, table.values[a][g]);
+				}
+			}
+			if (size() > memoryBudget) {
+				spill();
+			}
+		}
+		table.clear();
+	}
+
+	/**
+	 * Write the groups to their partition files and empty the table
+	 */
+	void spill() throws IOException {
+		if (spillFiles == null) {
+			spillFiles = new File[PARTITIONS];
+			spillOutputs = new DataOutputStream[PARTITIONS];
+		}
+		for (int g = 0; g < groupCount; g++) {
+			int p = hashes[g] >>> (32 - PARTITION_BITS);
+			DataOutputStream out = spillOutputs[p];
+			if (out == null) {
+				File file = File.createTempFile("csvgroup", ".spill", tempDirectory);
+				file.deleteOnExit();
+				spillFiles[p] = file;
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+				spillOutputs[p] = out;
+			}
+			out.writeInt(hashes[g]);
+			out.writeLong(firsts[g]);
+			int bound = g * keyCells;
+			for (int c = 0; c < keyCells; c++) {
+				int start = keyBounds[bound + c];
+				int len = keyBounds[bound + c + 1] - start;
+				out.writeInt(len);
+				if (spillBytes.length < len * 2) {
+					spillBytes = new byte[Math.max(spillBytes.length * 2, len * 2)];
+				}
+				for (int i = 0; i < len; i++) {
+					char ch = keyChars[start + i];
+					spillBytes[2 * i] = (byte) (ch >>> 8);
+					spillBytes[2 * i + 1] = (byte) ch;
+				}
+				out.write(spillBytes, 0, len * 2);
+			}
+			for (int a = 0; a < functions.length; a++) {
+				out.writeByte(states[a][g]);
+				out.writeLong(values[a][g]);
+			}
+		}
+		clear();
+	}
+
+	/**
+	 * Spill the groups left and close the spill files
+	 *
+	 * @return the spill file of each partition, null for an empty partition
+	 */
+	File[] finishSpill() throws IOException {
+		spill();
+		IOException error = null;
+		for (DataOutputStream out : spillOutputs) {
+			if (out == null) {
+				continue;
+			}
+			try {
+				out.close();
+			}
+			catch (IOException e) {
+				error = e;
+			}
+		}
+		if (error != null) {
+			deleteSpill();
+			throw error;
+		}
+		return spillFiles;
+	}
+
+	/**
+	 * Delete the spill files
+	 */
+	void deleteSpill() {
+		if (spillFiles == null) {
+			return;
+		}
+		for (int p = 0; p < PARTITIONS; p++) {
+			if (spillOutputs[p] != null) {
+				try {
+					spillOutputs[p].close();
+				}
+				catch (IOException e) {
+					// the file is deleted
+				}
+			}
+			if (spillFiles[p] != null) {
+				spillFiles[p].delete();
+			}
+		}
+	}
+
+	/**
+	 * Merge the groups of a spill file into this table, the table must not spill
+	 */
+	void load(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+		try {
+			char[] chars = new char[256];
+			while (true) {
+				int hash;
+				try {
+					hash = in.readInt();
+				}
+				catch (EOFException e) {
+					break;
+				}
+				long first = in.readLong();
+				int pos = 0;
+				for (int c = 0; c < keyCells; c++) {
+					int len = in.readInt();
+					if (spillBytes.length < len * 2) {
+						spillBytes = new byte[Math.max(spillBytes.length * 2, len * 2)];
+					}
+					in.readFully(spillBytes, 0, len * 2);
+					if (chars.length < pos + len) {
+						chars = Arrays.copyOf(chars, Math.max(chars.length * 2, pos + len));
+					}
+					keyStart[c] = pos;
+					for (int i = 0; i < len; i++) {
+						chars[pos++] = (char) (((spillBytes[2 * i] & 0xFF) << 8) | (spillBytes[2 * i + 1] & 0xFF));
+					}
+					keyEnd[c] = pos;
+				}
+				for (int c = 0; c < keyCells; c++) {
+					keyBuf[c] = chars;
+				}
+				int g = findOrAdd(hash, first);
+				for (int a = 0; a < functions.length; a++) {
+					byte state = in.readByte();
+					long value = in.readLong();
+					if (functions[a] == COUNT) {
+						values[a][g] += value;
+					}
+					else if (state != NONE) {
+						combine(a, g, state, value);
+					}
+				}
+			}
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return a value in CSV format, to be written unchanged by CSVWriter.appendRow()
+	 */
+	static String toCell(String value) {
+		return CSVWriter.normalizeCell(value);
+	}
+
+	/**
+	 * Write the groups in the order of their first row: the key cells, then the aggregates
+	 * (an empty cell for an aggregate without number)
+	 *
+	 * @return the number of groups written
+	 */
+	int write(CSVWriter writer) throws IOException {
+		Integer[] order = new Integer[groupCount];
+		boolean sorted = true;
+		for (int g = 0; g < groupCount; g++) {
+			order[g] = g;
+			sorted &= (g == 0 || firsts[g - 1] <= firsts[g]);
+		}
+		if (!sorted) {
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					return Long.compare(firsts[a], firsts[b]);
+				}
+			});
+		}
+		List<String> cells = new ArrayList<String>(keyCells + functions.length);
+		for (int g : order) {
+			cells.clear();
+			int bound = g * keyCells;
+			for (int c = 0; c < keyCells; c++) {
+				int start = keyBounds[bound + c];
+				cells.add(toCell(new String(keyChars, start, keyBounds[bound + c + 1] - start)));
+			}
+			for (int a = 0; a < functions.length; a++) {
+				long value = values[a][g];
+				byte state = states[a][g];
+				if (functions[a] == COUNT || state == LONG) {
+					cells.add(toCell(Long.toString(value)));
+				}
+				else if (state == DOUBLE) {
+					cells.add(toCell(Double.toString(Double.longBitsToDouble(value))));
+				}
+				else {
+					cells.add("");
+				}
+			}
+			writer.appendRow(cells);
+		}
+		return groupCount;
+	}
+}
@@ -0,0 +1,258 @@
+package csv;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+* Class AsyncCSVWriter
+* This class lets many threads append rows to one CSVWriter.
+* A producer only puts the row in a lock-free ring buffer, one background thread
+* takes the rows, formats them with the CSVWriter and writes them to the file by groups:
+* the CSVWriter is flushed after flushRows rows or when the oldest row not flushed is
+* older than the flush interval.
+* The rows are written in the order they are put in the buffer.
+* @version
+*/
+
+public class AsyncCSVWriter {
+
+	/**
+	 * What appendRow() does when the ring buffer is full
+	 *   BLOCK: wait until there is room
+	 *   DROP:  drop the row and return false
+	 *   FAIL:  throw an IOException
+	 */
+	public enum Backpressure {
+		BLOCK, DROP, FAIL
+	}
+
+	/**
+	 * Default number of rows of the ring buffer
+	 */
+	public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+	/**
+	 * Default number of rows written before a flush
+	 */
+	public static final int DEFAULT_FLUSH_ROWS = 4096;
+
+	/**
+	 * Default max time (ms) between a row is appended and it is flushed
+	 */
+	public static final long DEFAULT_FLUSH_INTERVAL = 10;
+
+	/**
+	 * time (ns) a producer waits before checking again if the buffer has room
+	 */
+	private static final long BLOCK_WAIT_NANOS = 50 * 1000;
+
+	private final CSVWriter writer;
+
+	private final MpscRingBuffer<List<String>> buffer;
+
+	private final Backpressure backpressure;
+
+	private final int flushRows;
+
+	private final long flushIntervalNanos;
+
+	private final Thread consumer;
+
+	/**
+	 * true if the consumer thread is parked waiting for rows
+	 */
+	private volatile boolean consumerWaiting;
+
+	private volatile boolean closed;
+
+	/**
+	 * number of producers in appendRow(): the consumer thread stops only when the writer is closed,
+	 * no producer is in appendRow() and the buffer is empty, so a row accepted by appendRow() is written
+	 */
+	private final AtomicInteger producers = new AtomicInteger();
+
+	/**
+	 * error of the consumer thread, thrown to the producers and by close();
+	 * an unchecked error of the writer is wrapped in an IOException
+	 */
+	private volatile IOException error;
+
+	private final AtomicLong droppedRows = new AtomicLong();
+
+	/**
+	 * Constructs AsyncCSVWriter with the default capacity and flush policy, producers wait when the buffer is full
+	 *
+	 * @param writer  the writer of the file, it is only used by the background thread
+	 */
+	public AsyncCSVWriter(CSVWriter writer) {
+		this(writer, DEFAULT_CAPACITY, Backpressure.BLOCK, DEFAULT_FLUSH_ROWS, DEFAULT_FLUSH_INTERVAL);
+	}
+
+	/**
+	 * Constructs AsyncCSVWriter
+	 *
+	 * @param writer         the writer of the file, it is only used by the background thread
+	 * @param capacity       number of rows of the ring buffer (rounded up to a power of 2)
+	 * @param backpressure   what appendRow() does when the buffer is full
+	 * @param flushRows      number of rows written before a flush
+	 * @param flushInterval  max time (ms) between a row is appended and it is flushed
+	 */
+	public AsyncCSVWriter(CSVWriter writer, int capacity, Backpressure backpressure, int flushRows, long flushInterval) {
+		this.writer = writer;
+		this.buffer = new MpscRingBuffer<List<String>>(capacity);
+		this.backpressure = backpressure;
+		this.flushRows = Math.max(flushRows, 1);
+		this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(flushInterval, 1));
+		this.consumer = new Thread(new Runnable() {
+			public void run() {
+				consume();
+			}
+		}, "AsyncCSVWriter");
+		this.consumer.setDaemon(true);
+		this.consumer.start();
+	}
+
+	/**
+	 * Append a row. The list must not be changed after this call, the row is formatted later.
+	 *
+	 * @param cells  a string array which includes all the cell of a row, null for an empty line like CSVWriter.appendRow()
+	 * @return false if the row is dropped (Backpressure.DROP)
+	 * @throws IOException if the writer is closed or failed, or if the buffer is full (Backpressure.FAIL)
+	 */
+	public boolean appendRow(List<String> cells) throws IOException {
+		producers.incrementAndGet();
+		try {
+			checkOpen();
+			if (cells == null) {
+				// null is the empty slot of the ring buffer
+				cells = Collections.emptyList();
+			}
+			while (!buffer.offer(cells)) {
+				switch (backpressure) {
+				case DROP:
+					droppedRows.incrementAndGet();
+					return false;
+				case FAIL:
+					throw new IOException("Ring buffer of " + buffer.capacity() + " rows is full");
+				default:
+					wakeConsumer();
+					LockSupport.parkNanos(this, BLOCK_WAIT_NANOS);
+					checkOpen();
+				}
+			}
+		}
+		finally {
+			if (producers.decrementAndGet() == 0 && closed) {
+				wakeConsumer();
+			}
+		}
+		if (consumerWaiting) {
+			wakeConsumer();
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of rows dropped because the buffer was full
+	 */
+	public long getDroppedRows() {
+		return droppedRows.get();
+	}
+
+	private void checkOpen() throws IOException {
+		if (error != null) {
+			throw error;
+		}
+		if (closed) {
+			throw new IOException("Writer is closed");
+		}
+	}
+
+	private void wakeConsumer() {
+		LockSupport.unpark(consumer);
+	}
+
+	/**
+	 * Loop of the background thread
+	 */
+	private void consume() {
+		int pending = 0;		// rows written but not flushed
+		long firstPending = 0;	// time the first pending row was written
+		try {
+			while (true) {
+				List<String> cells = buffer.poll();
+				if (cells != null) {
+					writer.appendRow(cells);
+					if (pending++ == 0) {
+						firstPending = System.nanoTime();
+					}
+					if (pending >= flushRows) {
+						writer.flush();
+						pending = 0;
+					}
+					continue;
+				}
+
+				// no row published, a producer which has seen the writer open may still publish one
+				if (closed && producers.get() == 0 && buffer.isEmpty()) {
+					break;
+				}
+				long wait = flushIntervalNanos;
+				if (pending > 0) {
+					wait = firstPending + flushIntervalNanos - System.nanoTime();
+					if (wait <= 0) {
+						writer.flush();
+						pending = 0;
+						continue;
+					}
+				}
+				consumerWaiting = true;
+				if (buffer.isEmpty() && (!closed || producers.get() > 0)) {
+					LockSupport.parkNanos(this, wait);
+				}
+				consumerWaiting = false;
+			}
+			writer.close();
+		}
+		catch (Throwable e) {
+			error = (e instanceof IOException) ? (IOException) e : new IOException("Background writer failed", e);
+			try {
+				writer.close();
+			}
+			catch (Throwable ignore) {
+				// the first error is kept
+			}
+		}
+	}
+
+	/**
+	 * Write all the rows in the buffer and close the writer.
+	 * A row appended by another thread during close() is either written or rejected with an IOException.
+	 *
+	 * @throws IOException the error of the background thread if any
+	 */
+	public void close() throws IOException {
+		closed = true;
+		wakeConsumer();
+		boolean interrupted = false;
+		while (consumer.isAlive()) {
+			try {
+				consumer.join();
+			}
+			catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package csv;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+* Class ByteScanner
+* Find the next special byte (SEPARATOR, quote, CR or LF) of UTF-8 CSV data 8 bytes at a time.
+* A long of 8 bytes is compared with the 4 special bytes at once (SWAR): for each special byte b,
+* (x - 0x01..01) & ~x & 0x80..80 with x = word ^ (b * 0x01..01) has the high bit of the first byte
+* equal to b set. Bytes after the first match may be reported wrongly, so only the lowest byte is used.
+* The bytes of multibyte UTF-8 chars are all >= 0x80, they never match.
+* @version
+*/
+
+final class ByteScanner {
+
+	private static final long ONES = 0x0101010101010101L;
+
+	private static final long HIGHS = 0x8080808080808080L;
+
+	private static final long SEPARATORS = ONES * ',';
+
+	private static final long QUOTES = ONES * '"';
+
+	private static final long CRS = ONES * '\r';
+
+	private static final long LINE_FEEDS = ONES * '\n';
+
+	private ByteScanner() {
+	}
+
+	/**
+	 * Find the next special byte, 8 bytes at a time
+	 *
+	 * @param buf    the data, read with absolute gets
+	 * @param from   index of the first byte
+	 * @param limit  index after the last byte
+	 * @return index of the first SEPARATOR, quote, CR or LF, limit if there is none
+	 */
+	static int indexOfSpecial(ByteBuffer buf, int from, int limit) {
+		boolean bigEndian = buf.order() == ByteOrder.BIG_ENDIAN;
+		int p = from;
+		for (; p + 8 <= limit; p += 8) {
+			long word = buf.getLong(p);
+			if (bigEndian) {
+				// the first byte must be the lowest
+				word = Long.reverseBytes(word);
+			}
+			long found = zeroBytes(word ^ SEPARATORS) | zeroBytes(word ^ QUOTES)
+					| zeroBytes(word ^ CRS) | zeroBytes(word ^ LINE_FEEDS);
+			if (found != 0) {
+				return p + (Long.numberOfTrailingZeros(found) >>> 3);
+			}
+		}
+		return indexOfSpecialScalar(buf, p, limit);
+	}
+
+	/**
+	 * Find the next special byte, one byte at a time
+	 *
+	 * @param buf    the data, read with absolute gets
+	 * @param from   index of the first byte
+	 * @param limit  index after the last byte
+	 * @return index of the first SEPARATOR, quote, CR or LF, limit if there is none
+	 */
+	static int indexOfSpecialScalar(ByteBuffer buf, int from, int limit) {
+		for (int p = from; p < limit; p++) {
+			byte b = buf.get(p);
+			if (b == ',' || b == '"' || b == '\r' || b == '\n') {
+				return p;
+			}
+		}
+		return limit;
+	}
+
+	/**
+	 * @return the high bit of each zero byte set, exact up to the first zero byte
+	 */
+	private static long zeroBytes(long x) {
+		return (x - ONES) & ~x & HIGHS;
+	}
+}
@@ -0,0 +1,53 @@
+package csv;
+
+import java.io.IOException;
+
+/**
+* Class CSVFormatException
+* A cell of a CSV file has not the expected format.
+* The row and the column of the cell are given in the message and by the getters.
+* @version
+*/
+
+public class CSVFormatException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * number of the row in the file, from 1
+	 */
+	private final long row;
+
+	/**
+	 * index of the column, from 0
+	 */
+	private final int column;
+
+	/**
+	 * Constructs CSVFormatException
+	 *
+	 * @param message  description of the error
+	 * @param row      number of the row in the file, from 1
+	 * @param column   index of the column, from 0
+	 * @param cause    the parse error, or null
+	 */
+	public CSVFormatException(String message, long row, int column, Throwable cause) {
+		super(message + " at row " + row + ", column " + column, cause);
+		this.row = row;
+		this.column = column;
+	}
+
+	/**
+	 * @return number of the row in the file, from 1
+	 */
+	public long getRow() {
+		return row;
+	}
+
+	/**
+	 * @return index of the column, from 0
+	 */
+	public int getColumn() {
+		return column;
+	}
+}
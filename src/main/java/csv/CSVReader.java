@@ -2,13 +2,22 @@ package csv;
 
 import java.lang.String;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
 * Class CSVReader 
@@ -39,15 +48,150 @@ public class CSVReader {
 	 */
 	private static final char CHAR_LINE_FEED = '\n';
 	
+	/**
+	 * Character carriage return '\r'
+	 */
+	private static final char CHAR_CR = '\r';
+	
+	/**
+	 * Default size of the char window
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * Default max time (ms) between two checks of a followed file
+	 */
+	public static final long DEFAULT_POLL_INTERVAL = 200;
+	
 	/**
 	 * for reading file
 	 */
-	private BufferedReader reader;
+	private Reader reader;
+	
+	/**
+	 * the file under the reader, its position is moved by seekToRow()
+	 */
+	private FileInputStream input;
+	
+	/**
+	 * the file under the reader in follow mode, null otherwise
+	 */
+	private FollowInputStream follower;
 	
 	/**
 	 * charset of CSV file
 	 */
 	private String charSet;
+	
+	/**
+	 * the filename of input CSV source
+	 */
+	private String filename;
+	
+	/**
+	 * window of chars read from the file, reused for all rows
+	 */
+	private char[] buf;
+	
+	/**
+	 * position of the next char to scan in the window
+	 */
+	private int pos;
+	
+	/**
+	 * number of valid chars in the window
+	 */
+	private int limit;
+	
+	/**
+	 * true if the reader reaches EOF
+	 */
+	private boolean eof;
+	
+	/**
+	 * true at the end of the old data of a truncated or replaced followed file, until the next row
+	 */
+	private boolean fileEnd;
+	
+	/**
+	 * true if the previous row ends with CR, so a following LF is skipped
+	 */
+	private boolean skipLF;
+	
+	/**
+	 * start of the current cell in the window
+	 */
+	private int cellStart;
+	
+	/**
+	 * end of the current cell in the window (line-feeds of a quoted cell are compacted in place)
+	 */
+	private int cellEnd;
+	
+	/**
+	 * slot in the returned row of each column (-1 if the column is skipped), null if all the columns are read
+	 */
+	private int[] columnSlots;
+	
+	/**
+	 * number of selected columns
+	 */
+	private int selectedCount;
+	
+	/**
+	 * number of rows read
+	 */
+	private long rowCount;
+	
+	/**
+	 * cache of the cells of all the columns, or null
+	 */
+	private CellCache cellCache;
+	
+	/**
+	 * cache of the cells of each column, null to use cellCache
+	 */
+	private CellCache[] columnCaches;
+	
+	/**
+	 * counts not reported to the metrics yet, null if the metrics are off
+	 */
+	private MetricsCounters counters;
+	
+	/**
+	 * position of the file when the bytes were last counted
+	 */
+	private long bytePosition;
+	
+	/**
+	 * binder of readObject(), the selected columns and the cells of its properties for them
+	 */
+	private RowBinder<?> boundBinder;
+	private int[] boundSlots;
+	private int[] boundCells;
+	private CsvRow boundRow;
+	
+	/**
+	 * filter of the rows, or null
+	 */
+	private RowFilter filter;
+	
+	/**
+	 * the filter is evaluated once the cells of the columns before filterEnd are read
+	 */
+	private int filterEnd;
+	
+	/**
+	 * true if the filter of the current row is evaluated, and its result
+	 */
+	private boolean rowDecided;
+	private boolean rowRejected;
+	
+	/**
+	 * row of getNextRow() when the rows are filtered
+	 */
+	private CsvRow filterRow;
+	
 	/**
 	 * Constructs CSVReader with the specified character encoding
 	 * 
@@ -59,105 +203,504 @@ public class CSVReader {
 	 */
 	public CSVReader(String filename, String charSetName)
 			throws FileNotFoundException,UnsupportedEncodingException  {
+		this(filename, charSetName, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructs CSVReader with the specified character encoding and window size
+	 * 
+	 * @param filename:
+	 *            the filename of input CSV source
+	 * @param charsetName:
+	 *            the name of supported charset
+	 * @param bufferSize:
+	 *            initial size of the char window, it grows if a cell is longer
+	 * @throws FileNotFoundException
+	 */
+	public CSVReader(String filename, String charSetName, int bufferSize)
+			throws FileNotFoundException,UnsupportedEncodingException  {
+		this.filename = filename;
 		this.charSet = charSetName;
-		this.reader = new BufferedReader(new InputStreamReader(	new FileInputStream(filename),this.charSet));
+		this.input = new FileInputStream(filename);
+		this.reader = new InputStreamReader(input, this.charSet);
+		this.buf = new char[Math.max(bufferSize, 16)];
 	}
 
 	public CSVReader(String filename) throws FileNotFoundException, 
 										UnsupportedEncodingException {
 		this(filename, DEFAULT_CHARSET);
 	}
-	
+
 	/**
-	 * Check if the quote is the first quote of cell
-	 * Condition of first quote:
-	 *   . the first character or follows a SEPARATOR
-	 *   . the number of following quotes (if exist) must be even (do not include the first quote)
+	 * Constructs CSVReader of a stream of the file (followed or compressed), it cannot be seeked
+	 */
+	private CSVReader(String filename, String charSetName, InputStream stream)
+			throws UnsupportedEncodingException {
+		this.filename = filename;
+		this.charSet = charSetName;
+		this.reader = new InputStreamReader(stream, this.charSet);
+		this.buf = new char[DEFAULT_BUFFER_SIZE];
+	}
+
+	/**
+	 * Open a file which is being appended to, from its start (see follow(String, String, long, long))
 	 * 
-	 * @return true if yes
-	 *
-	 * @throws IOException 
+	 * @param filename:
+	 *            the filename of input CSV source
+	 * @param charsetName:
+	 *            the name of supported charset
+	 * @throws IOException
 	 */
-	private boolean isFirstQuote(int pos, String str, int nextQuotesCnt){
-		// if quote is the first char or follows SEPARATOR
-		 if ((pos == 0)||pos > 0 && (str.charAt(pos-1) == CHAR_SEPARATOR)) {
-			// the number of following quotes is even
-			if (nextQuotesCnt % 2 == 0) { 
-				return true;
-			}
-			return false;
+	public static CSVReader follow(String filename, String charSetName) throws IOException {
+		return follow(filename, charSetName, 0, DEFAULT_POLL_INTERVAL);
+	}
+
+	/**
+	 * Open a file which is being appended to (like tail -f).
+	 * At the end of the file getNextRow() waits for the next complete row: a row which is not ended
+	 * by a line-feed is kept pending until its line-feed is written. The reader is woken by changes
+	 * of the directory of the file, and checks the file at least every poll interval.
+	 * If the file is truncated or replaced by a new file (rotation), the rows go on from the start
+	 * of the file; a pending row of the old data is completed as the last row of a file is
+	 * (an open quoted cell is closed) and the new data starts a new row.
+	 * The charset must keep line-feeds as single ASCII bytes.
+	 * close() can be called by another thread to stop a waiting getNextRow(), which then returns
+	 * the pending row or null.
+	 * 
+	 * @param filename:
+	 *            the filename of input CSV source
+	 * @param charsetName:
+	 *            the name of supported charset
+	 * @param offset:
+	 *            offset of a row start to read from (0, the file size or an offset of RowIndex)
+	 * @param pollInterval:
+	 *            max time (ms) between two checks of the file
+	 * @throws IOException
+	 */
+	public static CSVReader follow(String filename, String charSetName, long offset, long pollInterval)
+			throws IOException {
+		FollowInputStream follower = new FollowInputStream(filename, offset, pollInterval);
+		try {
+			CSVReader csvReader = new CSVReader(filename, charSetName, follower);
+			csvReader.follower = follower;
+			return csvReader;
+		}
+		catch (UnsupportedEncodingException e) {
+			follower.close();
+			throw e;
 		}
-		return false;
 	}
 
 	/**
-	 * Check if the quote is the last quote of cell
+	 * Open a gzip file, its members are decompressed on the common fork-join pool
+	 * (see gzip(String, String, ExecutorService, int))
 	 * 
-	 * @return true if yes
-	 * Condition of lasst quote:
-	 *   . followed by a SEPARATOR or line-feed
-	 *   . the number of preceded quotes (if exist) must be even
-	 *
-	 * @throws IOException 
+	 * @param filename:
+	 *            the filename of input CSV source
+	 * @param charsetName:
+	 *            the name of supported charset
+	 * @throws IOException
 	 */
-	private boolean isLastQuote(int pos, String str){
-		// if quote is followed by SEPARATOR or line-feed
-		if (((str.length() > pos + 1)&&(str.charAt(pos+1) == CHAR_SEPARATOR))
-			|| (pos + 1 == str.length())) {
-			int j = pos - 1;
-			int count = 0;
-			while ((j > 0) && (str.charAt(j) == CHAR_QUOTE)) {
-				j--;
-				count++;
-			}
+	public static CSVReader gzip(String filename, String charSetName) throws IOException {
+		return gzip(filename, charSetName, ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism() * 2);
+	}
 
-			// the number of preceded quotes is even (these quotes are used as normal char before lastquote)
-			// or count == -1 (a comma used as normal char before last quote)
-			if (count % 2 == 0) { 
-				return true;
-			}
-			return false;
+	/**
+	 * Open a gzip file. The members written by CSVWriter.gzip() are decompressed on several threads
+	 * ahead of the reader; a file written by another tool is decompressed by one thread.
+	 * The reader cannot be seeked and rows() reads the file with this reader.
+	 * 
+	 * @param filename:
+	 *            the filename of input CSV source
+	 * @param charsetName:
+	 *            the name of supported charset
+	 * @param pool:
+	 *            the threads which decompress the members
+	 * @param readAhead:
+	 *            max number of members decompressed ahead of the reader
+	 * @throws IOException
+	 */
+	public static CSVReader gzip(String filename, String charSetName, ExecutorService pool, int readAhead)
+			throws IOException {
+		ParallelGzipInputStream stream = new ParallelGzipInputStream(new FileInputStream(filename), pool, readAhead);
+		try {
+			return new CSVReader(filename, charSetName, stream);
+		}
+		catch (UnsupportedEncodingException e) {
+			stream.close();
+			throw e;
 		}
-		return false;
 	}
-
+	
 	/**
-	 * Convert a string to CSV format.
+	 * Convert the chars of a cell to CSV format.
 	 * 
-	 * @param strCell  content of a cell need to convert to CSV format
+	 * @param buf    buffer holding the cell
+	 * @param start  index of the first char of the cell
+	 * @param end    index after the last char of the cell
 	 * @return a string converted to CSV format
 	 */
-	
-	private String normalizeCell(String strCell){
-		StringBuffer strBuf = new StringBuffer();
+	static String normalizeCell(char[] buf, int start, int end){
+		int specialCnt = 0;
 		boolean checkSpecialChar = false;
 		int i;
 		char c;
-		if(strCell == null){
-			return "";
-		}
-		int size = strCell.length();
-		for(i = 0; i < size; i++){
-			c = strCell.charAt(i);
-			if( c == CHAR_QUOTE){
-				strBuf.append(CHAR_QUOTE);
-				strBuf.append(c);
+		for(i = start; i < end; i++){
+			c = buf[i];
+			if(c == CHAR_QUOTE){
+				specialCnt++;
 				checkSpecialChar = true;
 			}
 			else if(c == CHAR_SEPARATOR || c == CHAR_LINE_FEED){
-				strBuf.append(c);
 				checkSpecialChar = true;
 			}
-			else{
-				strBuf.append(c);
+		}
+		if(!checkSpecialChar){
+			return new String(buf, start, end - start);
+		}
+
+		// each quote is doubled and the cell is enclosed in double quotation
+		char[] strBuf = new char[end - start + specialCnt + 2];
+		int n = 0;
+		strBuf[n++] = CHAR_QUOTE;
+		for(i = start; i < end; i++){
+			c = buf[i];
+			if(c == CHAR_QUOTE){
+				strBuf[n++] = CHAR_QUOTE;
+			}
+			strBuf[n++] = c;
+		}
+		strBuf[n] = CHAR_QUOTE;
+		return new String(strBuf);
+	}
+
+	/**
+	 * Read more chars into the window.
+	 * The current cell (from cellStart) is moved to the front of the window first,
+	 * the window is doubled if the cell already fills it.
+	 * 
+	 * @return false if the reader reaches EOF
+	 * @throws IOException
+	 */
+	private boolean fill() throws IOException {
+		if (eof || fileEnd) {
+			return false;
+		}
+		if (cellStart > 0) {
+			int keep = limit - cellStart;
+			System.arraycopy(buf, cellStart, buf, 0, keep);
+			pos -= cellStart;
+			cellEnd -= cellStart;
+			limit = keep;
+			cellStart = 0;
+		}
+		if (limit == buf.length) {
+			buf = Arrays.copyOf(buf, buf.length * 2);
+		}
+		int n = (counters == null) ? reader.read(buf, limit, buf.length - limit) : readCounted();
+		if (n < 0) {
+			if (follower != null && follower.nextFile()) {
+				// the pending row ends here as at EOF, the new data starts a new row
+				fileEnd = true;
+				reader = new InputStreamReader(follower, charSet);
+				return false;
+			}
+			eof = true;
+			return false;
+		}
+		limit += n;
+		return true;
+	}
+
+	/**
+	 * Read more chars into the window and count the time and the bytes
+	 */
+	private int readCounted() throws IOException {
+		long start = System.nanoTime();
+		int n = reader.read(buf, limit, buf.length - limit);
+		counters.decodeNanos += System.nanoTime() - start;
+		if (n > 0) {
+			counters.refills++;
+		}
+		if (input != null) {
+			long position = input.getChannel().position();
+			counters.bytes += position - bytePosition;
+			bytePosition = position;
+		}
+		return n;
+	}
+
+	/**
+	 * Look at a char ahead of the current position without consuming it
+	 * 
+	 * @param offset  distance from the current position
+	 * @return the char, or -1 if the reader reaches EOF before it
+	 * @throws IOException
+	 */
+	private int peek(int offset) throws IOException {
+		while (pos + offset >= limit) {
+			if (!fill()) {
+				return -1;
+			}
+		}
+		return buf[pos + offset];
+	}
+
+	/**
+	 * Read only some columns. The rows have one cell per selected column, in the order
+	 * of the columns given here; a column missing in a row is an empty cell.
+	 * The other cells are skipped without being copied or converted.
+	 * 
+	 * @param columns  indexes of the columns, from 0
+	 */
+	public void selectColumns(int... columns) {
+		int max = -1;
+		for (int column : columns) {
+			if (column < 0) {
+				throw new IllegalArgumentException("Invalid column " + column);
+			}
+			max = Math.max(max, column);
+		}
+		int[] slots = new int[max + 1];
+		Arrays.fill(slots, -1);
+		for (int i = 0; i < columns.length; i++) {
+			if (slots[columns[i]] >= 0) {
+				throw new IllegalArgumentException("Column " + columns[i] + " is selected twice");
+			}
+			slots[columns[i]] = i;
+		}
+		columnSlots = slots;
+		selectedCount = columns.length;
+	}
+	
+	/**
+	 * Read the header row and read only the columns with the given names (see selectColumns(int...)).
+	 * It must be called before reading a row.
+	 * 
+	 * @param names  names of the columns, as they are in the header row
+	 * @throws IOException 
+	 */
+	public void selectColumns(String... names) throws IOException {
+		columnSlots = null;
+		List<String> header = getNextRow();
+		if (header == null) {
+			throw new IOException("No header row in " + filename);
+		}
+		int[] columns = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			columns[i] = header.indexOf(names[i]);
+			if (columns[i] < 0) {
+				throw new IllegalArgumentException("Column " + names[i] + " is not in the header of " + filename);
+			}
+		}
+		selectColumns(columns);
+	}
+	
+	/**
+	 * Read the header row, bind its columns to the properties of a type (see RowBinder) and
+	 * read only the bound columns (see selectColumns(int...)). It must be called before reading a row.
+	 * 
+	 * @param type  the class or record of the objects
+	 * @return the binder to give to readObject()
+	 * @throws IOException 
+	 */
+	public <T> RowBinder<T> bind(Class<T> type) throws IOException {
+		columnSlots = null;
+		List<String> header = getNextRow();
+		if (header == null) {
+			throw new IOException("No header row in " + filename);
+		}
+		RowBinder<T> binder = RowBinder.of(type, header);
+		selectColumns(binder.getColumns());
+		return binder;
+	}
+	
+	/**
+	 * Read the next row into an object. The cells are converted from the chars of the row,
+	 * no String is created for a cell which is not a String.
+	 * 
+	 * @param binder  the binder of the header of this file (see bind())
+	 * @return the object, null if the reader reaches EOF
+	 * @throws CSVFormatException if a cell cannot be converted to the type of its property
+	 * @throws IOException 
+	 */
+	public <T> T readObject(RowBinder<T> binder) throws IOException {
+		if (binder != boundBinder || columnSlots != boundSlots) {
+			boundCells = binder.cellIndexes(columnSlots);
+			boundBinder = binder;
+			boundSlots = columnSlots;
+		}
+		if (boundRow == null) {
+			boundRow = new CsvRow();
+		}
+		if (!getNextRow(boundRow)) {
+			return null;
+		}
+		return binder.bind(boundRow, boundCells, rowCount);
+	}
+	
+	/**
+	 * Read only the rows matching a filter. The filter is evaluated on the chars of a row as soon as
+	 * the cells of its columns are read: the rest of a rejected row is only scanned for its end,
+	 * and no String is created for a rejected row. It applies to getNextRow(), readObject()
+	 * and readColumns(); the columns of the filter must be selected if columns are selected
+	 * (readColumns() selects them with its own columns).
+	 * 
+	 * @param filter  the filter, or null to read all the rows
+	 */
+	public void setFilter(RowFilter filter) {
+		this.filter = filter;
+		this.filterEnd = (filter == null) ? 0 : filter.lastColumn() + 1;
+	}
+	
+	/**
+	 * Use a cache for the cells of all the columns: a cell equal to a cached cell is returned as
+	 * the same String (see CellCache). It is used by getNextRow() and rows(), which return Strings.
+	 * 
+	 * @param cache  the cache, or null to create a String for each cell
+	 */
+	public void setCellCache(CellCache cache) {
+		cellCache = cache;
+	}
+	
+	/**
+	 * Use a cache for the cells of one column, instead of the cache of all the columns
+	 * 
+	 * @param column  index of the column, from 0
+	 * @param cache   the cache, or null to use the cache of all the columns
+	 */
+	public void setCellCache(int column, CellCache cache) {
+		if (column < 0) {
+			throw new IllegalArgumentException("Invalid column " + column);
+		}
+		if (columnCaches == null || column >= columnCaches.length) {
+			columnCaches = Arrays.copyOf((columnCaches == null) ? new CellCache[0] : columnCaches, column + 1);
+		}
+		columnCaches[column] = cache;
+	}
+	
+	/**
+	 * Count the rows, cells and times of this reader (see CsvMetrics).
+	 * The rows read by getNextRow() and readColumns() are counted, and rows() reads the file with
+	 * this reader while the metrics are on. The counts are reported to the metrics about every
+	 * CsvMetrics.REPORT_INTERVAL ms, at the end of the file and on close.
+	 * 
+	 * @param metrics  the metrics, or null to stop counting
+	 * @throws IOException 
+	 */
+	public void setMetrics(CsvMetrics metrics) throws IOException {
+		if (counters != null) {
+			counters.report();
+		}
+		counters = (metrics == null) ? null : new MetricsCounters(metrics);
+		if (counters != null && input != null) {
+			bytePosition = input.getChannel().position();
+		}
+	}
+	
+	/**
+	 * Create the String of the current cell
+	 * 
+	 * @param column     index of the column of the cell
+	 * @param normalize  true if the cell is not enclosed in double quotation and contains a quote
+	 */
+	private String newCell(int column, boolean normalize) {
+		if (normalize) {
+			return normalizeCell(buf, cellStart, cellEnd);
+		}
+		CellCache cache = cacheOf(column);
+		if (cache != null) {
+			return cache.get(buf, cellStart, cellEnd);
+		}
+		return new String(buf, cellStart, cellEnd - cellStart);
+	}
+	
+	/**
+	 * @param column  index of a column
+	 * @return the cache of the cells of the column, null if there is none
+	 */
+	private CellCache cacheOf(int column) {
+		if (columnCaches != null && column < columnCaches.length && columnCaches[column] != null) {
+			return columnCaches[column];
+		}
+		return cellCache;
+	}
+	
+	/**
+	 * Create the Strings of a row read by getNextRow(CsvRow), through the cell caches like newCell()
+	 * 
+	 * @param row  the row
+	 * @return the cells, the same as getNextRow()
+	 */
+	private List<String> toList(CsvRow row) {
+		if (cellCache == null && columnCaches == null) {
+			return row.toList();
+		}
+		List<String> cellArray = new ArrayList<String>(Collections.nCopies(row.size(), ""));
+		if (columnSlots == null) {
+			for (int column = 0; column < row.size(); column++) {
+				cellArray.set(column, cellOf(row, column, column));
+			}
+		}
+		else {
+			for (int column = 0; column < columnSlots.length; column++) {
+				int slot = columnSlots[column];
+				if (slot >= 0) {
+					cellArray.set(slot, cellOf(row, slot, column));
+				}
 			}
 		}
-		if(checkSpecialChar){
-			strBuf.insert(0,CHAR_QUOTE);
-			strBuf.insert(strBuf.length(),CHAR_QUOTE);		
+		return cellArray;
+	}
+	
+	/**
+	 * @param slot    index of the cell in the row
+	 * @param column  index of the column of the cell
+	 * @return the String of a cell of a row, from the cache of its column if any
+	 */
+	private String cellOf(CsvRow row, int slot, int column) {
+		CellCache cache = cacheOf(column);
+		if (cache != null) {
+			return cache.get(row.buffer(), row.start(slot), row.end(slot));
+		}
+		return row.toString(slot);
+	}
+	
+	/**
+	 * @param column  index of a column
+	 * @return true if the cells of the column are skipped
+	 */
+	private boolean isSkipped(int column) {
+		return columnSlots != null && (column >= columnSlots.length || columnSlots[column] < 0);
+	}
+
+	/**
+	 * Add the current cell (from cellStart to cellEnd) to the row
+	 * 
+	 * @param cellArray   the row as a list, or null
+	 * @param row         the row as CsvRow, or null
+	 * @param column      index of the column of the cell
+	 * @param normalize   true if the cell is not enclosed in double quotation and contains a quote
+	 */
+	private void addCell(List<String> cellArray, CsvRow row, int column, boolean normalize) {
+		if (columnSlots != null) {
+			if (isSkipped(column)) {
+				return;
+			}
+			int slot = columnSlots[column];
+			if (row != null) {
+				row.setCell(slot, buf, cellStart, cellEnd, normalize);
+			}
+			else {
+				cellArray.set(slot, newCell(column, normalize));
+			}
+		}
+		else if (row != null) {
+			row.addCell(buf, cellStart, cellEnd, normalize);
+		}
+		else {
+			cellArray.add(newCell(column, normalize));
 		}
-			
-		return strBuf.toString();
 	}
 
 	/**
@@ -169,104 +712,414 @@ public class CSVReader {
 	 */
 	
 	public List<String> getNextRow() throws IOException {
-		StringBuffer cell = new StringBuffer();
-		List<String> cellArray = new ArrayList<String>();
-		boolean isRow = false;
+		if (filter != null) {
+			// the cells are Strings only once the row is accepted
+			if (filterRow == null) {
+				filterRow = new CsvRow();
+			}
+			return getNextRow(filterRow) ? toList(filterRow) : null;
+		}
+		List<String> cellArray;
+		if (columnSlots == null) {
+			cellArray = new ArrayList<String>();
+		}
+		else {
+			cellArray = new ArrayList<String>(Collections.nCopies(selectedCount, ""));
+		}
+		if (counters != null) {
+			long start = System.nanoTime();
+			long inner = counters.innerNanos();
+			if (!readRow(cellArray, null)) {
+				counters.report();
+				return null;
+			}
+			counters.parsed(start, inner, cellArray.size());
+		}
+		else if (!readRow(cellArray, null)) {
+			return null;
+		}
+		rowCount++;
+		return cellArray;
+	}
+
+	/**
+	 * Read the next row into a reusable row. The cells are the same as getNextRow(),
+	 * no object is created once the buffers of the row are large enough.
+	 * 
+	 * @param row  the row to fill, its previous cells are removed
+	 * @return false if the reader reaches EOF
+	 * @throws IOException 
+	 */
+	public boolean getNextRow(CsvRow row) throws IOException {
+		do {
+			if (columnSlots == null) {
+				row.clear();
+			}
+			else {
+				row.clear(selectedCount);
+			}
+			if (counters != null) {
+				long start = System.nanoTime();
+				long inner = counters.innerNanos();
+				if (!readRow(null, row)) {
+					counters.report();
+					return false;
+				}
+				counters.parsed(start, inner, row.size());
+			}
+			else if (!readRow(null, row)) {
+				return false;
+			}
+			rowCount++;
+		} while (filter != null && !accepts(row));
+		return true;
+	}
+
+	/**
+	 * @return true if the row read matches the filter
+	 */
+	private boolean accepts(CsvRow row) {
+		if (rowDecided) {
+			return !rowRejected;
+		}
+		// the row ends before the last column of the filter
+		return filter.matches(row, columnSlots);
+	}
+
+	/**
+	 * Go to a row of the file: the next row read is this row.
+	 * The reader moves to the nearest indexed row before it and skips the rows between,
+	 * at most index.getInterval() rows are parsed. The selected columns are kept.
+	 * 
+	 * @param index  the index of the file of this reader (see RowIndex)
+	 * @param row    number of the row, from 0 (the header row is row 0)
+	 * @throws IOException 
+	 */
+	public void seekToRow(RowIndex index, long row) throws IOException {
+		if (row < 0 || row > index.getRowCount()) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + index.getRowCount());
+		}
+		if (input == null) {
+			throw new IOException("A followed or compressed file cannot be seeked");
+		}
+		int i = index.find(row);
+		long current = (i < 0) ? 0 : index.getRow(i);
+		input.getChannel().position((i < 0) ? 0 : index.getOffset(i));
+		bytePosition = input.getChannel().position();
+		// the decoder may have read ahead, a new one starts at the new position
+		reader = new InputStreamReader(input, charSet);
+		pos = 0;
+		limit = 0;
+		eof = false;
+		skipLF = false;
+		cellStart = 0;
+		cellEnd = 0;
+
+		// skip the rows without keeping a cell
+		int[] savedSlots = columnSlots;
+		columnSlots = new int[0];
+		try {
+			while (current < row && readRow(null, null)) {
+				current++;
+			}
+		}
+		finally {
+			columnSlots = savedSlots;
+		}
+		rowCount = current;
+	}
+
+	/**
+	 * Read the rows from a row to another
+	 * 
+	 * @param index  the index of the file of this reader (see RowIndex)
+	 * @param from   number of the first row, from 0
+	 * @param to     number after the last row
+	 * @return the rows, fewer rows if the file ends before to
+	 * @throws IOException 
+	 */
+	public List<List<String>> readRows(RowIndex index, long from, long to) throws IOException {
+		seekToRow(index, from);
+		List<List<String>> rows = new ArrayList<List<String>>();
+		List<String> cells;
+		for (long i = from; i < to && (cells = getNextRow()) != null; i++) {
+			rows.add(cells);
+		}
+		return rows;
+	}
+
+	/**
+	 * Read some columns of all the remaining rows into arrays of primitive values.
+	 * The numbers are parsed from the chars of the rows, the other columns are skipped.
+	 * A header row must be read before, by getNextRow().
+	 * 
+	 * @param columns  the columns to read, the values are added to them
+	 * @throws CSVFormatException if a cell is not a number of the type of its column
+	 * @throws IOException 
+	 */
+	public void readColumns(NumericColumn... columns) throws IOException {
+		int[] savedSlots = columnSlots;
+		int savedCount = selectedCount;
+		int[] indexes = new int[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			indexes[i] = columns[i].getColumn();
+		}
+		if (filter != null) {
+			// the columns of the filter are read after the columns of the arrays
+			List<Integer> selected = new ArrayList<Integer>();
+			for (int index : indexes) {
+				selected.add(index);
+			}
+			filter.addColumns(selected);
+			int[] read = new int[selected.size()];
+			for (int i = 0; i < read.length; i++) {
+				read[i] = selected.get(i);
+			}
+			selectColumns(read);
+		}
+		else {
+			selectColumns(indexes);
+		}
+		try {
+			CsvRow row = new CsvRow();
+			while (getNextRow(row)) {
+				for (int i = 0; i < columns.length; i++) {
+					try {
+						columns[i].add(row, i);
+					}
+					catch (NumberFormatException e) {
+						throw new CSVFormatException("Invalid " + columns[i].getType() + " value " + row.toString(i),
+								rowCount, indexes[i], e);
+					}
+				}
+			}
+		}
+		finally {
+			columnSlots = savedSlots;
+			selectedCount = savedCount;
+		}
+	}
+
+	/**
+	 * Read the next row into a list or a CsvRow
+	 * 
+	 * The window is scanned once. Each char is a state transition:
+	 *   . SEPARATOR out of a quoted cell completes the cell
+	 *   . CR, LF or CRLF out of a quoted cell completes the row, inside a quoted cell it becomes LF
+	 *   . a quote at the start of a cell followed by an even number of quotes opens a quoted cell
+	 *   . a quote followed by SEPARATOR or line-feed, preceded by an even number of quotes, closes it
+	 * The chars of a cell are compacted in place in the window and copied once into the result.
+	 * A cell of a skipped column is only scanned for the next special char, as are the cells after
+	 * the columns of the filter once the filter rejects the row.
+	 * 
+	 * @return false if the reader reaches EOF
+	 * @throws IOException 
+	 */
+	private boolean readRow(List<String> cellArray, CsvRow row) throws IOException {
+		boolean filtering = (filter != null && row != null);
+		rowDecided = false;
+		rowRejected = false;
+		cellStart = pos;
+		if (skipLF) {
+			// the previous row ended with CR, skip the LF of CRLF
+			skipLF = false;
+			if (peek(0) == CHAR_LINE_FEED) {
+				pos++;
+			}
+			cellStart = pos;
+		}
+		if (peek(0) < 0) {
+			if (!fileEnd) {
+				return false;
+			}
+			fileEnd = false;
+			if (peek(0) < 0) {
+				return false;
+			}
+		}
+		cellEnd = pos;
+
 		boolean inCell = false;
 		boolean cellInQuote = false;
-		int size;
-		
-		 while (!isRow) {
-			String st = "";
-			//Hungnm: đoạn này là copy memory => ko tối ưu bộ nhớ
-			st = this.reader.readLine();
-			if (st == null) return null;
-			size = st.length();
-			
-			for (int i = 0; i < size; i++ ) { 
-				char c = st.charAt(i);
+		boolean hasQuote = false;
+		int linePos = 0;	// position in the physical line
+		char last = 0;		// previous char in the physical line
+		int quoteCnt = 0;	// number of quotes just before pos (the first char of line is not counted)
+		int column = 0;
+		int multiLineColumn = -1;	// last column counted as a multi-line cell
+		boolean skip = isSkipped(0);
 
-				// add c to cell except the SEPARATOR
-				if(c != CHAR_SEPARATOR || inCell){
-					cell.append(c);
+		while (true) {
+			if (skip) {
+				// nothing is kept: go to the next quote, line-feed or SEPARATOR out of a quoted cell
+				cellStart = pos;
+				cellEnd = pos;
+				int p = pos;
+				while (p < limit) {
+					char c = buf[p];
+					if (c == CHAR_QUOTE || c == CHAR_LINE_FEED || c == CHAR_CR || (c == CHAR_SEPARATOR && !inCell)) {
+						break;
+					}
+					p++;
 				}
+				if (p > pos) {
+					linePos += p - pos;
+					last = buf[p - 1];
+					quoteCnt = 0;
+					pos = p;
+					cellStart = pos;
+					cellEnd = pos;
+				}
+			}
+			if (pos >= limit && !fill()) {
+				// EOF without line-feed
+				if (inCell) {
+					addCell(cellArray, row, column, true);
+				}
+				else if (linePos > 0 && last != CHAR_SEPARATOR) {
+					addCell(cellArray, row, column, !cellInQuote && hasQuote);
+				}
+				return true;
+			}
+			char c = buf[pos];
 
-				// if CHAR_QUOTE, search for first quote or last quote of cell
-				if (c == CHAR_QUOTE){
-					if (!inCell){
-						int j = i + 1;
-						String quoteStr = "";
-						int count = 0;
-						// Get all the following quotes
-						while ((st.length() > j)&&(st.charAt(j) == CHAR_QUOTE)) {
-							quoteStr += st.charAt(j);
-							j++;
-							count++;
-						}
-
-						/* check if the first quote */
-						if(isFirstQuote(i, st, count)){
-							inCell = true;
-						}
-						else{
-							// the cell has only quotes and enclosed in double quotation
-							if((st.length() > j) && (st.charAt(j) == CHAR_SEPARATOR) || (j == st.length())){
-								cellInQuote = true;
-							}
-						}
+			if (c == CHAR_QUOTE) {
+				if (!inCell) {
+					// Get all the following quotes
+					int count = 1;
+					int next;
+					while ((next = peek(count)) == CHAR_QUOTE) {
+						count++;
+					}
 
-						// Append the following quotes
-						if(quoteStr.length() > 0){
-							cell.append(quoteStr);
-							i += count; // inclement to pass all the following quotes
+					/* check if the first quote */
+					if ((linePos == 0 || last == CHAR_SEPARATOR) && (count - 1) % 2 == 0) {
+						inCell = true;
+						if (counters != null) {
+							counters.quotedCells++;
 						}
 					}
-					else {
-						/* check if the last quote */
-						if(isLastQuote(i, st)){
-							inCell = false;
-							cellInQuote = true;
+					else if (next == CHAR_SEPARATOR || next == CHAR_LINE_FEED || next == CHAR_CR || next < 0) {
+						// the cell has only quotes and enclosed in double quotation
+						cellInQuote = true;
+						if (counters != null && (linePos == 0 || last == CHAR_SEPARATOR)) {
+							counters.quotedCells++;
 						}
 					}
+					for (int i = 0; i < count; i++) {
+						buf[cellEnd++] = CHAR_QUOTE;
+					}
+					pos += count;
+					linePos += count;
+					quoteCnt = 0;
 				}
-
-				// continue to search the last quote
-				if(inCell){
-					continue;
+				else {
+					/* check if the last quote */
+					int next = peek(1);
+					if ((next == CHAR_SEPARATOR || next == CHAR_LINE_FEED || next == CHAR_CR || next < 0)
+							&& quoteCnt % 2 == 0) {
+						inCell = false;
+						cellInQuote = true;
+					}
+					buf[cellEnd++] = CHAR_QUOTE;
+					quoteCnt = (linePos > 0) ? quoteCnt + 1 : 0;
+					pos++;
+					linePos++;
 				}
+				hasQuote = true;
+				last = CHAR_QUOTE;
+				continue;
+			}
+			quoteCnt = 0;
 
-				// if comma or last char (before line-feed), then 1 cell completed
-				// add the cell to cell array
-				if (c == CHAR_SEPARATOR || (i+1 == st.length())) {
-					// if current cell is not enclosed in double quotation " ",
-					// modify cell if special character exists
-					if(!cellInQuote){
-						cellArray.add(normalizeCell(cell.toString()));
-					}
-					else{
-						cellArray.add(cell.toString());
-						cellInQuote = false;
+			if (c == CHAR_LINE_FEED || c == CHAR_CR) {
+				pos++;
+				if (!inCell) {
+					// end of row, a line ending with SEPARATOR has no empty last cell
+					skipLF = (c == CHAR_CR);
+					if (linePos > 0 && last != CHAR_SEPARATOR) {
+						addCell(cellArray, row, column, !cellInQuote && hasQuote);
 					}
-					cell = new StringBuffer();
+					return true;
+				}
+				if (c == CHAR_CR && peek(0) == CHAR_LINE_FEED) {
+					pos++;
+				}
+				if (peek(0) < 0) {
+					// EOF inside a quoted cell
+					addCell(cellArray, row, column, true);
+					return true;
+				}
+				// the cell continues on the next line
+				if (counters != null && multiLineColumn != column) {
+					counters.multiLineCells++;
+					multiLineColumn = column;
 				}
+				buf[cellEnd++] = CHAR_LINE_FEED;
+				linePos = 0;
+				last = 0;
+				continue;
 			}
-			/* check if it's necessary to read next line for this cell*/
-			if (!inCell) {
-				isRow = true;
+
+			if (c == CHAR_SEPARATOR && !inCell) {
+				if (!rowRejected) {
+					addCell(cellArray, row, column, !cellInQuote && hasQuote);
+				}
+				cellInQuote = false;
+				hasQuote = false;
+				pos++;
+				cellStart = pos;
+				cellEnd = pos;
+				column++;
+				if (filtering && column == filterEnd) {
+					// the cells of the filter are read
+					rowDecided = true;
+					rowRejected = !filter.matches(row, columnSlots);
+				}
+				skip = rowRejected || isSkipped(column);
 			}
 			else {
-				if (!reader.ready()) { //if EOF
-					cellArray.add(normalizeCell(cell.toString()));
-					cell = new StringBuffer();
-					isRow = true;
+				buf[cellEnd++] = c;
+				pos++;
+			}
+			linePos++;
+			last = c;
+		}
+	}
+	
+	/**
+	 * Create a stream of the remaining rows. Closing the stream closes this reader (and the readers
+	 * of the chunks of the file being read), so a stream which is not read to its end must be closed.
+	 * 
+	 * If the charset is UTF-8, no row is read yet, all the columns are read, the file is a plain file,
+	 * the metrics are off, no filter is set and no cell cache is set,
+	 * the stream reads the file by chunks of bytes (see ParallelCSVReader), a parallel stream parses
+	 * the chunks on several threads.
+	 * Otherwise the rows are read by this reader, a parallel stream is given batches of parsed rows.
+	 * 
+	 * @return the rows in the order of the file, the same as getNextRow()
+	 */
+	public Stream<List<String>> rows() {
+		Stream<List<String>> stream;
+		if (rowCount == 0 && pos == 0 && limit == 0 && !eof && columnSlots == null && input != null && counters == null && filter == null
+				&& cellCache == null && columnCaches == null && Charset.forName(charSet).equals(Charset.forName(DEFAULT_CHARSET))) {
+			ChunkSpliterator chunks = new ChunkSpliterator(new ParallelCSVReader(filename));
+			// the readers of the chunks being read are closed before this reader
+			stream = StreamSupport.stream(chunks, false).onClose(ParallelCSVReader.closer(chunks));
+		}
+		else {
+			stream = StreamSupport.stream(new RowSpliterator(this), false);
+		}
+		return stream.onClose(new Runnable() {
+			public void run() {
+				try {
+					close();
 				}
-				else {
-					isRow = false;
-					cell.append(CHAR_LINE_FEED);
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
 				}
 			}
-		}		 
-		return cellArray;
+		});
 	}
 	
 	/**
@@ -274,6 +1127,13 @@ public class CSVReader {
 	 * @throws IOException 
 	 */
 	public void close() throws IOException {
+		if (counters != null) {
+			counters.report();
+		}
+		if (follower != null) {
+			// wake a waiting read first, the reader is locked while it reads
+			follower.close();
+		}
 		reader.close();
 	}
 }
@@ -3,11 +3,33 @@ package csv;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.lang.String;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
 
 /*
  * Created on Sep 15, 2008
@@ -49,11 +71,61 @@ public class CSVWriter {
 	public static final String STR_LINE_BREAK = "\r\n";
 	public static final String STR_LINE_FEED = "\n";
 	
+	/**
+	 * Default size of the char buffer
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * number of rows of a chunk formatted by one task of appendRowsParallel()
+	 */
+	private static final int CHUNK_ROWS = 2048;
+	
+	/**
+	 * charsets without state between chars: chunks encoded alone give the same bytes as the whole rows
+	 */
+	private static final Set<String> STATELESS_CHARSETS = new HashSet<String>(Arrays.asList(
+			"UTF-8", "US-ASCII", "ISO-8859-1", "UTF-16LE", "UTF-16BE", "Shift_JIS", "windows-31j",
+			"EUC-JP", "EUC-KR", "GBK", "GB18030", "Big5", "windows-1252"));
+	
 	private String charSet;
 	
 	private File file;
 	
-	private OutputStreamWriter writer;
+	private OutputStream outputStream;
+	
+	/**
+	 * channel of the file opened for appending, or of the gzip stream
+	 */
+	private WritableByteChannel channel;
+	
+	/**
+	 * encoder of charSet, malformed and unmappable chars are replaced (same as OutputStreamWriter)
+	 */
+	private CharsetEncoder encoder;
+	
+	/**
+	 * rows formatted but not encoded yet
+	 */
+	private char[] chars;
+	private int charCount;
+	private CharBuffer charBuffer;
+	
+	/**
+	 * encoded bytes not written yet
+	 */
+	private ByteBuffer bytes;
+	
+	/**
+	 * counts not reported to the metrics yet, null if the metrics are off
+	 */
+	private MetricsCounters counters;
+	
+	/**
+	 * encoded bytes of a chunk of appendRowsParallel(), null for a writer of a file
+	 */
+	private List<ByteBuffer> chunkBuffers;
+	
 	/**
 	 * 
 	 * @param filename 	the filename of output CSV source
@@ -69,11 +141,240 @@ public class CSVWriter {
 	 * @param charsetName the name of supported charset.
 	 */
 	public CSVWriter(String filename, String charsetName)throws IOException{
+		this(filename, charsetName, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * 
+	 * @param filename 	the filename of output CSV source
+	 * @param charsetName the name of supported charset.
+	 * @param bufferSize  number of chars formatted before they are encoded and written
+	 */
+	public CSVWriter(String filename, String charsetName, int bufferSize)throws IOException{
+		this(filename, charsetName, bufferSize, 0, null);
+	}
+
+	/**
+	 * 
+	 * @param filename 	the filename of output CSV source
+	 * @param charsetName the name of supported charset.
+	 * @param bufferSize  number of chars formatted before they are encoded and written
+	 * @param gzipBlockSize  number of bytes of a gzip member, 0 to write the file uncompressed
+	 * @param pool  the threads which compress the members
+	 */
+	private CSVWriter(String filename, String charsetName, int bufferSize, int gzipBlockSize, ExecutorService pool)throws IOException{
+		Charset charset;
+		try {
+			charset = Charset.forName(charsetName);
+		}
+		catch (IllegalCharsetNameException e) {
+			throw new UnsupportedEncodingException(charsetName);
+		}
+		catch (UnsupportedCharsetException e) {
+			throw new UnsupportedEncodingException(charsetName);
+		}
+		charSet = charsetName;
+		initBuffers(charset, bufferSize, true);
+
 		//check file before processing
 		file = new File(filename);
 		
-		FileOutputStream outputStream = new FileOutputStream(file,true);
-		writer = new OutputStreamWriter(outputStream,charsetName);
+		FileOutputStream fileStream = new FileOutputStream(file,true);
+		if(gzipBlockSize > 0){
+			outputStream = new ParallelGzipOutputStream(fileStream, gzipBlockSize, Deflater.DEFAULT_COMPRESSION,
+					pool, Math.max(ParallelCSVReader.parallelism(pool) * 2, 2));
+			channel = Channels.newChannel(outputStream);
+		}
+		else{
+			outputStream = fileStream;
+			channel = fileStream.getChannel();
+		}
+	}
+
+	/**
+	 * Constructs a writer of a chunk of appendRowsParallel(), the bytes are kept in chunkBuffers
+	 * 
+	 * @param charset the charset of the file
+	 */
+	private CSVWriter(Charset charset){
+		charSet = charset.name();
+		initBuffers(charset, DEFAULT_BUFFER_SIZE, false);
+		chunkBuffers = new ArrayList<ByteBuffer>();
+	}
+
+	/**
+	 * Create the encoder, the char buffer and the byte buffer
+	 * 
+	 * @param direct  true for a direct byte buffer, written many times to the file
+	 */
+	private void initBuffers(Charset charset, int bufferSize, boolean direct){
+		encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		chars = new char[Math.max(bufferSize, 16)];
+		charBuffer = CharBuffer.wrap(chars);
+		int size = (int) Math.min(Integer.MAX_VALUE, (long) Math.ceil(chars.length * encoder.maxBytesPerChar()));
+		bytes = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+	}
+
+	/**
+	 * Creates a writer of a gzip file, the blocks of the file are compressed on the common fork-join pool.
+	 * The rows are appended to an existing file as new gzip members.
+	 * 
+	 * @param filename 	the filename of output CSV source
+	 * @param charsetName the name of supported charset.
+	 * @see ParallelGzipOutputStream
+	 */
+	public static CSVWriter gzip(String filename, String charsetName)throws IOException{
+		return gzip(filename, charsetName, ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a writer of a gzip file.
+	 * The rows are appended to an existing file as new gzip members.
+	 * 
+	 * @param filename 	the filename of output CSV source
+	 * @param charsetName the name of supported charset.
+	 * @param blockSize  number of bytes compressed into one gzip member
+	 * @param pool  the threads which compress the blocks, at most two blocks per thread are in memory
+	 * @see ParallelGzipOutputStream
+	 */
+	public static CSVWriter gzip(String filename, String charsetName, int blockSize, ExecutorService pool)throws IOException{
+		return new CSVWriter(filename, charsetName, DEFAULT_BUFFER_SIZE, Math.max(blockSize, 1), pool);
+	}
+	
+	/**
+	 * Add a char to the buffer
+	 */
+	private void append(char c) throws IOException{
+		if(charCount == chars.length){
+			encodeChars(false);
+		}
+		chars[charCount++] = c;
+	}
+
+	/**
+	 * Add a string to the buffer
+	 */
+	private void append(String str) throws IOException{
+		int len = str.length();
+		int done = 0;
+		while(done < len){
+			if(charCount == chars.length){
+				encodeChars(false);
+			}
+			int n = Math.min(len - done, chars.length - charCount);
+			str.getChars(done, done + n, chars, charCount);
+			charCount += n;
+			done += n;
+		}
+	}
+
+	/**
+	 * Encode the buffered chars into the byte buffer, the byte buffer is written to the file when it is full.
+	 * A high surrogate at the end of the buffer is kept for the next chars.
+	 * 
+	 * @param endOfInput true if no more char is appended
+	 */
+	private void encodeChars(boolean endOfInput) throws IOException{
+		if(counters != null){
+			long start = System.nanoTime();
+			long flushNanos = counters.flushNanos;
+			encode(endOfInput);
+			counters.encodeNanos += System.nanoTime() - start - (counters.flushNanos - flushNanos);
+		}
+		else{
+			encode(endOfInput);
+		}
+	}
+
+	private void encode(boolean endOfInput) throws IOException{
+		charBuffer.limit(charCount);
+		charBuffer.position(0);
+		while(true){
+			CoderResult result = encoder.encode(charBuffer, bytes, endOfInput);
+			if(result.isOverflow()){
+				writeBytes();
+				continue;
+			}
+			if(result.isError()){
+				result.throwException();
+			}
+			break;
+		}
+		if(endOfInput){
+			while(encoder.flush(bytes).isOverflow()){
+				writeBytes();
+			}
+		}
+		int left = charBuffer.remaining();
+		if(left > 0){
+			System.arraycopy(chars, charBuffer.position(), chars, 0, left);
+		}
+		charCount = left;
+	}
+
+	/**
+	 * Write the byte buffer to the file
+	 */
+	private void writeBytes() throws IOException{
+		if(chunkBuffers != null){
+			// a chunk keeps its bytes until they are written in order
+			if(bytes.position() > 0){
+				bytes.flip();
+				chunkBuffers.add(bytes);
+				bytes = ByteBuffer.allocate(bytes.capacity());
+			}
+			return;
+		}
+		bytes.flip();
+		if(counters != null && bytes.hasRemaining()){
+			long start = System.nanoTime();
+			counters.bytes += bytes.remaining();
+			counters.refills++;
+			while(bytes.hasRemaining()){
+				channel.write(bytes);
+			}
+			counters.flushNanos += System.nanoTime() - start;
+		}
+		while(bytes.hasRemaining()){
+			channel.write(bytes);
+		}
+		bytes.clear();
+	}
+
+	/**
+	 * Write all the appended rows to the file.
+	 * A gzip file gets a new member on each flush.
+	 * 
+	 * @throws IOException
+	 */
+	public void flush() throws IOException{
+		encodeChars(false);
+		writeBytes();
+		if(counters != null){
+			long start = System.nanoTime();
+			outputStream.flush();
+			counters.flushNanos += System.nanoTime() - start;
+			counters.report();
+		}
+		else{
+			outputStream.flush();
+		}
+	}
+
+	/**
+	 * Count the rows, cells and times of this writer (see CsvMetrics).
+	 * The counts are reported to the metrics about every CsvMetrics.REPORT_INTERVAL ms,
+	 * on flush and on close. For a gzip file the bytes are counted before compression.
+	 * 
+	 * @param metrics  the metrics, or null to stop counting
+	 */
+	public void setMetrics(CsvMetrics metrics){
+		if(counters != null){
+			counters.report();
+		}
+		counters = (metrics == null) ? null : new MetricsCounters(metrics);
 	}
 	
 	/**
@@ -93,6 +394,105 @@ public class CSVWriter {
         }
 	}
 
+	/**
+	 * Writes rows like appendRows(listRow), formatted and encoded on the common fork-join pool
+	 * (see appendRowsParallel(List, ExecutorService)).
+	 *
+	 * @param  listRow   the rows
+	 */
+	public void appendRowsParallel(List<List<String>> listRow) throws IOException{
+		appendRowsParallel(listRow, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Writes rows like appendRows(listRow), the file has the same bytes.
+	 * The rows are split into chunks which are formatted and encoded by the threads of the pool, each
+	 * into its own byte buffers; the chunks are written in the order of the rows by gathering writes.
+	 * At most two chunks per thread of the pool are in memory at a time.
+	 * A charset with a state between chars (for example ISO-2022-JP, or UTF-16 with its byte order mark)
+	 * is written by appendRows() on the calling thread.
+	 *
+	 * @param  listRow   the rows, they must not be modified until the method returns
+	 * @param  pool      the threads which format the chunks
+	 */
+	public void appendRowsParallel(List<List<String>> listRow, ExecutorService pool) throws IOException{
+		if(listRow == null){
+			return;
+		}
+		final Charset charset = encoder.charset();
+		if(listRow.size() < CHUNK_ROWS * 2 || !STATELESS_CHARSETS.contains(charset.name())){
+			appendRows(listRow);
+			return;
+		}
+		// the rows appended before go first
+		encodeChars(false);
+		writeBytes();
+
+		final boolean counting = (counters != null);
+		int window = Math.max(ParallelCSVReader.parallelism(pool) * 2, 2);
+		Deque<Future<CSVWriter>> pending = new ArrayDeque<Future<CSVWriter>>();
+		try{
+			for(int from = 0; from < listRow.size(); from += CHUNK_ROWS){
+				final List<List<String>> chunk = listRow.subList(from, Math.min(from + CHUNK_ROWS, listRow.size()));
+				pending.add(pool.submit(new Callable<CSVWriter>() {
+					public CSVWriter call() throws IOException {
+						CSVWriter writer = new CSVWriter(charset);
+						if(counting){
+							writer.counters = new MetricsCounters(null);
+						}
+						writer.appendRows(chunk);
+						writer.encodeChars(false);
+						writer.writeBytes();
+						return writer;
+					}
+				}));
+				if(pending.size() >= window){
+					writeChunk(ParallelCSVReader.get(pending.poll()));
+				}
+			}
+			while(!pending.isEmpty()){
+				writeChunk(ParallelCSVReader.get(pending.poll()));
+			}
+		}
+		finally{
+			for(Future<CSVWriter> task : pending){
+				task.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Write the bytes of a chunk to the file
+	 */
+	private void writeChunk(CSVWriter chunk) throws IOException{
+		ByteBuffer[] buffers = chunk.chunkBuffers.toArray(new ByteBuffer[chunk.chunkBuffers.size()]);
+		long remaining = 0;
+		for(ByteBuffer buffer : buffers){
+			remaining += buffer.remaining();
+		}
+		long start = (counters != null) ? System.nanoTime() : 0;
+		if(channel instanceof GatheringByteChannel){
+			GatheringByteChannel gathering = (GatheringByteChannel) channel;
+			long left = remaining;
+			while(left > 0){
+				left -= gathering.write(buffers);
+			}
+		}
+		else{
+			for(ByteBuffer buffer : buffers){
+				while(buffer.hasRemaining()){
+					channel.write(buffer);
+				}
+			}
+		}
+		if(counters != null){
+			counters.flushNanos += System.nanoTime() - start;
+			counters.bytes += remaining;
+			counters.refills++;
+			counters.add(chunk.counters);
+		}
+	}
+
 	/**
 	 * Append a row to a CSV file
 	 *
@@ -101,21 +501,227 @@ public class CSVWriter {
 	 *
 	 */
 	public void appendRow(List<String> cells) throws IOException{
-		
+		if(counters != null){
+			long start = System.nanoTime();
+			long inner = counters.innerNanos();
+			appendCells(cells);
+			counters.escaped(start, inner, (cells == null) ? 0 : cells.size());
+		}
+		else{
+			appendCells(cells);
+		}
+	}
+
+	/**
+	 * Append the cells of a row and its line-feed
+	 */
+	private void appendCells(List<String> cells) throws IOException{
 		if(cells == null || cells.size() == 0){
-			writer.write(CHAR_LINE_FEED);
+			append(CHAR_LINE_FEED);
 			return;
 		}
-		StringBuilder strRow = new StringBuilder();
 		int i;
 
 		for( i = 0; i < cells.size() - 1; i++ ){
-			strRow.append(processCell(cells.get(i)));
-			strRow.append(CHAR_SEPARATOR);
+			appendCell(cells.get(i));
+			append(CHAR_SEPARATOR);
+		}
+		appendCell(cells.get(cells.size()-1));	
+		append(CHAR_LINE_FEED);
+	}
+
+	/**
+	 * Append a cell converted to CSV format, the result is the same as processCell(strCell).
+	 * The cell is scanned once and written straight into the buffer:
+	 *   . CR and CRLF are written as LF
+	 *   . a cell starting with a quote is checked like isCellInQuote() from its leading and trailing quotes,
+	 *     then written like fixOddQuotes() or normalizeCell()
+	 *   . other cells are copied until a special character is found, if any the copied chars
+	 *     are moved after an opening quote and the rest is written like normalizeCell()
+	 * 
+	 * @param strCell input a string of cell
+	 */
+	private void appendCell(String strCell) throws IOException{
+		if(strCell == null){
+			return;
+		}
+		int len = strCell.length();
+		if(len == 0){
+			return;
+		}
+		char first = strCell.charAt(0);
+		if(first == CHAR_QUOTE){
+			appendQuotedCell(strCell, len);
+			return;
+		}
+		if(chars.length - charCount < len + 2){
+			encodeChars(false);
+		}
+		if(chars.length - charCount >= len + 2){
+			char[] buf = chars;
+			int n = charCount;
+			int i;
+			for(i = 0; i < len; i++){
+				char c = strCell.charAt(i);
+				if(c == CHAR_QUOTE || c == CHAR_SEPARATOR || c == CHAR_LINE_FEED || c == CHAR_CR){
+					break;
+				}
+				buf[n++] = c;
+			}
+			if(i == len){
+				charCount = n;
+				return;
+			}
+			// special character: enclose the cell in double quotation
+			countQuoted();
+			System.arraycopy(buf, charCount, buf, charCount + 1, i);
+			buf[charCount] = CHAR_QUOTE;
+			charCount += i + 1;
+			appendEscaped(strCell, i, len);
+			append(CHAR_QUOTE);
+			return;
+		}
+
+		// the cell is longer than the buffer
+		if(!hasSpecialChar(strCell, 0)){
+			append(strCell);
+			return;
+		}
+		countQuoted();
+		append(CHAR_QUOTE);
+		appendEscaped(strCell, 0, len);
+		append(CHAR_QUOTE);
+	}
+
+	/**
+	 * Append a cell starting with a quote, the result is the same as processCell(strCell)
+	 */
+	private void appendQuotedCell(String strCell, int len) throws IOException{
+		int firstQuoteCnt = 1;
+		while(firstQuoteCnt < len && strCell.charAt(firstQuoteCnt) == CHAR_QUOTE){
+			firstQuoteCnt++;
+		}
+		boolean inQuote;
+		if(firstQuoteCnt == len){
+			// the cell has only quotes
+			inQuote = (firstQuoteCnt % 2 == 0);
 		}
-		strRow.append(processCell(cells.get(cells.size()-1)));	
-		writer.write(strRow.toString());
-		writer.write(CHAR_LINE_FEED);
+		else if(firstQuoteCnt % 2 == 0){
+			// escaped quotes at the start of a cell which is not enclosed in double quotation
+			inQuote = false;
+		}
+		else{
+			int lastQuoteCnt = 0;
+			while(strCell.charAt(len - 1 - lastQuoteCnt) == CHAR_QUOTE){
+				lastQuoteCnt++;
+			}
+			inQuote = (lastQuoteCnt % 2 == 1);
+		}
+
+		countQuoted();
+		append(CHAR_QUOTE);
+		if(inQuote){
+			// the chars between the first and the last char, a final CRLF is one char
+			int end = len - 1;
+			if(strCell.charAt(end) == CHAR_LINE_FEED && strCell.charAt(end - 1) == CHAR_CR){
+				end--;
+			}
+			appendFixedQuotes(strCell, 1, end);
+		}
+		else{
+			appendEscaped(strCell, 0, len);
+		}
+		append(CHAR_QUOTE);
+	}
+
+	/**
+	 * Count a cell enclosed in double quotation
+	 */
+	private void countQuoted(){
+		if(counters != null){
+			counters.quotedCells++;
+		}
+	}
+
+	/**
+	 * Count a cell with a line-feed
+	 */
+	private void countMultiLine(boolean multiLine){
+		if(multiLine && counters != null){
+			counters.multiLineCells++;
+		}
+	}
+
+	/**
+	 * Append chars of a cell, CR and CRLF are written as LF and each quote is doubled (see normalizeCell())
+	 */
+	private void appendEscaped(String strCell, int begin, int end) throws IOException{
+		boolean multiLine = false;
+		for(int i = begin; i < end; i++){
+			char c = strCell.charAt(i);
+			if(c == CHAR_QUOTE){
+				append(CHAR_QUOTE);
+			}
+			else if(c == CHAR_CR){
+				c = CHAR_LINE_FEED;
+				if(i + 1 < end && strCell.charAt(i + 1) == CHAR_LINE_FEED){
+					i++;
+				}
+			}
+			if(c == CHAR_LINE_FEED){
+				multiLine = true;
+			}
+			append(c);
+		}
+		countMultiLine(multiLine);
+	}
+
+	/**
+	 * Append chars of a cell, CR and CRLF are written as LF and a quote in a sequence of odd quotes
+	 * is doubled (see fixOddQuotes())
+	 */
+	private void appendFixedQuotes(String strCell, int begin, int end) throws IOException{
+		boolean multiLine = false;
+		for(int i = begin; i < end; i++){
+			char c = strCell.charAt(i);
+			if(c == CHAR_QUOTE){
+				append(CHAR_QUOTE);
+				append(CHAR_QUOTE);
+				i++;
+				if(i >= end){
+					break;
+				}
+				c = strCell.charAt(i);
+				if(c == CHAR_QUOTE){
+					continue;
+				}
+			}
+			if(c == CHAR_CR){
+				c = CHAR_LINE_FEED;
+				if(i + 1 < end && strCell.charAt(i + 1) == CHAR_LINE_FEED){
+					i++;
+				}
+			}
+			if(c == CHAR_LINE_FEED){
+				multiLine = true;
+			}
+			append(c);
+		}
+		countMultiLine(multiLine);
+	}
+
+	/**
+	 * Check whether a cell contains a quote, SEPARATOR, CR or line-feed from a position
+	 */
+	private static boolean hasSpecialChar(String strCell, int begin){
+		int len = strCell.length();
+		for(int i = begin; i < len; i++){
+			char c = strCell.charAt(i);
+			if(c == CHAR_QUOTE || c == CHAR_SEPARATOR || c == CHAR_LINE_FEED || c == CHAR_CR){
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -211,11 +817,25 @@ public class CSVWriter {
 	public static String replaceToLineFeed(String str){
 		
 		if(str == null) return null;
-		String str1,str2;
-		//Hungnm: it is a copy of memory => it consume memory
-		str1 = str.replaceAll(STR_LINE_BREAK,STR_LINE_FEED);
-		str2 = str1.replace(CHAR_CR,CHAR_LINE_FEED);
-		return str2;
+		int i = str.indexOf(CHAR_CR);
+		if(i < 0){
+			return str;
+		}
+		int len = str.length();
+		StringBuilder strBuf = new StringBuilder(len);
+		strBuf.append(str, 0, i);
+		for( ; i < len; i++){
+			char c = str.charAt(i);
+			if(c == CHAR_CR){
+				strBuf.append(CHAR_LINE_FEED);
+				if(i + 1 < len && str.charAt(i + 1) == CHAR_LINE_FEED){
+					i++;
+				}
+			}else{
+				strBuf.append(c);
+			}
+		}
+		return strBuf.toString();
 	}
 
 	/**
@@ -236,7 +856,8 @@ public class CSVWriter {
 		int checkFirstQuote = 0;
 		// Check first quote
 		i = 0;
-		while(i < len && strCell.charAt(i++) == CHAR_QUOTE){
+		while(i < len && strCell.charAt(i) == CHAR_QUOTE){
+			i++;
 			checkFirstQuote++;
 		}
 
@@ -456,11 +1077,32 @@ public class CSVWriter {
 		return cellArray;
 	}
 	/**
-	 * Closes the underlying writer.
+	 * Writes the buffered rows and closes the underlying file.
 	 * 
 	 * @throws java.io.Exception
 	 */
 	public void close() throws IOException{
-		writer.close();	
+		if(!channel.isOpen()){
+			return;
+		}
+		try{
+			encodeChars(true);
+			writeBytes();
+		}
+		finally{
+			if(counters != null){
+				long start = System.nanoTime();
+				try{
+					channel.close();
+				}
+				finally{
+					counters.flushNanos += System.nanoTime() - start;
+					counters.report();
+				}
+			}
+			else{
+				channel.close();
+			}
+		}
 	}
 }
@@ -0,0 +1,217 @@
+package csv;
+
+/**
+* Class CellCache
+* A cache of the cells of a reader, so a value which is repeated in many rows is one String
+* (see CSVReader.setCellCache). A cell is looked up from the chars of the reader with the same
+* hash as String.hashCode(), a String is only created when the cell is not in the cache.
+*
+* The cache has a fixed number of entries, each cell can be in one of two entries: a new cell
+* evicts the older of them. When the hits are too few (the column has too many distinct values),
+* the cache stops looking up the cells.
+* A cache is used by one reader at a time.
+* @version
+*/
+
+public final class CellCache {
+
+	/**
+	 * Default number of entries
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	/**
+	 * Default max number of chars of a cached cell
+	 */
+	public static final int DEFAULT_MAX_LENGTH = 64;
+
+	/**
+	 * the hit ratio is checked after this number of lookups
+	 */
+	private static final int CHECK_INTERVAL = 64 * 1024;
+
+	/**
+	 * the cache is disabled if less than 1 / MIN_HIT_RATIO of the lookups of an interval are hits
+	 */
+	private static final int MIN_HIT_RATIO = 8;
+
+	/**
+	 * entries, two per set: the newer one at an even index
+	 */
+	private final String[] entries;
+
+	private final int[] hashes;
+
+	private final int mask;
+
+	private final int maxLength;
+
+	private long hits;
+
+	private long misses;
+
+	private long evictions;
+
+	/**
+	 * lookups and hits since the last check of the hit ratio
+	 */
+	private int intervalLookups;
+	private int intervalHits;
+
+	private boolean disabled;
+
+	/**
+	 * Constructs CellCache with the default capacity
+	 */
+	public CellCache() {
+		this(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+	}
+
+	/**
+	 * Constructs CellCache
+	 *
+	 * @param capacity   number of entries, rounded up to a power of 2
+	 * @param maxLength  max number of chars of a cached cell
+	 */
+	public CellCache(int capacity, int maxLength) {
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		this.entries = new String[size];
+		this.hashes = new int[size];
+		this.mask = size - 2;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Get the String of some chars
+	 *
+	 * @param buf    buffer holding the cell
+	 * @param start  index of the first char of the cell
+	 * @param end    index after the last char of the cell
+	 * @return the cached String equal to the chars, or a new String
+	 */
+	public String get(char[] buf, int start, int end) {
+		int len = end - start;
+		if (disabled || len > maxLength) {
+			return new String(buf, start, len);
+		}
+		int h = 0;
+		for (int i = start; i < end; i++) {
+			h = 31 * h + buf[i];
+		}
+		int set = (h ^ (h >>> 16)) & mask;
+
+		String entry = entries[set];
+		if (entry != null && hashes[set] == h && matches(entry, buf, start, len)) {
+			hit();
+			return entry;
+		}
+		String older = entries[set + 1];
+		if (older != null && hashes[set + 1] == h && matches(older, buf, start, len)) {
+			// the entry becomes the newer of its set
+			entries[set + 1] = entry;
+			hashes[set + 1] = hashes[set];
+			entries[set] = older;
+			hashes[set] = h;
+			hit();
+			return older;
+		}
+
+		String cell = new String(buf, start, len);
+		if (older != null) {
+			evictions++;
+		}
+		entries[set + 1] = entry;
+		hashes[set + 1] = hashes[set];
+		entries[set] = cell;
+		hashes[set] = h;
+		misses++;
+		check();
+		return cell;
+	}
+
+	private static boolean matches(String entry, char[] buf, int start, int len) {
+		if (entry.length() != len) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			if (entry.charAt(i) != buf[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void hit() {
+		hits++;
+		intervalHits++;
+		check();
+	}
+
+	/**
+	 * Disable the cache if the hits of the last interval are too few
+	 */
+	private void check() {
+		if (++intervalLookups < CHECK_INTERVAL) {
+			return;
+		}
+		if (intervalHits * MIN_HIT_RATIO < intervalLookups) {
+			disabled = true;
+			for (int i = 0; i < entries.length; i++) {
+				entries[i] = null;
+			}
+		}
+		intervalLookups = 0;
+		intervalHits = 0;
+	}
+
+	/**
+	 * @return the number of cells found in the cache
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of cells not found in the cache
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the number of entries replaced by a newer cell
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return true if the cache has stopped looking up the cells because of too few hits
+	 */
+	public boolean isDisabled() {
+		return disabled;
+	}
+
+	/**
+	 * Empty the cache, reset the statistics and enable it again
+	 */
+	public void clear() {
+		for (int i = 0; i < entries.length; i++) {
+			entries[i] = null;
+		}
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+		intervalLookups = 0;
+		intervalHits = 0;
+		disabled = false;
+	}
+
+	@Override
+	public String toString() {
+		long lookups = hits + misses;
+		return "CellCache[hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+				+ ", hitRatio=" + (lookups == 0 ? 0 : hits * 100 / lookups) + "%"
+				+ (disabled ? ", disabled" : "") + "]";
+	}
+}
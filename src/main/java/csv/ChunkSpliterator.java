@@ -0,0 +1,173 @@
+package csv;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+* Class ChunkSpliterator
+* Spliterator of the rows of a ParallelCSVReader. It covers a range of chunks of the file,
+* trySplit() gives the first half of the chunks to a new spliterator.
+* The row starts of the chunks are found when the spliterator is first used.
+* The readers of the chunks being read are closed by close(), for a stream which
+* is closed before its end (findFirst(), limit(), ...).
+* @version
+*/
+
+final class ChunkSpliterator implements Spliterator<List<String>> {
+
+	private final ParallelCSVReader source;
+
+	/**
+	 * first row start of each chunk, see ParallelCSVReader.findRowStarts()
+	 */
+	private long[] rowStarts;
+
+	/**
+	 * current chunk and end of the range of chunks
+	 */
+	private int index;
+	private int fence;
+
+	/**
+	 * reader of the current chunk, null if the chunk is not started
+	 */
+	private MappedCSVReader reader;
+
+	/**
+	 * open readers of this spliterator and of the spliterators split from it
+	 */
+	private final OpenReaders openReaders;
+
+	/**
+	 * The readers of the chunks being read, shared by the spliterators of a stream
+	 */
+	private static final class OpenReaders {
+
+		final Set<MappedCSVReader> readers = Collections.newSetFromMap(new ConcurrentHashMap<MappedCSVReader, Boolean>());
+
+		volatile boolean closed;
+	}
+
+	ChunkSpliterator(ParallelCSVReader source) {
+		this.source = source;
+		this.openReaders = new OpenReaders();
+	}
+
+	private ChunkSpliterator(ParallelCSVReader source, long[] rowStarts, int index, int fence, OpenReaders openReaders) {
+		this.source = source;
+		this.rowStarts = rowStarts;
+		this.index = index;
+		this.fence = fence;
+		this.openReaders = openReaders;
+	}
+
+	/**
+	 * Find the row starts if it is not done yet
+	 */
+	private void init() {
+		if (rowStarts == null) {
+			try {
+				rowStarts = source.findRowStarts();
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			index = 0;
+			fence = rowStarts.length - 1;
+		}
+	}
+
+	public boolean tryAdvance(Consumer<? super List<String>> action) {
+		init();
+		try {
+			while (true) {
+				if (reader != null) {
+					List<String> cells = reader.getNextRow();
+					if (cells != null) {
+						action.accept(cells);
+						return true;
+					}
+					closeReader(reader);
+					reader = null;
+					index++;
+				}
+				if (index >= fence || openReaders.closed) {
+					return false;
+				}
+				if (rowStarts[index] < 0) {
+					index++;
+					continue;
+				}
+				reader = source.openChunk(rowStarts, index);
+				openReaders.readers.add(reader);
+				if (openReaders.closed) {
+					// closed while the chunk was opened
+					closeReader(reader);
+					reader = null;
+					return false;
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public Spliterator<List<String>> trySplit() {
+		init();
+		if (reader != null || fence - index < 2) {
+			return null;
+		}
+		int mid = (index + fence) >>> 1;
+		ChunkSpliterator prefix = new ChunkSpliterator(source, rowStarts, index, mid, openReaders);
+		index = mid;
+		return prefix;
+	}
+
+	/**
+	 * @return the number of bytes of the remaining chunks (not the number of rows)
+	 */
+	public long estimateSize() {
+		init();
+		return (long) (fence - index) * source.getChunkSize();
+	}
+
+	/**
+	 * Close the readers of the chunks being read by this spliterator and the spliterators
+	 * split from it, no chunk is opened after
+	 */
+	void close() throws IOException {
+		openReaders.closed = true;
+		IOException error = null;
+		for (MappedCSVReader open : openReaders.readers) {
+			try {
+				closeReader(open);
+			}
+			catch (IOException e) {
+				error = e;
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	/**
+	 * Close a reader once, by the spliterator which ends its chunk or by close()
+	 */
+	private void closeReader(MappedCSVReader open) throws IOException {
+		if (openReaders.readers.remove(open)) {
+			open.close();
+		}
+	}
+
+	public int characteristics() {
+		return ORDERED | NONNULL;
+	}
+}
@@ -0,0 +1,706 @@
+package csv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+* Class ColumnarTable
+* A copy of the rows of a CSV file kept in memory by columns, out of the Java heap.
+* The table is built in one pass of a CSVReader. Each column is stored in direct ByteBuffers as:
+*   LONG        8 bytes per row, if all the cells are written as Long.toString() writes them
+*   DOUBLE      8 bytes per row, if all the cells are written as Double.toString() writes them
+*   DICTIONARY  1, 2 or 4 bytes per row, the code of the cell in a dictionary of the distinct cells
+*   STRING      the chars of the cells and the end of each cell, when the dictionary grows too large
+* The cells are returned the same as CSVReader.getNextRow(). A cell missing in a row is an empty cell.
+* The table is not changed once it is built, it can be read by several threads.
+* @version
+*/
+
+public final class ColumnarTable {
+
+	/**
+	 * Storage of a column
+	 */
+	public enum Type {
+		LONG, DOUBLE, DICTIONARY, STRING
+	}
+
+	/**
+	 * Default max number of distinct cells of a dictionary column
+	 */
+	public static final int DEFAULT_MAX_DICTIONARY_SIZE = 64 * 1024;
+
+	/**
+	 * names of the columns from the header row, null if the file has no header
+	 */
+	private final String[] names;
+
+	private final Column[] columns;
+
+	private final int rowCount;
+
+	/**
+	 * number of cells of each row, null if all the rows have rowWidth cells
+	 */
+	private final ByteBuffer rowSizes;
+
+	private final int rowWidth;
+
+	private ColumnarTable(String[] names, Column[] columns, int rowCount, ByteBuffer rowSizes, int rowWidth) {
+		this.names = names;
+		this.columns = columns;
+		this.rowCount = rowCount;
+		this.rowSizes = rowSizes;
+		this.rowWidth = rowWidth;
+	}
+
+	/**
+	 * Read the remaining rows of a reader into a table
+	 *
+	 * @param reader  the reader, it is not closed
+	 * @param header  true if the first row has the names of the columns
+	 * @return the table
+	 * @throws IOException
+	 */
+	public static ColumnarTable load(CSVReader reader, boolean header) throws IOException {
+		return load(reader, header, DEFAULT_MAX_DICTIONARY_SIZE);
+	}
+
+	/**
+	 * Read the remaining rows of a reader into a table
+	 *
+	 * @param reader             the reader, it is not closed
+	 * @param header             true if the first row has the names of the columns
+	 * @param maxDictionarySize  max number of distinct cells of a dictionary column,
+	 *                           a column with more distinct cells is stored as STRING
+	 * @return the table
+	 * @throws IOException
+	 */
+	public static ColumnarTable load(CSVReader reader, boolean header, int maxDictionarySize) throws IOException {
+		String[] names = null;
+		if (header) {
+			List<String> cells = reader.getNextRow();
+			names = (cells == null) ? new String[0] : cells.toArray(new String[cells.size()]);
+		}
+
+		List<Column> columns = new ArrayList<Column>();
+		CsvRow row = new CsvRow();
+		int rows = 0;
+		int width = -1;				// number of cells of the rows while all the rows have the same
+		ByteBuffer sizes = null;	// number of cells of each row once a row has another number
+		while (reader.getNextRow(row)) {
+			if (rows == Integer.MAX_VALUE) {
+				throw new IOException("Too many rows for a table");
+			}
+			int n = row.size();
+			while (columns.size() < n) {
+				Column column = new Column(maxDictionarySize);
+				column.addMissing(rows);
+				columns.add(column);
+			}
+			for (int i = 0; i < n; i++) {
+				columns.get(i).add(row, i);
+			}
+			for (int i = n; i < columns.size(); i++) {
+				columns.get(i).addMissing(1);
+			}
+
+			if (width < 0) {
+				width = n;
+			}
+			if (sizes == null && n != width) {
+				sizes = allocate(Math.max(rows + 1, 64) * 4L);
+				for (int r = 0; r < rows; r++) {
+					sizes.putInt(r * 4, width);
+				}
+			}
+			if (sizes != null) {
+				sizes = ensure(sizes, (rows + 1) * 4L);
+				sizes.putInt(rows * 4, n);
+			}
+			rows++;
+		}
+
+		Column[] result = columns.toArray(new Column[columns.size()]);
+		for (Column column : result) {
+			column.finish();
+		}
+		if (sizes != null) {
+			sizes = trim(sizes, rows * 4L);
+		}
+		return new ColumnarTable(names, result, rows, sizes, Math.max(width, 0));
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * @return the number of columns, the max number of cells of a row
+	 */
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	/**
+	 * @param column  index of the column
+	 * @return the name of the column in the header row, null if there is none
+	 */
+	public String getColumnName(int column) {
+		checkColumn(column);
+		return (names != null && column < names.length) ? names[column] : null;
+	}
+
+	/**
+	 * @param name  name of a column in the header row
+	 * @return the index of the column, -1 if there is none
+	 */
+	public int getColumnIndex(String name) {
+		if (names != null) {
+			for (int i = 0; i < names.length && i < columns.length; i++) {
+				if (names[i].equals(name)) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param column  index of the column
+	 * @return how the column is stored
+	 */
+	public Type getType(int column) {
+		checkColumn(column);
+		return columns[column].type;
+	}
+
+	/**
+	 * @param row  index of the row
+	 * @return the number of cells of the row
+	 */
+	public int getRowSize(int row) {
+		checkRow(row);
+		return (rowSizes == null) ? rowWidth : rowSizes.getInt(row * 4);
+	}
+
+	/**
+	 * @param row     index of the row
+	 * @param column  index of the column
+	 * @return the cell, the same as the cell of CSVReader.getNextRow(), empty if the row has no such cell
+	 */
+	public String getString(int row, int column) {
+		checkColumn(column);
+		if (column >= getRowSize(row)) {
+			return "";
+		}
+		return columns[column].getString(row);
+	}
+
+	/**
+	 * @param row     index of the row
+	 * @param column  index of the column
+	 * @return the cell as a long, it is only parsed if the column is not LONG
+	 * @throws NumberFormatException if the cell is not a long
+	 */
+	public long getLong(int row, int column) {
+		checkColumn(column);
+		if (columns[column].type == Type.LONG && column < getRowSize(row)) {
+			return columns[column].values.getLong(row * 8);
+		}
+		return Long.parseLong(getString(row, column));
+	}
+
+	/**
+	 * @param row     index of the row
+	 * @param column  index of the column
+	 * @return the cell as a double, it is only parsed if the column is not LONG or DOUBLE
+	 * @throws NumberFormatException if the cell is not a double
+	 */
+	public double getDouble(int row, int column) {
+		checkColumn(column);
+		Column c = columns[column];
+		if (column < getRowSize(row)) {
+			if (c.type == Type.DOUBLE) {
+				return c.values.getDouble(row * 8);
+			}
+			if (c.type == Type.LONG) {
+				return c.values.getLong(row * 8);
+			}
+		}
+		return Double.parseDouble(getString(row, column));
+	}
+
+	/**
+	 * @param row  index of the row
+	 * @return the cells of the row, the same as CSVReader.getNextRow()
+	 */
+	public List<String> getRow(int row) {
+		int n = getRowSize(row);
+		List<String> cellArray = new ArrayList<String>(n);
+		for (int i = 0; i < n; i++) {
+			cellArray.add(columns[i].getString(row));
+		}
+		return cellArray;
+	}
+
+	/**
+	 * @return the number of bytes of the table out of the heap
+	 */
+	public long getOffHeapSize() {
+		long size = (rowSizes == null) ? 0 : rowSizes.capacity();
+		for (Column column : columns) {
+			size += column.offHeapSize();
+		}
+		return size;
+	}
+
+	/**
+	 * @return a report of the memory used by each column
+	 */
+	public String getFootprintReport() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(rowCount).append(" rows, ").append(columns.length).append(" columns, ")
+				.append(getOffHeapSize()).append(" bytes off-heap");
+		if (rowSizes != null) {
+			sb.append(" (").append(rowSizes.capacity()).append(" bytes of row sizes)");
+		}
+		sb.append('\n');
+		for (int i = 0; i < columns.length; i++) {
+			Column column = columns[i];
+			sb.append("  ").append(i);
+			String name = getColumnName(i);
+			if (name != null) {
+				sb.append(' ').append(name);
+			}
+			sb.append(": ").append(column.type);
+			if (column.type == Type.DICTIONARY) {
+				sb.append(", ").append(column.entryCount).append(" entries, ")
+						.append(column.codeWidth).append(" byte codes");
+			}
+			sb.append(", ").append(column.offHeapSize()).append(" bytes\n");
+		}
+		return sb.toString();
+	}
+
+	private void checkRow(int row) {
+		if (row < 0 || row >= rowCount) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+		}
+	}
+
+	private void checkColumn(int column) {
+		if (column < 0 || column >= columns.length) {
+			throw new IndexOutOfBoundsException("Column " + column + " of " + columns.length);
+		}
+	}
+
+	private static ByteBuffer allocate(long size) throws IOException {
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Column larger than 2GB");
+		}
+		return ByteBuffer.allocateDirect((int) size).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * @return the buffer, or a larger copy of it if it has less than size bytes
+	 */
+	private static ByteBuffer ensure(ByteBuffer buffer, long size) throws IOException {
+		if (buffer != null && buffer.capacity() >= size) {
+			return buffer;
+		}
+		long capacity = (buffer == null) ? 64 : buffer.capacity();
+		ByteBuffer larger = allocate(Math.min(Math.max(capacity * 2, size), Integer.MAX_VALUE));
+		if (buffer != null) {
+			ByteBuffer src = buffer.duplicate();
+			src.clear();
+			larger.put(src);
+			larger.clear();
+		}
+		return larger;
+	}
+
+	/**
+	 * @return a copy of the first size bytes of the buffer
+	 */
+	private static ByteBuffer trim(ByteBuffer buffer, long size) throws IOException {
+		if (buffer == null || buffer.capacity() == size) {
+			return buffer;
+		}
+		ByteBuffer src = buffer.duplicate();
+		src.position(0).limit((int) size);
+		ByteBuffer trimmed = allocate(size);
+		trimmed.put(src);
+		trimmed.clear();
+		return trimmed;
+	}
+
+	/**
+	 * A column: its values and, while the table is built, the state to choose its storage
+	 */
+	private static final class Column {
+
+		private final int maxDictionarySize;
+
+		/**
+		 * storage, null until the first cell
+		 */
+		private Type type;
+
+		private int rows;
+
+		/**
+		 * LONG, DOUBLE: the values; DICTIONARY: the codes; STRING: end of each cell in chars
+		 */
+		private ByteBuffer values;
+
+		/**
+		 * number of bytes of a code of a DICTIONARY column
+		 */
+		private int codeWidth = 4;
+
+		/**
+		 * DICTIONARY: chars of the entries; STRING: chars of the cells
+		 */
+		private ByteBuffer chars;
+
+		/**
+		 * number of chars
+		 */
+		private int charCount;
+
+		/**
+		 * DICTIONARY: end of each entry in chars
+		 */
+		private ByteBuffer entryEnds;
+
+		private int entryCount;
+
+		/**
+		 * DICTIONARY: code of each entry, only while the table is built
+		 */
+		private Map<String, Integer> codes;
+
+		/**
+		 * DICTIONARY: entries decoded once they are read
+		 */
+		private String[] entries;
+
+		Column(int maxDictionarySize) {
+			this.maxDictionarySize = Math.max(maxDictionarySize, 1);
+		}
+
+		/**
+		 * Add n cells missing in their row
+		 */
+		void addMissing(int n) throws IOException {
+			for (int i = 0; i < n; i++) {
+				if (type == null || type == Type.LONG || type == Type.DOUBLE) {
+					// the values are filled with 0 when the first cell decides the type
+					rows++;
+				}
+				else {
+					addString("");
+				}
+			}
+		}
+
+		/**
+		 * Add a cell of a row
+		 */
+		void add(CsvRow row, int index) throws IOException {
+			if (type == null) {
+				type = isLong(row, index) ? Type.LONG : isDouble(row, index) ? Type.DOUBLE : Type.DICTIONARY;
+				// the cells before are missing: 0, or code 0 of the empty cell
+				if (type == Type.DICTIONARY) {
+					startDictionary();
+					values = ensure(values, Math.max(rows, 1) * 4L);
+				}
+				else {
+					values = ensure(values, Math.max(rows, 1) * 8L);
+				}
+			}
+			switch (type) {
+			case LONG:
+				if (isLong(row, index)) {
+					values = ensure(values, (rows + 1) * 8L);
+					values.putLong(rows * 8, row.getLong(index));
+					rows++;
+					return;
+				}
+				break;
+			case DOUBLE:
+				if (isDouble(row, index)) {
+					values = ensure(values, (rows + 1) * 8L);
+					values.putDouble(rows * 8, row.getDouble(index));
+					rows++;
+					return;
+				}
+				break;
+			default:
+			}
+			if (type == Type.LONG || type == Type.DOUBLE) {
+				numberToDictionary();
+			}
+			addString(row.toString(index));
+		}
+
+		/**
+		 * @return true if the cell is a long written as Long.toString() writes it
+		 */
+		private static boolean isLong(CsvRow row, int index) {
+			int len = row.length(index);
+			int p = 0;
+			if (len > 0 && row.charAt(index, 0) == '-') {
+				p = 1;
+			}
+			if (len == p || len > 20 || (row.charAt(index, p) == '0' && (len > 1))) {
+				// empty, too long, leading zero or "-0"
+				return false;
+			}
+			for (; p < len; p++) {
+				char c = row.charAt(index, p);
+				if (c < '0' || c > '9') {
+					return false;
+				}
+			}
+			try {
+				row.getLong(index);
+				return true;
+			}
+			catch (NumberFormatException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * @return true if the cell is a double written as Double.toString() writes it
+		 */
+		private static boolean isDouble(CsvRow row, int index) {
+			int len = row.length(index);
+			if (len == 0 || len > 32) {
+				return false;
+			}
+			boolean point = false;
+			for (int p = 0; p < len; p++) {
+				char c = row.charAt(index, p);
+				if (c == '.') {
+					point = true;
+				}
+				else if ((c < '0' || c > '9') && c != '-' && c != 'E') {
+					return false;
+				}
+			}
+			if (!point) {
+				return false;
+			}
+			try {
+				return row.equals(index, Double.toString(row.getDouble(index)));
+			}
+			catch (NumberFormatException e) {
+				return false;
+			}
+		}
+
+		private void startDictionary() throws IOException {
+			type = Type.DICTIONARY;
+			codes = new HashMap<String, Integer>();
+			chars = null;
+			charCount = 0;
+			entryEnds = null;
+			entryCount = 0;
+			// code 0 is the empty cell, so a buffer of zeros is a column of empty cells
+			addEntry("");
+		}
+
+		/**
+		 * Store the cells of a LONG or DOUBLE column in a dictionary
+		 */
+		private void numberToDictionary() throws IOException {
+			int n = rows;
+			ByteBuffer numbers = ensure(values, n * 8L);
+			Type numberType = type;
+			values = null;
+			rows = 0;
+			startDictionary();
+			for (int r = 0; r < n; r++) {
+				addString((numberType == Type.LONG) ? Long.toString(numbers.getLong(r * 8))
+						: Double.toString(numbers.getDouble(r * 8)));
+			}
+		}
+
+		/**
+		 * Add a cell to a DICTIONARY or STRING column
+		 */
+		private void addString(String cell) throws IOException {
+			if (type == Type.DICTIONARY) {
+				Integer code = codes.get(cell);
+				if (code == null) {
+					if (entryCount == maxDictionarySize) {
+						dictionaryToString();
+						addString(cell);
+						return;
+					}
+					code = addEntry(cell);
+				}
+				values = ensure(values, (rows + 1) * 4L);
+				values.putInt(rows * 4, code);
+			}
+			else {
+				appendChars(cell);
+				values = ensure(values, (rows + 1) * 4L);
+				values.putInt(rows * 4, charCount);
+			}
+			rows++;
+		}
+
+		private int addEntry(String entry) throws IOException {
+			appendChars(entry);
+			entryEnds = ensure(entryEnds, (entryCount + 1) * 4L);
+			entryEnds.putInt(entryCount * 4, charCount);
+			codes.put(entry, entryCount);
+			return entryCount++;
+		}
+
+		private void appendChars(String s) throws IOException {
+			int len = s.length();
+			chars = ensure(chars, (charCount + (long) len) * 2);
+			for (int i = 0; i < len; i++) {
+				chars.putChar((charCount + i) * 2, s.charAt(i));
+			}
+			charCount += len;
+		}
+
+		/**
+		 * Store the cells of a DICTIONARY column one by one
+		 */
+		private void dictionaryToString() throws IOException {
+			ByteBuffer oldCodes = values;
+			ByteBuffer oldChars = chars;
+			ByteBuffer oldEnds = entryEnds;
+			int n = rows;
+			type = Type.STRING;
+			codes = null;
+			values = null;
+			chars = null;
+			charCount = 0;
+			entryEnds = null;
+			entryCount = 0;
+			rows = 0;
+			StringBuilder sb = new StringBuilder();
+			for (int r = 0; r < n; r++) {
+				int code = oldCodes.getInt(r * 4);
+				int start = (code == 0) ? 0 : oldEnds.getInt((code - 1) * 4);
+				int end = oldEnds.getInt(code * 4);
+				sb.setLength(0);
+				for (int i = start; i < end; i++) {
+					sb.append(oldChars.getChar(i * 2));
+				}
+				addString(sb.toString());
+			}
+		}
+
+		/**
+		 * Make the buffers as small as possible once all the cells are added
+		 */
+		void finish() throws IOException {
+			if (type == null) {
+				// only missing cells
+				int n = rows;
+				rows = 0;
+				startDictionary();
+				addMissing(n);
+			}
+			switch (type) {
+			case LONG:
+			case DOUBLE:
+				values = trim(ensure(values, rows * 8L), rows * 8L);
+				break;
+			case DICTIONARY:
+				codes = null;
+				entries = new String[entryCount];
+				codeWidth = (entryCount <= 1 << 8) ? 1 : (entryCount <= 1 << 16) ? 2 : 4;
+				if (codeWidth < 4) {
+					ByteBuffer narrow = allocate(Math.max(rows, 1) * (long) codeWidth);
+					for (int r = 0; r < rows; r++) {
+						int code = values.getInt(r * 4);
+						if (codeWidth == 1) {
+							narrow.put(r, (byte) code);
+						}
+						else {
+							narrow.putShort(r * 2, (short) code);
+						}
+					}
+					values = narrow;
+				}
+				else {
+					values = trim(values, rows * 4L);
+				}
+				entryEnds = trim(entryEnds, entryCount * 4L);
+				chars = trim(chars, charCount * 2L);
+				break;
+			default:
+				values = trim(ensure(values, rows * 4L), rows * 4L);
+				chars = trim(chars, charCount * 2L);
+			}
+		}
+
+		/**
+		 * @param row  index of the row
+		 * @return the cell of the row
+		 */
+		String getString(int row) {
+			switch (type) {
+			case LONG:
+				return Long.toString(values.getLong(row * 8));
+			case DOUBLE:
+				return Double.toString(values.getDouble(row * 8));
+			case DICTIONARY:
+				int code = (codeWidth == 1) ? values.get(row) & 0xFF
+						: (codeWidth == 2) ? values.getShort(row * 2) & 0xFFFF : values.getInt(row * 4);
+				String entry = entries[code];
+				if (entry == null) {
+					// a race only decodes the same entry twice
+					entry = readChars((code == 0) ? 0 : entryEnds.getInt((code - 1) * 4), entryEnds.getInt(code * 4));
+					entries[code] = entry;
+				}
+				return entry;
+			default:
+				return readChars((row == 0) ? 0 : values.getInt((row - 1) * 4), values.getInt(row * 4));
+			}
+		}
+
+		private String readChars(int start, int end) {
+			char[] cell = new char[end - start];
+			for (int i = 0; i < cell.length; i++) {
+				cell[i] = chars.getChar((start + i) * 2);
+			}
+			return new String(cell);
+		}
+
+		/**
+		 * @return the number of bytes of the buffers
+		 */
+		long offHeapSize() {
+			long size = 0;
+			if (values != null) {
+				size += values.capacity();
+			}
+			if (chars != null) {
+				size += chars.capacity();
+			}
+			if (entryEnds != null) {
+				size += entryEnds.capacity();
+			}
+			return size;
+		}
+	}
+}
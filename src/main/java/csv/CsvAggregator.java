@@ -0,0 +1,385 @@
+package csv;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+* Class CsvAggregator
+* Streaming group-by of a CSV file: count, sum, min and max of columns by the values of
+* some columns, written to a CSV file by CSVWriter. Only the group and value columns are read,
+* a row is looked up in a hash table of primitive arrays (see AggregateTable) from the chars
+* of its CsvRow, so no object is created for a row of an existing group.
+*
+* An UTF-8 file is split into chunks read by MappedCSVReader on the threads of the pool (see
+* ParallelCSVReader), each thread aggregates into its own table and the tables are merged at
+* the end. Other charsets are read by one CSVReader. A table larger than its share of the memory
+* budget spills its groups to partition files, which are merged partition by partition.
+*
+* The groups are the values of the cells: a cell enclosed in double quotation is the same group
+* as the cell without quotes (a missing cell is an empty cell). A value cell which is not a number
+* is not aggregated; a sum of longs is a long until a decimal number or an overflow makes it a double.
+* The output rows are the group cells then the aggregates in the order they are added, an aggregate
+* without number is an empty cell. The rows are in the order of the first row of each group;
+* when the groups are spilled, they are in this order partition by partition.
+* @version
+*/
+
+public class CsvAggregator {
+
+	/**
+	 * Default memory budget of the groups (64MB)
+	 */
+	public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+	private final String charsetName;
+
+	private final long memoryBudget;
+
+	private final ForkJoinPool pool;
+
+	private int[] groupColumns = new int[0];
+
+	/**
+	 * function and column of each aggregate (-1 for count)
+	 */
+	private int[] functions = new int[0];
+	private int[] valueColumns = new int[0];
+
+	private boolean header;
+
+	private File tempDirectory;
+
+	/**
+	 * Constructs an aggregator of files in a charset, with the default memory budget and the common fork-join pool
+	 *
+	 * @param charsetName  the charset of the files
+	 */
+	public CsvAggregator(String charsetName) {
+		this(charsetName, DEFAULT_MEMORY_BUDGET, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constructs an aggregator of files in a charset
+	 *
+	 * @param charsetName   the charset of the files
+	 * @param memoryBudget  max number of bytes of the groups in memory (about)
+	 * @param pool          the pool which reads the chunks of an UTF-8 file
+	 */
+	public CsvAggregator(String charsetName, long memoryBudget, ForkJoinPool pool) {
+		this.charsetName = charsetName;
+		this.memoryBudget = memoryBudget;
+		this.pool = pool;
+	}
+
+	/**
+	 * Group the rows by the values of some columns, without group columns all the rows are one group
+	 *
+	 * @param columns  indexes of the columns, from 0
+	 */
+	public void groupBy(int... columns) {
+		for (int column : columns) {
+			checkColumn(column);
+		}
+		groupColumns = columns.clone();
+	}
+
+	/**
+	 * Add the number of rows of each group
+	 */
+	public void count() {
+		addAggregate(AggregateTable.COUNT, -1);
+	}
+
+	/**
+	 * Add the sum of the numbers of a column
+	 */
+	public void sum(int column) {
+		checkColumn(column);
+		addAggregate(AggregateTable.SUM, column);
+	}
+
+	/**
+	 * Add the minimum of the numbers of a column
+	 */
+	public void min(int column) {
+		checkColumn(column);
+		addAggregate(AggregateTable.MIN, column);
+	}
+
+	/**
+	 * Add the maximum of the numbers of a column
+	 */
+	public void max(int column) {
+		checkColumn(column);
+		addAggregate(AggregateTable.MAX, column);
+	}
+
+	private static void checkColumn(int column) {
+		if (column < 0) {
+			throw new IllegalArgumentException("Invalid column " + column);
+		}
+	}
+
+	private void addAggregate(int function, int column) {
+		int n = functions.length;
+		functions = Arrays.copyOf(functions, n + 1);
+		valueColumns = Arrays.copyOf(valueColumns, n + 1);
+		functions[n] = function;
+		valueColumns[n] = column;
+	}
+
+	/**
+	 * @param header  true if the first row is a header: it is not aggregated, and the output starts
+	 *                with the names of the group columns and of the aggregates (for example "sum(price)")
+	 */
+	public void setHeader(boolean header) {
+		this.header = header;
+	}
+
+	/**
+	 * @param tempDirectory  the directory of the spill files, null for the default temporary directory
+	 */
+	public void setTempDirectory(File tempDirectory) {
+		this.tempDirectory = tempDirectory;
+	}
+
+	/**
+	 * Aggregate a file. The output file is replaced.
+	 *
+	 * @param inputFile   the file to aggregate
+	 * @param outputFile  the file of the groups
+	 * @return the number of groups
+	 * @throws IOException
+	 */
+	public long aggregate(String inputFile, String outputFile) throws IOException {
+		if (functions.length == 0) {
+			throw new IllegalStateException("No aggregate");
+		}
+		// the columns read: the group columns, then each value column once
+		List<Integer> read = new ArrayList<Integer>();
+		for (int column : groupColumns) {
+			read.add(column);
+		}
+		int[] valueCells = new int[functions.length];
+		for (int a = 0; a < functions.length; a++) {
+			int column = valueColumns[a];
+			if (column < 0) {
+				valueCells[a] = -1;
+				continue;
+			}
+			int cell = read.subList(groupColumns.length, read.size()).indexOf(column);
+			if (cell < 0) {
+				read.add(column);
+				cell = read.size() - 1;
+			}
+			else {
+				cell += groupColumns.length;
+			}
+			valueCells[a] = cell;
+		}
+		int[] columns = new int[read.size()];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = read.get(i);
+		}
+
+		List<String> headerCells = header ? readHeader(inputFile) : null;
+		boolean parallel = "UTF-8".equalsIgnoreCase(charsetName) && pool.getParallelism() > 1
+				&& new File(inputFile).length() > ParallelCSVReader.DEFAULT_CHUNK_SIZE;
+		List<AggregateTable> tables = new ArrayList<AggregateTable>();
+		try {
+			if (parallel) {
+				readChunks(inputFile, columns, valueCells, tables);
+			}
+			else {
+				AggregateTable table = newTable(valueCells, memoryBudget);
+				tables.add(table);
+				CSVReader reader = new CSVReader(inputFile, charsetName);
+				try {
+					reader.selectColumns(columns);
+					CsvRow row = new CsvRow();
+					if (header) {
+						reader.getNextRow(row);
+					}
+					long rowNumber = 0;
+					while (reader.getNextRow(row)) {
+						table.add(row, rowNumber++);
+					}
+				}
+				finally {
+					reader.close();
+				}
+			}
+
+			AggregateTable result = tables.get(0);
+			for (int i = 1; i < tables.size(); i++) {
+				result.merge(tables.get(i));
+			}
+			new FileOutputStream(outputFile).close();
+			CSVWriter writer = new CSVWriter(outputFile, charsetName);
+			try {
+				if (headerCells != null) {
+					writer.appendRow(headerCells);
+				}
+				if (!spilled(tables)) {
+					return result.write(writer);
+				}
+				return writePartitions(tables, valueCells, writer);
+			}
+			finally {
+				writer.close();
+			}
+		}
+		finally {
+			for (AggregateTable table : tables) {
+				table.deleteSpill();
+			}
+		}
+	}
+
+	/**
+	 * @return the header of the output: the names of the group columns and of the aggregates
+	 */
+	private List<String> readHeader(String inputFile) throws IOException {
+		CSVReader reader = new CSVReader(inputFile, charsetName);
+		List<String> names;
+		try {
+			names = reader.getNextRow();
+		}
+		finally {
+			reader.close();
+		}
+		if (names == null) {
+			names = new ArrayList<String>();
+		}
+		List<String> headerCells = new ArrayList<String>();
+		for (int column : groupColumns) {
+			headerCells.add(AggregateTable.toCell(name(names, column)));
+		}
+		String[] functionNames = {"count", "sum", "min", "max"};
+		for (int a = 0; a < functions.length; a++) {
+			String function = functionNames[functions[a]];
+			headerCells.add(AggregateTable.toCell(
+					(valueColumns[a] < 0) ? function : function + "(" + name(names, valueColumns[a]) + ")"));
+		}
+		return headerCells;
+	}
+
+	/**
+	 * @return the name of a column without enclosing double quotation
+	 */
+	private static String name(List<String> names, int column) {
+		String name = (column < names.size()) ? names.get(column) : "";
+		if (name.length() >= 2 && name.charAt(0) == '"' && name.charAt(name.length() - 1) == '"') {
+			name = name.substring(1, name.length() - 1).replace("\"\"", "\"");
+		}
+		return name;
+	}
+
+	private AggregateTable newTable(int[] valueCells, long budget) {
+		return new AggregateTable(groupColumns.length, functions, valueCells, budget, tempDirectory);
+	}
+
+	/**
+	 * Aggregate the chunks of an UTF-8 file, one table per thread of the pool. A thread takes
+	 * the next chunk when it has finished one, so the threads stay busy with uneven chunks.
+	 */
+	private void readChunks(String inputFile, final int[] columns, final int[] valueCells,
+			List<AggregateTable> tables) throws IOException {
+		final ParallelCSVReader chunks = new ParallelCSVReader(inputFile, ParallelCSVReader.DEFAULT_CHUNK_SIZE, pool);
+		final long[] rowStarts = chunks.findRowStarts();
+		final AtomicInteger nextChunk = new AtomicInteger();
+		int threads = pool.getParallelism();
+		final long budget = memoryBudget / threads;
+		List<Future<AggregateTable>> tasks = new ArrayList<Future<AggregateTable>>(threads);
+		for (int t = 0; t < threads; t++) {
+			tasks.add(pool.submit(new Callable<AggregateTable>() {
+				public AggregateTable call() throws IOException {
+					AggregateTable table = newTable(valueCells, budget);
+					try {
+						CsvRow row = new CsvRow();
+						int i;
+						while ((i = nextChunk.getAndIncrement()) < rowStarts.length - 1) {
+							if (rowStarts[i] < 0) {
+								continue;
+							}
+							MappedCSVReader reader = chunks.openChunk(rowStarts, i);
+							try {
+								while (reader.getNextRow(row, columns)) {
+									long offset = reader.getRowOffset();
+									if (!header || offset > 0) {
+										table.add(row, offset);
+									}
+								}
+							}
+							finally {
+								reader.close();
+							}
+						}
+					}
+					catch (IOException e) {
+						table.deleteSpill();
+						throw e;
+					}
+					return table;
+				}
+			}));
+		}
+		IOException error = null;
+		for (Future<AggregateTable> task : tasks) {
+			try {
+				tables.add(ParallelCSVReader.get(task));
+			}
+			catch (IOException e) {
+				error = e;
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	private static boolean spilled(List<AggregateTable> tables) {
+		for (AggregateTable table : tables) {
+			if (table.spilled()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Spill all the tables, then merge and write the groups partition by partition
+	 *
+	 * @return the number of groups
+	 */
+	private long writePartitions(List<AggregateTable> tables, int[] valueCells, CSVWriter writer) throws IOException {
+		List<File[]> spills = new ArrayList<File[]>();
+		// the first table has the groups of the other tables (see merge())
+		spills.add(tables.get(0).finishSpill());
+		for (int i = 1; i < tables.size(); i++) {
+			if (tables.get(i).spilled()) {
+				spills.add(tables.get(i).finishSpill());
+			}
+		}
+		long groups = 0;
+		for (int p = 0; p < AggregateTable.PARTITIONS; p++) {
+			AggregateTable partition = newTable(valueCells, Long.MAX_VALUE);
+			for (File[] files : spills) {
+				if (files[p] != null) {
+					partition.load(files[p]);
+					files[p].delete();
+				}
+			}
+			groups += partition.write(writer);
+		}
+		return groups;
+	}
+}
@@ -0,0 +1,398 @@
+package csv;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+* Class CsvJoiner
+* Hash join of two CSV files by the values of some columns: the rows of the smaller file (the build
+* side, for example a dimension) are put in a hash table (see JoinTable) and the rows of the other
+* file (the probe side, for example facts) are read one by one and looked up, the joined rows are
+* written by CSVWriter. The keys and the rows of the build side are encoded in a byte arena,
+* so the table is several times smaller than a HashMap of Strings.
+*
+* An output row is the cells of the probe row, then the cells of a build row of the same key without
+* its key cells; a probe row is written once per build row of its key, in the order of the build file.
+* An inner join drops the probe rows without build row, a left join writes them with empty build cells.
+* The build cells are as many as the largest build row, a shorter row is completed with empty cells.
+* The keys are the values of the cells: a cell enclosed in double quotation is the same key as the cell
+* without quotes, a missing cell is an empty value (which matches an empty value).
+*
+* When the table is larger than the memory budget, the join becomes a Grace hash join: the build rows
+* are spilled to partition files by the hash of their key, the probe rows to the same partitions,
+* then each partition is joined in memory. A partition which is still too large is partitioned
+* again by other bits of the hash. The output rows are in the order of the probe file, but for
+* a spilled join they are in this order partition by partition.
+* @version
+*/
+
+public class CsvJoiner {
+
+	/**
+	 * Default memory budget of the build side (64MB)
+	 */
+	public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+	/**
+	 * max number of times a partition is partitioned again; the rows of one key cannot be split,
+	 * so a partition of the last level is joined in memory whatever its size
+	 */
+	private static final int MAX_LEVEL = 3;
+
+	/**
+	 * Types of join
+	 */
+	public enum JoinType {
+		INNER, LEFT
+	}
+
+	private final String charsetName;
+
+	private final long memoryBudget;
+
+	private int[] probeKeys;
+
+	private int[] buildKeys;
+
+	private JoinType joinType = JoinType.INNER;
+
+	private boolean header;
+
+	private File tempDirectory;
+
+	/**
+	 * number of build cells of an output row
+	 */
+	private int buildWidth;
+
+	/**
+	 * Constructs a joiner of files in a charset, with the default memory budget
+	 *
+	 * @param charsetName  the charset of the files
+	 */
+	public CsvJoiner(String charsetName) {
+		this(charsetName, DEFAULT_MEMORY_BUDGET);
+	}
+
+	/**
+	 * Constructs a joiner of files in a charset
+	 *
+	 * @param charsetName   the charset of the files
+	 * @param memoryBudget  max number of bytes of the build side in memory (about)
+	 */
+	public CsvJoiner(String charsetName, long memoryBudget) {
+		this.charsetName = charsetName;
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Join the rows with the same values in some columns
+	 *
+	 * @param probeKeys  indexes of the key columns of the probe file, from 0
+	 * @param buildKeys  indexes of the key columns of the build file, in the same order
+	 */
+	public void on(int[] probeKeys, int[] buildKeys) {
+		if (probeKeys.length == 0 || probeKeys.length != buildKeys.length) {
+			throw new IllegalArgumentException("The probe and build keys must have the same number of columns");
+		}
+		checkColumns(probeKeys);
+		checkColumns(buildKeys);
+		this.probeKeys = probeKeys.clone();
+		this.buildKeys = buildKeys.clone();
+	}
+
+	/**
+	 * Join the rows with the same values in some columns, the same in both files
+	 *
+	 * @param keys  indexes of the key columns, from 0
+	 */
+	public void on(int... keys) {
+		on(keys, keys);
+	}
+
+	private static void checkColumns(int[] columns) {
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i] < 0) {
+				throw new IllegalArgumentException("Invalid column " + columns[i]);
+			}
+			for (int j = 0; j < i; j++) {
+				if (columns[j] == columns[i]) {
+					throw new IllegalArgumentException("Duplicate column " + columns[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param joinType  INNER (the default) or LEFT
+	 */
+	public void setJoinType(JoinType joinType) {
+		this.joinType = joinType;
+	}
+
+	/**
+	 * @param header  true if the first row of both files is a header: it is not joined, and the output
+	 *                starts with the header of the probe file then the header of the build file without its keys
+	 */
+	public void setHeader(boolean header) {
+		this.header = header;
+	}
+
+	/**
+	 * @param tempDirectory  the directory of the spill files, null for the default temporary directory
+	 */
+	public void setTempDirectory(File tempDirectory) {
+		this.tempDirectory = tempDirectory;
+	}
+
+	/**
+	 * Join two files. The output file is replaced.
+	 *
+	 * @param probeFile   the larger file, streamed
+	 * @param buildFile   the smaller file, in memory
+	 * @param outputFile  the file of the joined rows
+	 * @return the number of rows written, without the header
+	 * @throws IOException
+	 */
+	public long join(String probeFile, String buildFile, String outputFile) throws IOException {
+		if (probeKeys == null) {
+			throw new IllegalStateException("No key");
+		}
+		// the build columns not copied to the output, sorted
+		int[] skipColumns = buildKeys.clone();
+		Arrays.sort(skipColumns);
+		JoinTable table = new JoinTable();
+		CsvRow row = new CsvRow();
+		List<String> buildHeader = null;
+		buildWidth = 0;
+		JoinTable.Partitions buildPartitions = null;
+		JoinTable.Partitions probePartitions = null;
+		try {
+			CSVReader reader = new CSVReader(buildFile, charsetName);
+			try {
+				if (header && reader.getNextRow(row)) {
+					table.setRow(row, skipColumns);
+					buildHeader = new ArrayList<String>();
+					table.getCells(table.row, 0, buildHeader);
+					buildWidth = buildHeader.size();
+				}
+				while (reader.getNextRow(row)) {
+					table.setKey(row, buildKeys);
+					table.setRow(row, skipColumns);
+					buildWidth = Math.max(buildWidth, table.rowCells());
+					if (buildPartitions != null) {
+						table.writeRecord(buildPartitions.get(table.hash));
+						continue;
+					}
+					table.add();
+					if (table.size() > memoryBudget) {
+						buildPartitions = new JoinTable.Partitions(0, tempDirectory);
+						table.writeRecords(buildPartitions);
+						table.clear();
+					}
+				}
+			}
+			finally {
+				reader.close();
+			}
+
+			new FileOutputStream(outputFile).close();
+			CSVWriter writer = new CSVWriter(outputFile, charsetName);
+			try {
+				reader = new CSVReader(probeFile, charsetName);
+				try {
+					if (header && reader.getNextRow(row)) {
+						List<String> cells = row.toList();
+						if (buildHeader != null) {
+							cells.addAll(buildHeader);
+						}
+						appendRow(writer, cells, cells.size());
+					}
+					if (buildPartitions == null) {
+						return probe(reader, row, table, writer);
+					}
+					probePartitions = new JoinTable.Partitions(0, tempDirectory);
+					JoinTable probeRows = new JoinTable();
+					while (reader.getNextRow(row)) {
+						probeRows.setKey(row, probeKeys);
+						probeRows.setRow(row, new int[0]);
+						probeRows.writeRecord(probePartitions.get(probeRows.hash));
+					}
+				}
+				finally {
+					reader.close();
+				}
+				File[] builds = buildPartitions.finish();
+				File[] probes = probePartitions.finish();
+				long rows = 0;
+				for (int p = 0; p < JoinTable.Partitions.PARTITIONS; p++) {
+					rows += joinPartition(builds[p], probes[p], 1, table, writer);
+				}
+				return rows;
+			}
+			finally {
+				writer.close();
+			}
+		}
+		finally {
+			if (buildPartitions != null) {
+				buildPartitions.delete();
+			}
+			if (probePartitions != null) {
+				probePartitions.delete();
+			}
+		}
+	}
+
+	/**
+	 * Join the rows of a reader with the table
+	 *
+	 * @return the number of rows written
+	 */
+	private long probe(CSVReader reader, CsvRow row, JoinTable table, CSVWriter writer) throws IOException {
+		long rows = 0;
+		List<String> cells = new ArrayList<String>();
+		while (reader.getNextRow(row)) {
+			table.setKey(row, probeKeys);
+			int r = table.firstRow();
+			if (r < 0 && joinType == JoinType.INNER) {
+				continue;
+			}
+			do {
+				cells.clear();
+				for (int c = 0; c < row.size(); c++) {
+					cells.add(row.toString(c));
+				}
+				int probeCells = cells.size();
+				if (r >= 0) {
+					table.getCells(r, cells);
+					r = table.nextRow(r);
+				}
+				appendRow(writer, cells, probeCells + buildWidth);
+				rows++;
+			} while (r >= 0);
+		}
+		return rows;
+	}
+
+	/**
+	 * Join the rows of a probe partition with the rows of a build partition, the files are deleted
+	 *
+	 * @param level  the level of partitioning of the files
+	 * @return the number of rows written
+	 */
+	private long joinPartition(File buildFile, File probeFile, int level, JoinTable table, CSVWriter writer)
+			throws IOException {
+		if (probeFile == null || (buildFile == null && joinType == JoinType.INNER)) {
+			if (buildFile != null) {
+				buildFile.delete();
+			}
+			if (probeFile != null) {
+				probeFile.delete();
+			}
+			return 0;
+		}
+		if (buildFile != null && buildFile.length() > memoryBudget && level <= MAX_LEVEL) {
+			// partition again both files by other bits of the hash
+			JoinTable.Partitions builds = new JoinTable.Partitions(level, tempDirectory);
+			JoinTable.Partitions probes = new JoinTable.Partitions(level, tempDirectory);
+			try {
+				split(buildFile, builds, table);
+				split(probeFile, probes, table);
+				File[] buildFiles = builds.finish();
+				File[] probeFiles = probes.finish();
+				long rows = 0;
+				for (int p = 0; p < JoinTable.Partitions.PARTITIONS; p++) {
+					rows += joinPartition(buildFiles[p], probeFiles[p], level + 1, table, writer);
+				}
+				return rows;
+			}
+			finally {
+				builds.delete();
+				probes.delete();
+			}
+		}
+
+		table.clear();
+		DataInputStream in;
+		if (buildFile != null) {
+			in = open(buildFile);
+			try {
+				while (table.readRecord(in)) {
+					table.add();
+				}
+			}
+			finally {
+				in.close();
+				buildFile.delete();
+			}
+		}
+		long rows = 0;
+		JoinTable probeRow = new JoinTable();
+		List<String> cells = new ArrayList<String>();
+		in = open(probeFile);
+		try {
+			while (probeRow.readRecord(in)) {
+				table.setKey(probeRow);
+				int r = table.firstRow();
+				if (r < 0 && joinType == JoinType.INNER) {
+					continue;
+				}
+				do {
+					cells.clear();
+					probeRow.getCells(probeRow.row, 0, cells);
+					int probeCells = cells.size();
+					if (r >= 0) {
+						table.getCells(r, cells);
+						r = table.nextRow(r);
+					}
+					appendRow(writer, cells, probeCells + buildWidth);
+					rows++;
+				} while (r >= 0);
+			}
+		}
+		finally {
+			in.close();
+			probeFile.delete();
+		}
+		table.clear();
+		return rows;
+	}
+
+	/**
+	 * Copy the records of a file to partitions, the file is deleted
+	 */
+	private static void split(File file, JoinTable.Partitions partitions, JoinTable table) throws IOException {
+		DataInputStream in = open(file);
+		try {
+			while (table.readRecord(in)) {
+				table.writeRecord(partitions.get(table.hash));
+			}
+		}
+		finally {
+			in.close();
+			file.delete();
+		}
+	}
+
+	private static DataInputStream open(File file) throws IOException {
+		return new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+	}
+
+	/**
+	 * Write a row, completed with empty cells
+	 */
+	private static void appendRow(CSVWriter writer, List<String> cells, int width) throws IOException {
+		while (cells.size() < width) {
+			cells.add("");
+		}
+		writer.appendRow(cells);
+	}
+}
@@ -0,0 +1,216 @@
+package csv;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+* Class CsvMetrics
+* Counts and times of CSVReader and CSVWriter (see setMetrics()), to find where the time of
+* an import or export goes. One CsvMetrics can be shared by several readers and writers,
+* it then has their totals.
+*
+* A reader or writer counts in plain fields and adds its counts here about every REPORT_INTERVAL ms
+* and on flush, end of file and close, so the metrics cost little while they are on and nothing
+* but a null check per row while they are off. The metrics can be read by listeners, by JMX
+* (see register()) or by the getters.
+*
+* The times are in nanoseconds, each time is counted once:
+*   . decode: reading the file and decoding the bytes into chars (the reader does both at once)
+*   . parse: splitting the chars into rows and cells
+*   . escape: formatting the cells in CSV format
+*   . encode: encoding the chars into bytes
+*   . flush: writing the bytes to the file
+* The time of the code which uses the rows is the wall-clock time minus these times.
+* @version
+*/
+
+public final class CsvMetrics implements CsvMetricsMBean {
+
+	/**
+	 * Max time (ms) between two reports of a reader or writer while it reads or writes rows
+	 */
+	public static final long REPORT_INTERVAL = 100;
+
+	private final AtomicLong rows = new AtomicLong();
+
+	private final AtomicLong cells = new AtomicLong();
+
+	private final AtomicLong bytes = new AtomicLong();
+
+	private final AtomicLong quotedCells = new AtomicLong();
+
+	private final AtomicLong multiLineCells = new AtomicLong();
+
+	private final AtomicLong refills = new AtomicLong();
+
+	private final AtomicLong decodeNanos = new AtomicLong();
+
+	private final AtomicLong parseNanos = new AtomicLong();
+
+	private final AtomicLong escapeNanos = new AtomicLong();
+
+	private final AtomicLong encodeNanos = new AtomicLong();
+
+	private final AtomicLong flushNanos = new AtomicLong();
+
+	private final List<CsvMetricsListener> listeners = new CopyOnWriteArrayList<CsvMetricsListener>();
+
+	/**
+	 * name of the registered MBean, null if not registered
+	 */
+	private volatile ObjectName objectName;
+
+	public void addListener(CsvMetricsListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(CsvMetricsListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Register the metrics in the platform MBean server as "csv:type=CsvMetrics,name=<name>"
+	 *
+	 * @param name  name of the metrics, for example the name of the import
+	 * @return the name of the MBean
+	 * @throws JMException if the name is invalid or already registered
+	 */
+	public ObjectName register(String name) throws JMException {
+		ObjectName registered = new ObjectName("csv:type=CsvMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, registered);
+		objectName = registered;
+		return registered;
+	}
+
+	/**
+	 * Remove the metrics from the platform MBean server, if they are registered
+	 *
+	 * @throws JMException
+	 */
+	public void unregister() throws JMException {
+		ObjectName registered = objectName;
+		if (registered != null) {
+			objectName = null;
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(registered)) {
+				server.unregisterMBean(registered);
+			}
+		}
+	}
+
+	/**
+	 * Add the counts of a reader or writer, clear them and tell the listeners
+	 */
+	void add(MetricsCounters counters) {
+		rows.addAndGet(counters.rows);
+		cells.addAndGet(counters.cells);
+		bytes.addAndGet(counters.bytes);
+		quotedCells.addAndGet(counters.quotedCells);
+		multiLineCells.addAndGet(counters.multiLineCells);
+		refills.addAndGet(counters.refills);
+		decodeNanos.addAndGet(counters.decodeNanos);
+		parseNanos.addAndGet(counters.parseNanos);
+		escapeNanos.addAndGet(counters.escapeNanos);
+		encodeNanos.addAndGet(counters.encodeNanos);
+		flushNanos.addAndGet(counters.flushNanos);
+		counters.clear();
+		for (CsvMetricsListener listener : listeners) {
+			listener.metricsUpdated(this);
+		}
+	}
+
+	/**
+	 * @return the number of rows read or written
+	 */
+	public long getRows() {
+		return rows.get();
+	}
+
+	/**
+	 * @return the number of cells of the rows (the selected cells for a reader with selected columns)
+	 */
+	public long getCells() {
+		return cells.get();
+	}
+
+	/**
+	 * @return the number of bytes read from a plain file or written to the file (compressed for gzip)
+	 */
+	public long getBytes() {
+		return bytes.get();
+	}
+
+	/**
+	 * @return the number of cells enclosed in double quotation
+	 */
+	public long getQuotedCells() {
+		return quotedCells.get();
+	}
+
+	/**
+	 * @return the number of cells with a line-feed
+	 */
+	public long getMultiLineCells() {
+		return multiLineCells.get();
+	}
+
+	/**
+	 * @return the number of times the char window of a reader is filled,
+	 *         or the byte buffer of a writer is written to the file
+	 */
+	public long getRefills() {
+		return refills.get();
+	}
+
+	public long getDecodeNanos() {
+		return decodeNanos.get();
+	}
+
+	public long getParseNanos() {
+		return parseNanos.get();
+	}
+
+	public long getEscapeNanos() {
+		return escapeNanos.get();
+	}
+
+	public long getEncodeNanos() {
+		return encodeNanos.get();
+	}
+
+	public long getFlushNanos() {
+		return flushNanos.get();
+	}
+
+	/**
+	 * Set all the counts to 0, the counts not reported yet by the readers and writers are kept
+	 */
+	public void reset() {
+		rows.set(0);
+		cells.set(0);
+		bytes.set(0);
+		quotedCells.set(0);
+		multiLineCells.set(0);
+		refills.set(0);
+		decodeNanos.set(0);
+		parseNanos.set(0);
+		escapeNanos.set(0);
+		encodeNanos.set(0);
+		flushNanos.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return "CsvMetrics[rows=" + getRows() + ", cells=" + getCells() + ", bytes=" + getBytes()
+				+ ", quotedCells=" + getQuotedCells() + ", multiLineCells=" + getMultiLineCells()
+				+ ", refills=" + getRefills() + ", decodeMs=" + getDecodeNanos() / 1000000
+				+ ", parseMs=" + getParseNanos() / 1000000 + ", escapeMs=" + getEscapeNanos() / 1000000
+				+ ", encodeMs=" + getEncodeNanos() / 1000000 + ", flushMs=" + getFlushNanos() / 1000000 + "]";
+	}
+}
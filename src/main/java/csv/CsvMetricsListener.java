@@ -0,0 +1,17 @@
+package csv;
+
+/**
+* Interface CsvMetricsListener
+* Is told when a reader or a writer adds its counts to a CsvMetrics: about every
+* CsvMetrics.REPORT_INTERVAL ms while rows are read or written, and on flush, end of file and close.
+* It is called by the thread of the reader or writer, so it should return quickly.
+* @version
+*/
+
+public interface CsvMetricsListener {
+
+	/**
+	 * @param metrics  the metrics with the new counts added
+	 */
+	void metricsUpdated(CsvMetrics metrics);
+}
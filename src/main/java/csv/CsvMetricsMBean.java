@@ -0,0 +1,35 @@
+package csv;
+
+/**
+* Interface CsvMetricsMBean
+* The JMX view of CsvMetrics (see CsvMetrics.register()).
+* The times are in nanoseconds.
+* @version
+*/
+
+public interface CsvMetricsMBean {
+
+	long getRows();
+
+	long getCells();
+
+	long getBytes();
+
+	long getQuotedCells();
+
+	long getMultiLineCells();
+
+	long getRefills();
+
+	long getDecodeNanos();
+
+	long getParseNanos();
+
+	long getEscapeNanos();
+
+	long getEncodeNanos();
+
+	long getFlushNanos();
+
+	void reset();
+}
@@ -0,0 +1,527 @@
+package csv;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+* Class CsvPipeline
+* Reads the rows of a CSVReader, transforms them by stages and writes them to a CSVWriter,
+* with one thread for the reader, the threads of each stage and the calling thread for the writer,
+* so a slow transform does not stall the reading and the writing and the other way round.
+*
+* The rows go from one stage to the next by batches, through a bounded queue per stage. A full
+* queue blocks the stage before it, and at most a fixed number of batches are between the reader
+* and the writer, so the memory is bounded whatever stage is slow. The rows of a batch keep their
+* order; the batches are written in the order of the file when the pipeline is ordered (the default),
+* else as soon as they are transformed.
+*
+* A blocking stage (a transform which waits for I/O, a database or a service) runs on virtual
+* threads when the JVM has them (Java 21), it can then have hundreds of threads. It runs on
+* platform threads on older JVMs. The metrics of each stage (see StageMetrics) show which stage
+* is the bottleneck.
+*
+* The cells are written by CSVWriter.appendRow(), so the cells of CSVReader can go through unchanged.
+* @version
+*/
+
+public class CsvPipeline {
+
+	/**
+	 * Default number of rows of a batch
+	 */
+	public static final int DEFAULT_BATCH_ROWS = 1024;
+
+	/**
+	 * Default number of batches of a queue
+	 */
+	public static final int DEFAULT_QUEUE_BATCHES = 4;
+
+	/**
+	 * time (ms) a thread waits on a queue before checking if the pipeline failed
+	 */
+	private static final long POLL_INTERVAL = 50;
+
+	/**
+	 * Thread.ofVirtual(), Thread.Builder.name() and Thread.Builder.unstarted(), null before Java 21
+	 */
+	private static final Method OF_VIRTUAL;
+	private static final Method BUILDER_NAME;
+	private static final Method BUILDER_UNSTARTED;
+
+	static {
+		Method ofVirtual = null;
+		Method name = null;
+		Method unstarted = null;
+		try {
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			name = builder.getMethod("name", String.class);
+			unstarted = builder.getMethod("unstarted", Runnable.class);
+		}
+		catch (Exception e) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = name;
+		BUILDER_UNSTARTED = unstarted;
+	}
+
+	/**
+	 * end of the batches, given once to each thread of a stage
+	 */
+	private static final Batch END = new Batch(-1, null);
+
+	private final CSVReader reader;
+
+	private final CSVWriter writer;
+
+	private final List<Stage> stages = new ArrayList<Stage>();
+
+	private int batchRows = DEFAULT_BATCH_ROWS;
+
+	private int queueBatches = DEFAULT_QUEUE_BATCHES;
+
+	private boolean ordered = true;
+
+	/**
+	 * metrics of the reader, the stages and the writer, set by run()
+	 */
+	private volatile List<StageMetrics> metrics = Collections.emptyList();
+
+	/**
+	 * first error of a thread, the other threads stop when it is set
+	 */
+	private volatile Throwable error;
+
+	/**
+	 * A batch of rows and its number in the file
+	 */
+	private static final class Batch {
+
+		final long seq;
+
+		List<List<String>> rows;
+
+		Batch(long seq, List<List<String>> rows) {
+			this.seq = seq;
+			this.rows = rows;
+		}
+	}
+
+	/**
+	 * A transform stage
+	 */
+	private static final class Stage {
+
+		final String name;
+
+		final RowTransform transform;
+
+		final int threads;
+
+		final boolean blocking;
+
+		Stage(String name, RowTransform transform, int threads, boolean blocking) {
+			this.name = name;
+			this.transform = transform;
+			this.threads = threads;
+			this.blocking = blocking;
+		}
+	}
+
+	/**
+	 * Constructs a pipeline from a reader to a writer. The pipeline does not close them.
+	 *
+	 * @param reader  the source of the rows
+	 * @param writer  the sink of the rows
+	 */
+	public CsvPipeline(CSVReader reader, CSVWriter writer) {
+		this.reader = reader;
+		this.writer = writer;
+	}
+
+	/**
+	 * Add a stage of CPU-bound transforms, run by platform threads
+	 *
+	 * @param name       name of the stage, for the metrics and the threads
+	 * @param transform  the transform of the rows
+	 * @param threads    number of threads of the stage
+	 */
+	public void addStage(String name, RowTransform transform, int threads) {
+		stages.add(new Stage(name, transform, Math.max(threads, 1), false));
+	}
+
+	/**
+	 * Add a stage of blocking transforms, run by virtual threads when the JVM has them
+	 *
+	 * @param name       name of the stage, for the metrics and the threads
+	 * @param transform  the transform of the rows
+	 * @param threads    number of threads of the stage, it can be large for virtual threads
+	 */
+	public void addBlockingStage(String name, RowTransform transform, int threads) {
+		stages.add(new Stage(name, transform, Math.max(threads, 1), true));
+	}
+
+	/**
+	 * @param batchRows  number of rows of a batch
+	 */
+	public void setBatchRows(int batchRows) {
+		this.batchRows = Math.max(batchRows, 1);
+	}
+
+	/**
+	 * @param queueBatches  number of batches of the queue before each stage and before the writer
+	 */
+	public void setQueueBatches(int queueBatches) {
+		this.queueBatches = Math.max(queueBatches, 1);
+	}
+
+	/**
+	 * @param ordered  true to write the rows in the order of the file, false to write each batch as soon as it is transformed
+	 */
+	public void setOrdered(boolean ordered) {
+		this.ordered = ordered;
+	}
+
+	/**
+	 * @return true if the stages run on virtual threads when they are blocking
+	 */
+	public static boolean hasVirtualThreads() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * @return the metrics of the reader ("read"), of each stage and of the writer ("write"),
+	 *         live while the pipeline runs
+	 */
+	public List<StageMetrics> getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Run the pipeline until all the rows are written. The writer is flushed.
+	 *
+	 * @return the number of rows written
+	 * @throws IOException the first error of the reader, a transform or the writer
+	 */
+	public long run() throws IOException {
+		error = null;
+		int n = stages.size();
+		// queue i is the input of stage i, queue n the input of the writer
+		final List<BlockingQueue<Batch>> queues = new ArrayList<BlockingQueue<Batch>>(n + 1);
+		List<StageMetrics> stageMetrics = new ArrayList<StageMetrics>(n + 2);
+		final StageMetrics readMetrics = new StageMetrics("read", 1, null);
+		stageMetrics.add(readMetrics);
+		for (int i = 0; i <= n; i++) {
+			BlockingQueue<Batch> queue = new ArrayBlockingQueue<Batch>(queueBatches);
+			queues.add(queue);
+			stageMetrics.add((i < n) ? new StageMetrics(stages.get(i).name, stages.get(i).threads, queue)
+					: new StageMetrics("write", 1, queue));
+		}
+		metrics = Collections.unmodifiableList(stageMetrics);
+		long now = System.nanoTime();
+		for (StageMetrics m : stageMetrics) {
+			m.started(now);
+		}
+
+		// batches between the reader and the writer: the queues and one batch per thread
+		int window = queueBatches * (n + 1) + 1;
+		for (Stage stage : stages) {
+			window += stage.threads;
+		}
+		final Semaphore inFlight = new Semaphore(window);
+
+		List<Thread> threads = new ArrayList<Thread>();
+		final int firstThreads = (n == 0) ? 1 : stages.get(0).threads;
+		final StageMetrics firstMetrics = stageMetrics.get(1);
+		threads.add(newThread(new Runnable() {
+			public void run() {
+				try {
+					read(queues.get(0), firstThreads, inFlight, readMetrics, firstMetrics);
+				}
+				catch (Throwable e) {
+					fail(e);
+				}
+			}
+		}, "CsvPipeline-read", false));
+		for (int i = 0; i < n; i++) {
+			final Stage stage = stages.get(i);
+			final BlockingQueue<Batch> input = queues.get(i);
+			final BlockingQueue<Batch> output = queues.get(i + 1);
+			final int nextThreads = (i + 1 < n) ? stages.get(i + 1).threads : 1;
+			final StageMetrics m = stageMetrics.get(i + 1);
+			final StageMetrics next = stageMetrics.get(i + 2);
+			final AtomicInteger running = new AtomicInteger(stage.threads);
+			for (int t = 0; t < stage.threads; t++) {
+				threads.add(newThread(new Runnable() {
+					public void run() {
+						try {
+							transform(stage, input, output, nextThreads, running, m, next);
+						}
+						catch (Throwable e) {
+							fail(e);
+						}
+					}
+				}, "CsvPipeline-" + stage.name + "-" + t, stage.blocking));
+			}
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+
+		long rows = 0;
+		try {
+			rows = write(queues.get(n), inFlight, stageMetrics.get(n + 1));
+		}
+		catch (Throwable e) {
+			fail(e);
+		}
+		finally {
+			join(threads);
+		}
+		Throwable e = error;
+		if (e != null) {
+			if (e instanceof IOException) {
+				throw (IOException) e;
+			}
+			if (e instanceof RuntimeException) {
+				throw (RuntimeException) e;
+			}
+			if (e instanceof Error) {
+				throw (Error) e;
+			}
+			throw new IOException(e);
+		}
+		return rows;
+	}
+
+	/**
+	 * Loop of the reader thread
+	 */
+	private void read(BlockingQueue<Batch> output, int outputThreads, Semaphore inFlight, StageMetrics m,
+			StageMetrics next) throws IOException {
+		long seq = 0;
+		boolean eof = false;
+		while (!eof) {
+			acquire(inFlight);
+			long start = System.nanoTime();
+			List<List<String>> rows = new ArrayList<List<String>>(batchRows);
+			List<String> cells;
+			while (rows.size() < batchRows) {
+				if ((cells = reader.getNextRow()) == null) {
+					eof = true;
+					break;
+				}
+				rows.add(cells);
+			}
+			m.batch(0, rows.size(), System.nanoTime() - start);
+			// an empty last batch is still sent, the writer releases its permit
+			put(output, new Batch(seq++, rows), m);
+			next.queued(output.size());
+		}
+		for (int i = 0; i < outputThreads; i++) {
+			put(output, END, m);
+		}
+		m.ended();
+	}
+
+	/**
+	 * Loop of a thread of a stage
+	 */
+	private void transform(Stage stage, BlockingQueue<Batch> input, BlockingQueue<Batch> output, int outputThreads,
+			AtomicInteger running, StageMetrics m, StageMetrics next) throws IOException {
+		while (true) {
+			Batch batch = take(input, m);
+			if (batch == END) {
+				if (running.decrementAndGet() == 0) {
+					// the last thread of the stage ends the next stage
+					for (int i = 0; i < outputThreads; i++) {
+						put(output, END, m);
+					}
+					m.ended();
+				}
+				return;
+			}
+			long start = System.nanoTime();
+			List<List<String>> rows = new ArrayList<List<String>>(batch.rows.size());
+			for (List<String> cells : batch.rows) {
+				List<String> transformed = stage.transform.transform(cells);
+				if (transformed != null) {
+					rows.add(transformed);
+				}
+			}
+			m.batch(batch.rows.size(), rows.size(), System.nanoTime() - start);
+			batch.rows = rows;
+			put(output, batch, m);
+			next.queued(output.size());
+		}
+	}
+
+	/**
+	 * Loop of the writer, in the calling thread
+	 *
+	 * @return the number of rows written
+	 */
+	private long write(BlockingQueue<Batch> input, Semaphore inFlight, StageMetrics m) throws IOException {
+		long rows = 0;
+		// batches transformed before the batches before them, by number
+		Map<Long, Batch> pending = new HashMap<Long, Batch>();
+		long next = 0;
+		while (true) {
+			Batch batch = take(input, m);
+			if (batch == END) {
+				break;
+			}
+			if (!ordered) {
+				rows += writeBatch(batch, inFlight, m);
+				continue;
+			}
+			pending.put(batch.seq, batch);
+			while ((batch = pending.remove(next)) != null) {
+				rows += writeBatch(batch, inFlight, m);
+				next++;
+			}
+		}
+		long start = System.nanoTime();
+		writer.flush();
+		m.batch(0, 0, System.nanoTime() - start);
+		m.ended();
+		return rows;
+	}
+
+	private int writeBatch(Batch batch, Semaphore inFlight, StageMetrics m) throws IOException {
+		long start = System.nanoTime();
+		for (List<String> cells : batch.rows) {
+			writer.appendRow(cells);
+		}
+		int size = batch.rows.size();
+		m.batch(size, size, System.nanoTime() - start);
+		inFlight.release();
+		return size;
+	}
+
+	/**
+	 * Put a batch in a queue, wait while the queue is full
+	 *
+	 * @param m  metrics of the stage which puts the batch
+	 */
+	private void put(BlockingQueue<Batch> queue, Batch batch, StageMetrics m) throws IOException {
+		long start = System.nanoTime();
+		try {
+			while (!queue.offer(batch, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+				checkFailed();
+			}
+		}
+		catch (InterruptedException e) {
+			throw interrupted();
+		}
+		finally {
+			m.outputWait(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Take a batch from a queue, wait while the queue is empty
+	 *
+	 * @param m  metrics of the stage which takes the batch
+	 */
+	private Batch take(BlockingQueue<Batch> queue, StageMetrics m) throws IOException {
+		long start = System.nanoTime();
+		try {
+			Batch batch;
+			while ((batch = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS)) == null) {
+				checkFailed();
+			}
+			return batch;
+		}
+		catch (InterruptedException e) {
+			throw interrupted();
+		}
+		finally {
+			m.inputWait(System.nanoTime() - start);
+		}
+	}
+
+	private void acquire(Semaphore inFlight) throws IOException {
+		try {
+			while (!inFlight.tryAcquire(POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+				checkFailed();
+			}
+		}
+		catch (InterruptedException e) {
+			throw interrupted();
+		}
+	}
+
+	private IOException interrupted() {
+		Thread.currentThread().interrupt();
+		return new IOException("Pipeline interrupted");
+	}
+
+	/**
+	 * Stop the thread if another thread failed
+	 */
+	private void checkFailed() throws IOException {
+		if (error != null) {
+			throw new IOException("Pipeline stopped by an error");
+		}
+	}
+
+	/**
+	 * Keep the first error, the other threads stop at their next wait
+	 */
+	private synchronized void fail(Throwable e) {
+		if (error == null) {
+			error = e;
+		}
+	}
+
+	private static void join(List<Thread> threads) {
+		boolean interrupted = false;
+		for (Thread thread : threads) {
+			while (thread.isAlive()) {
+				try {
+					thread.join();
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Create a thread of the pipeline, a virtual thread if it is asked and the JVM has them
+	 */
+	static Thread newThread(Runnable task, String name, boolean virtual) {
+		if (virtual && OF_VIRTUAL != null) {
+			try {
+				Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name);
+				return (Thread) BUILDER_UNSTARTED.invoke(builder, task);
+			}
+			catch (IllegalAccessException e) {
+				// a platform thread
+			}
+			catch (InvocationTargetException e) {
+				// virtual threads are a preview feature which is not enabled
+			}
+		}
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+}
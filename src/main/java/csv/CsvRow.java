@@ -0,0 +1,368 @@
+package csv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+* Class CsvRow
+* A reusable row filled by CSVReader.getNextRow(CsvRow).
+* All the cells share one char buffer, a cell is a start and an end offset in it.
+* The cells are the same as the cells of CSVReader.getNextRow(), but no object is created
+* for a row once the buffers are large enough. The content is valid until the row is filled again.
+* @version
+*/
+
+public final class CsvRow {
+
+	/**
+	 * Character Double quote '"'
+	 */
+	private static final char CHAR_QUOTE = '"';
+
+	/**
+	 * Character comma ','
+	 */
+	private static final char CHAR_SEPARATOR = ',';
+
+	/**
+	 * Charater Enter '\n'
+	 */
+	private static final char CHAR_LINE_FEED = '\n';
+
+	/**
+	 * chars of all the cells
+	 */
+	private char[] chars = new char[256];
+
+	/**
+	 * number of used chars
+	 */
+	private int charCount;
+
+	/**
+	 * start and end of each cell in chars
+	 */
+	private int[] starts = new int[16];
+	private int[] ends = new int[16];
+
+	/**
+	 * number of cells
+	 */
+	private int size;
+
+	/**
+	 * views of the cells, created once per index
+	 */
+	private Cell[] views = new Cell[16];
+
+	/**
+	 * @return the number of cells
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param index  index of the cell
+	 * @return the number of chars of the cell
+	 */
+	public int length(int index) {
+		checkIndex(index);
+		return ends[index] - starts[index];
+	}
+
+	/**
+	 * @param index  index of the cell
+	 * @param pos    position in the cell
+	 * @return a char of the cell
+	 */
+	public char charAt(int index, int pos) {
+		checkIndex(index);
+		int start = starts[index];
+		if (pos < 0 || start + pos >= ends[index]) {
+			throw new IndexOutOfBoundsException("Position " + pos + " of cell " + index);
+		}
+		return chars[start + pos];
+	}
+
+	/**
+	 * Get a view of a cell. The view is reused for the same index, it shows the
+	 * current content of the row.
+	 *
+	 * @param index  index of the cell
+	 * @return the cell as CharSequence
+	 */
+	public CharSequence get(int index) {
+		checkIndex(index);
+		Cell view = views[index];
+		if (view == null) {
+			view = new Cell(index);
+			views[index] = view;
+		}
+		return view;
+	}
+
+	/**
+	 * Compare a cell with a value without creating a String
+	 *
+	 * @param index  index of the cell
+	 * @param value  the value
+	 * @return true if the cell has the same chars as the value
+	 */
+	public boolean equals(int index, CharSequence value) {
+		checkIndex(index);
+		int start = starts[index];
+		int len = ends[index] - start;
+		if (value == null || value.length() != len) {
+			return false;
+		}
+		for (int i = 0; i < len; i++) {
+			if (chars[start + i] != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parse a cell as an int without creating a String
+	 *
+	 * @param index  index of the cell
+	 * @return the value, the same as Integer.parseInt (a cell enclosed in double quotation is parsed without the quotes)
+	 * @throws NumberFormatException if the cell is not an int
+	 */
+	public int getInt(int index) {
+		checkIndex(index);
+		return NumberParser.parseInt(chars, starts[index], ends[index]);
+	}
+
+	/**
+	 * Parse a cell as a long without creating a String
+	 *
+	 * @param index  index of the cell
+	 * @return the value, the same as Long.parseLong (a cell enclosed in double quotation is parsed without the quotes)
+	 * @throws NumberFormatException if the cell is not a long
+	 */
+	public long getLong(int index) {
+		checkIndex(index);
+		return NumberParser.parseLong(chars, starts[index], ends[index]);
+	}
+
+	/**
+	 * Parse a cell as a double without creating a String
+	 *
+	 * @param index  index of the cell
+	 * @return the value, the same as Double.parseDouble (a cell enclosed in double quotation is parsed without the quotes)
+	 * @throws NumberFormatException if the cell is not a double
+	 */
+	public double getDouble(int index) {
+		checkIndex(index);
+		return NumberParser.parseDouble(chars, starts[index], ends[index]);
+	}
+
+	/**
+	 * Create a String of a cell
+	 *
+	 * @param index  index of the cell
+	 * @return the cell, the same as the cell of CSVReader.getNextRow()
+	 */
+	public String toString(int index) {
+		checkIndex(index);
+		return new String(chars, starts[index], ends[index] - starts[index]);
+	}
+
+	/**
+	 * @return the buffer of the chars of all the cells, valid until a cell is added
+	 */
+	char[] buffer() {
+		return chars;
+	}
+
+	/**
+	 * @return the index in buffer() of the first char of a cell
+	 */
+	int start(int index) {
+		checkIndex(index);
+		return starts[index];
+	}
+
+	/**
+	 * @return the index in buffer() after the last char of a cell
+	 */
+	int end(int index) {
+		checkIndex(index);
+		return ends[index];
+	}
+
+	/**
+	 * Copy the chars of a cell
+	 *
+	 * @param index     index of the cell
+	 * @param dst       the destination
+	 * @param dstBegin  position of the first char in dst
+	 */
+	void getChars(int index, char[] dst, int dstBegin) {
+		checkIndex(index);
+		System.arraycopy(chars, starts[index], dst, dstBegin, ends[index] - starts[index]);
+	}
+
+	/**
+	 * Create Strings of all the cells
+	 *
+	 * @return the cells, the same as CSVReader.getNextRow()
+	 */
+	public List<String> toList() {
+		List<String> cellArray = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++) {
+			cellArray.add(toString(i));
+		}
+		return cellArray;
+	}
+
+	@Override
+	public String toString() {
+		return toList().toString();
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Cell " + index + " of " + size);
+		}
+	}
+
+	/**
+	 * Remove all the cells
+	 */
+	void clear() {
+		size = 0;
+		charCount = 0;
+	}
+
+	/**
+	 * Remove all the cells and make a row of empty cells, to be set by setCell()
+	 *
+	 * @param size  number of cells
+	 */
+	void clear(int size) {
+		ensureCells(size);
+		for (int i = 0; i < size; i++) {
+			starts[i] = 0;
+			ends[i] = 0;
+		}
+		this.size = size;
+		charCount = 0;
+	}
+
+	/**
+	 * Make room for n cells
+	 */
+	private void ensureCells(int n) {
+		if (n > starts.length) {
+			n = Math.max(starts.length * 2, n);
+			starts = Arrays.copyOf(starts, n);
+			ends = Arrays.copyOf(ends, n);
+			views = Arrays.copyOf(views, n);
+		}
+	}
+
+	/**
+	 * Make room for n more chars
+	 */
+	private void ensureChars(int n) {
+		if (charCount + n > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + n));
+		}
+	}
+
+	/**
+	 * Add a cell
+	 *
+	 * @param buf        buffer holding the cell
+	 * @param start      index of the first char of the cell
+	 * @param end        index after the last char of the cell
+	 * @param normalize  true if the cell is converted to CSV format (see CSVReader.normalizeCell)
+	 */
+	void addCell(char[] buf, int start, int end, boolean normalize) {
+		ensureCells(size + 1);
+		setCell(size, buf, start, end, normalize);
+		size++;
+	}
+
+	/**
+	 * Set a cell of a row made by clear(int)
+	 *
+	 * @param index      index of the cell
+	 * @param buf        buffer holding the cell
+	 * @param start      index of the first char of the cell
+	 * @param end        index after the last char of the cell
+	 * @param normalize  true if the cell is converted to CSV format (see CSVReader.normalizeCell)
+	 */
+	void setCell(int index, char[] buf, int start, int end, boolean normalize) {
+		int len = end - start;
+		int quoteCnt = 0;
+		boolean checkSpecialChar = false;
+		if (normalize) {
+			for (int i = start; i < end; i++) {
+				char c = buf[i];
+				if (c == CHAR_QUOTE) {
+					quoteCnt++;
+					checkSpecialChar = true;
+				}
+				else if (c == CHAR_SEPARATOR || c == CHAR_LINE_FEED) {
+					checkSpecialChar = true;
+				}
+			}
+		}
+
+		starts[index] = charCount;
+		if (!checkSpecialChar) {
+			ensureChars(len);
+			System.arraycopy(buf, start, chars, charCount, len);
+			charCount += len;
+		}
+		else {
+			// each quote is doubled and the cell is enclosed in double quotation
+			ensureChars(len + quoteCnt + 2);
+			chars[charCount++] = CHAR_QUOTE;
+			for (int i = start; i < end; i++) {
+				char c = buf[i];
+				if (c == CHAR_QUOTE) {
+					chars[charCount++] = CHAR_QUOTE;
+				}
+				chars[charCount++] = c;
+			}
+			chars[charCount++] = CHAR_QUOTE;
+		}
+		ends[index] = charCount;
+	}
+
+	/**
+	 * View of a cell
+	 */
+	private final class Cell implements CharSequence {
+
+		private final int index;
+
+		Cell(int index) {
+			this.index = index;
+		}
+
+		public int length() {
+			return CsvRow.this.length(index);
+		}
+
+		public char charAt(int pos) {
+			return CsvRow.this.charAt(index, pos);
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			return toString().substring(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return CsvRow.this.toString(index);
+		}
+	}
+}
@@ -0,0 +1,643 @@
+package csv;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+* Class CsvSorter
+* Sorts a CSV file by one or more columns with a bounded memory, for files larger than the heap.
+* The rows are read by CSVReader into runs of about memoryBudget / (threads + 1) bytes. Each run
+* is sorted and written to a temporary run file by a task of the pool while the next run is read.
+* The run files are then merged with a loser tree and the rows written by CSVWriter.
+* A file which fits in one run is sorted in memory and written without run files.
+*
+* The sort is stable: rows with equal keys keep the order of the file. The rows are the rows of
+* CSVReader, a cell with line-feeds is one cell. The keys are compared as:
+*   . STRING: the chars of the cell without the enclosing double quotation (UTF-16 order, as String.compareTo)
+*   . LONG, DOUBLE: the number of the cell, a cell which is not a number (an empty cell for example)
+*     is after the numbers, in the order of the file
+* A missing cell is an empty cell. A descending key reverses the whole order of the key.
+* @version
+*/
+
+public class CsvSorter {
+
+	/**
+	 * Type of the cells of a sort key
+	 */
+	public enum KeyType {
+		STRING, LONG, DOUBLE
+	}
+
+	/**
+	 * Default memory budget of the rows (64MB)
+	 */
+	public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+	/**
+	 * max number of run files merged at once, more runs are merged in several passes
+	 */
+	static final int MAX_FAN_IN = 128;
+
+	/**
+	 * min size of a run (1MB)
+	 */
+	private static final long MIN_RUN_SIZE = 1024 * 1024;
+
+	/**
+	 * size of the buffer of a run file which is written
+	 */
+	private static final int OUTPUT_BUFFER_SIZE = 1024 * 1024;
+
+	private final String charsetName;
+
+	private final long memoryBudget;
+
+	private final ExecutorService pool;
+
+	/**
+	 * number of runs sorted at once
+	 */
+	private final int threads;
+
+	private int[] keyColumns = new int[0];
+
+	private KeyType[] keyTypes = new KeyType[0];
+
+	private boolean[] descending = new boolean[0];
+
+	/**
+	 * for each key: index of the key among the numeric keys, -1 for a STRING key
+	 */
+	private int[] numberSlots = new int[0];
+
+	private int numberKeys;
+
+	private boolean header;
+
+	private File tempDirectory;
+
+	/**
+	 * Constructs a sorter of files in a charset, with the default memory budget and the common fork-join pool
+	 *
+	 * @param charsetName  the charset of the files
+	 */
+	public CsvSorter(String charsetName) {
+		this(charsetName, DEFAULT_MEMORY_BUDGET, ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism());
+	}
+
+	/**
+	 * Constructs a sorter of files in a charset
+	 *
+	 * @param charsetName   the charset of the files
+	 * @param memoryBudget  max number of bytes of the rows in memory (about)
+	 * @param pool          the pool which sorts the runs
+	 * @param threads       number of runs sorted at once, the number of threads of the pool
+	 */
+	public CsvSorter(String charsetName, long memoryBudget, ExecutorService pool, int threads) {
+		this.charsetName = charsetName;
+		this.memoryBudget = memoryBudget;
+		this.pool = pool;
+		this.threads = Math.max(threads, 1);
+	}
+
+	/**
+	 * Add a sort key, the rows are sorted by the first key, then by the second key...
+	 *
+	 * @param column      the column of the key, from 0
+	 * @param type        how the cells are compared
+	 * @param descending  true to sort from the highest value
+	 */
+	public void addKey(int column, KeyType type, boolean descending) {
+		if (column < 0) {
+			throw new IllegalArgumentException("Invalid column " + column);
+		}
+		int n = keyColumns.length;
+		keyColumns = Arrays.copyOf(keyColumns, n + 1);
+		keyTypes = Arrays.copyOf(keyTypes, n + 1);
+		this.descending = Arrays.copyOf(this.descending, n + 1);
+		numberSlots = Arrays.copyOf(numberSlots, n + 1);
+		keyColumns[n] = column;
+		keyTypes[n] = type;
+		this.descending[n] = descending;
+		numberSlots[n] = (type == KeyType.STRING) ? -1 : numberKeys++;
+	}
+
+	/**
+	 * @param header  true if the first row is a header, it is written first and not sorted
+	 */
+	public void setHeader(boolean header) {
+		this.header = header;
+	}
+
+	/**
+	 * @param tempDirectory  the directory of the run files, null for the default temporary directory
+	 */
+	public void setTempDirectory(File tempDirectory) {
+		this.tempDirectory = tempDirectory;
+	}
+
+	/**
+	 * Sort a file. The output file is replaced, it can be the input file.
+	 *
+	 * @param inputFile   the file to sort
+	 * @param outputFile  the sorted file
+	 * @return the number of sorted rows
+	 * @throws IOException
+	 */
+	public long sort(String inputFile, String outputFile) throws IOException {
+		if (keyColumns.length == 0) {
+			throw new IllegalStateException("No sort key");
+		}
+		long runSize = Math.max(memoryBudget / (threads + 1), MIN_RUN_SIZE);
+		List<File> runFiles = new ArrayList<File>();
+		Deque<Future<File>> inFlight = new ArrayDeque<Future<File>>();
+		long rows = 0;
+		List<String> headerCells = null;
+		try {
+			SortRun run = new SortRun(numberKeys);
+			CSVReader reader = new CSVReader(inputFile, charsetName);
+			try {
+				CsvRow row = new CsvRow();
+				if (header && reader.getNextRow(row)) {
+					headerCells = row.toList();
+				}
+				while (reader.getNextRow(row)) {
+					if (run.size() >= runSize) {
+						if (inFlight.size() >= threads) {
+							runFiles.add(ParallelCSVReader.get(inFlight.poll()));
+						}
+						inFlight.add(pool.submit(spillTask(run)));
+						run = new SortRun(numberKeys);
+					}
+					addRow(run, row);
+					rows++;
+				}
+			}
+			finally {
+				reader.close();
+			}
+
+			if (inFlight.isEmpty()) {
+				// all the rows fit in one run
+				int[] order = sortRun(run);
+				CSVWriter writer = openOutput(outputFile, headerCells);
+				try {
+					for (int i : order) {
+						writer.appendRow(run.toList(i));
+					}
+				}
+				finally {
+					writer.close();
+				}
+				return rows;
+			}
+
+			if (run.rowCount > 0) {
+				inFlight.add(pool.submit(spillTask(run)));
+			}
+			run = null;
+			while (!inFlight.isEmpty()) {
+				runFiles.add(ParallelCSVReader.get(inFlight.poll()));
+			}
+			while (runFiles.size() > MAX_FAN_IN) {
+				runFiles = mergePass(runFiles);
+			}
+			mergeToCsv(runFiles, outputFile, headerCells);
+			return rows;
+		}
+		finally {
+			for (Future<File> task : inFlight) {
+				try {
+					runFiles.add(ParallelCSVReader.get(task));
+				}
+				catch (Exception e) {
+					// the error of the sort is thrown
+				}
+			}
+			for (File file : runFiles) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Add a row to a run and parse the cells of its numeric keys
+	 */
+	private void addRow(SortRun run, CsvRow row) {
+		int r = run.add(row);
+		if (numberKeys == 0) {
+			return;
+		}
+		int cells = run.cells(r);
+		for (int k = 0; k < keyColumns.length; k++) {
+			int slot = numberSlots[k];
+			if (slot < 0) {
+				continue;
+			}
+			int index = r * numberKeys + slot;
+			int column = keyColumns[k];
+			int start = (column < cells) ? run.start(r, column) : 0;
+			int end = (column < cells) ? run.end(r, column) : 0;
+			run.notNumbers[index] = (start == end);
+			if (start == end) {
+				continue;
+			}
+			try {
+				run.numbers[index] = number(keyTypes[k], run.chars, start, end);
+			}
+			catch (NumberFormatException e) {
+				run.notNumbers[index] = true;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of a cell as a long which has the order of the numbers:
+	 *         the value of a LONG key, the bits of a DOUBLE key with the negative numbers reversed
+	 * @throws NumberFormatException if the cell is not a number
+	 */
+	private static long number(KeyType type, char[] chars, int start, int end) {
+		if (type == KeyType.LONG) {
+			return NumberParser.parseLong(chars, start, end);
+		}
+		long bits = Double.doubleToLongBits(NumberParser.parseDouble(chars, start, end));
+		return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+	}
+
+	/**
+	 * Compare two rows by the keys
+	 *
+	 * @return a negative number, 0 or a positive number if row i of a is before, equal to or after row j of b
+	 */
+	int compare(SortRun a, int i, SortRun b, int j) {
+		for (int k = 0; k < keyColumns.length; k++) {
+			int c;
+			int slot = numberSlots[k];
+			if (slot >= 0) {
+				int ia = i * numberKeys + slot;
+				int ib = j * numberKeys + slot;
+				boolean na = a.notNumbers[ia];
+				boolean nb = b.notNumbers[ib];
+				if (na || nb) {
+					c = (na == nb) ? 0 : (na ? 1 : -1);
+				}
+				else {
+					c = Long.compare(a.numbers[ia], b.numbers[ib]);
+				}
+			}
+			else {
+				int column = keyColumns[k];
+				boolean ha = column < a.cells(i);
+				boolean hb = column < b.cells(j);
+				c = compareText(a.chars, ha ? a.start(i, column) : 0, ha ? a.end(i, column) : 0,
+						b.chars, hb ? b.start(j, column) : 0, hb ? b.end(j, column) : 0);
+			}
+			if (c != 0) {
+				return descending[k] ? -c : c;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Compare two cells without their enclosing double quotation, a doubled quote in a cell
+	 * enclosed in double quotation is one quote
+	 */
+	static int compareText(char[] a, int startA, int endA, char[] b, int startB, int endB) {
+		boolean quotedA = endA - startA >= 2 && a[startA] == '"' && a[endA - 1] == '"';
+		if (quotedA) {
+			startA++;
+			endA--;
+		}
+		boolean quotedB = endB - startB >= 2 && b[startB] == '"' && b[endB - 1] == '"';
+		if (quotedB) {
+			startB++;
+			endB--;
+		}
+		while (startA < endA && startB < endB) {
+			char ca = a[startA++];
+			if (quotedA && ca == '"' && startA < endA && a[startA] == '"') {
+				startA++;
+			}
+			char cb = b[startB++];
+			if (quotedB && cb == '"' && startB < endB && b[startB] == '"') {
+				startB++;
+			}
+			if (ca != cb) {
+				return ca - cb;
+			}
+		}
+		return ((startA < endA) ? 1 : 0) - ((startB < endB) ? 1 : 0);
+	}
+
+	/**
+	 * Sort the rows of a run, equal rows keep their order
+	 *
+	 * @return the indexes of the rows in sorted order
+	 */
+	int[] sortRun(SortRun run) {
+		int[] order = new int[run.rowCount];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		mergeSort(run, order.clone(), order, 0, order.length);
+		return order;
+	}
+
+	/**
+	 * Stable merge sort of dest[low, high), src has the same content and is used as temporary array
+	 */
+	private void mergeSort(SortRun run, int[] src, int[] dest, int low, int high) {
+		int length = high - low;
+		if (length < 16) {
+			// insertion sort
+			for (int i = low + 1; i < high; i++) {
+				int row = dest[i];
+				int j = i;
+				while (j > low && compare(run, dest[j - 1], run, row) > 0) {
+					dest[j] = dest[j - 1];
+					j--;
+				}
+				dest[j] = row;
+			}
+			return;
+		}
+		int mid = (low + high) >>> 1;
+		mergeSort(run, dest, src, low, mid);
+		mergeSort(run, dest, src, mid, high);
+		if (compare(run, src[mid - 1], run, src[mid]) <= 0) {
+			// the two halves are already in order
+			System.arraycopy(src, low, dest, low, length);
+			return;
+		}
+		for (int i = low, p = low, q = mid; i < high; i++) {
+			if (q >= high || (p < mid && compare(run, src[p], run, src[q]) <= 0)) {
+				dest[i] = src[p++];
+			}
+			else {
+				dest[i] = src[q++];
+			}
+		}
+	}
+
+	/**
+	 * Create the task which sorts a run and writes it to a run file
+	 */
+	private Callable<File> spillTask(final SortRun run) {
+		return new Callable<File>() {
+			public File call() throws IOException {
+				int[] order = sortRun(run);
+				File file = createRunFile();
+				try {
+					SortRun.Output output = new SortRun.Output(file, OUTPUT_BUFFER_SIZE);
+					try {
+						for (int i : order) {
+							output.write(run, i);
+						}
+					}
+					finally {
+						output.close();
+					}
+				}
+				catch (IOException e) {
+					file.delete();
+					throw e;
+				}
+				return file;
+			}
+		};
+	}
+
+	private File createRunFile() throws IOException {
+		File file = File.createTempFile("csvsort", ".run", tempDirectory);
+		file.deleteOnExit();
+		return file;
+	}
+
+	/**
+	 * @return the size of the buffer of each of n run files read at once
+	 */
+	private int inputBufferSize(int n) {
+		return (int) Math.max(16 * 1024, Math.min(OUTPUT_BUFFER_SIZE, memoryBudget / (2L * n)));
+	}
+
+	/**
+	 * Merge groups of MAX_FAN_IN run files into run files, in parallel. The merged files are deleted.
+	 *
+	 * @return the new run files, in the order of the rows of the file
+	 */
+	private List<File> mergePass(List<File> runFiles) throws IOException {
+		List<Future<File>> tasks = new ArrayList<Future<File>>();
+		final int bufferSize = inputBufferSize(Math.min(runFiles.size(), MAX_FAN_IN * threads));
+		for (int from = 0; from < runFiles.size(); from += MAX_FAN_IN) {
+			final List<File> group = runFiles.subList(from, Math.min(from + MAX_FAN_IN, runFiles.size()));
+			tasks.add(pool.submit(new Callable<File>() {
+				public File call() throws IOException {
+					Merger merger = new Merger(group, bufferSize);
+					try {
+						File file = createRunFile();
+						try {
+							SortRun.Output output = new SortRun.Output(file, OUTPUT_BUFFER_SIZE);
+							try {
+								while (merger.hasRow()) {
+									output.write(merger.row(), 0);
+									merger.next();
+								}
+							}
+							finally {
+								output.close();
+							}
+						}
+						catch (IOException e) {
+							file.delete();
+							throw e;
+						}
+						return file;
+					}
+					finally {
+						merger.close();
+					}
+				}
+			}));
+		}
+		List<File> merged = new ArrayList<File>();
+		IOException error = null;
+		for (Future<File> task : tasks) {
+			try {
+				merged.add(ParallelCSVReader.get(task));
+			}
+			catch (IOException e) {
+				error = e;
+			}
+		}
+		if (error != null) {
+			for (File file : merged) {
+				file.delete();
+			}
+			throw error;
+		}
+		for (File file : runFiles) {
+			file.delete();
+		}
+		return merged;
+	}
+
+	/**
+	 * Merge the run files into the output file
+	 */
+	private void mergeToCsv(List<File> runFiles, String outputFile, List<String> headerCells) throws IOException {
+		Merger merger = new Merger(runFiles, inputBufferSize(runFiles.size()));
+		try {
+			CSVWriter writer = openOutput(outputFile, headerCells);
+			try {
+				while (merger.hasRow()) {
+					writer.appendRow(merger.row().toList(0));
+					merger.next();
+				}
+			}
+			finally {
+				writer.close();
+			}
+		}
+		finally {
+			merger.close();
+		}
+	}
+
+	/**
+	 * Empty the output file, open it and write the header
+	 */
+	private CSVWriter openOutput(String outputFile, List<String> headerCells) throws IOException {
+		new FileOutputStream(outputFile).close();
+		CSVWriter writer = new CSVWriter(outputFile, charsetName);
+		if (headerCells != null) {
+			writer.appendRow(headerCells);
+		}
+		return writer;
+	}
+
+	/**
+	 * K-way merge of run files with a loser tree: each node keeps the loser of the match
+	 * of its two subtrees and tree[0] the winner, so the next row is found with log2(k)
+	 * comparisons along the path of the last winner. Equal rows are taken from the first run.
+	 */
+	private final class Merger {
+
+		private final SortRun.Input[] inputs;
+
+		/**
+		 * current row of each run, in row 0
+		 */
+		private final SortRun[] rows;
+
+		/**
+		 * true for a run with no row left
+		 */
+		private final boolean[] done;
+
+		private final int[] tree;
+
+		private final int k;
+
+		Merger(List<File> runFiles, int bufferSize) throws IOException {
+			k = runFiles.size();
+			inputs = new SortRun.Input[k];
+			rows = new SortRun[k];
+			done = new boolean[k];
+			tree = new int[k];
+			try {
+				for (int i = 0; i < k; i++) {
+					inputs[i] = new SortRun.Input(runFiles.get(i), bufferSize);
+					rows[i] = new SortRun(numberKeys);
+					done[i] = !inputs[i].read(rows[i]);
+				}
+			}
+			catch (IOException e) {
+				close();
+				throw e;
+			}
+			// -1 wins every match, so the runs are added one by one
+			Arrays.fill(tree, -1);
+			for (int i = k - 1; i >= 0; i--) {
+				adjust(i);
+			}
+		}
+
+		boolean hasRow() {
+			return !done[tree[0]];
+		}
+
+		/**
+		 * @return the run holding the smallest row in row 0
+		 */
+		SortRun row() {
+			return rows[tree[0]];
+		}
+
+		/**
+		 * Replace the smallest row by the next row of its run
+		 */
+		void next() throws IOException {
+			int winner = tree[0];
+			done[winner] = !inputs[winner].read(rows[winner]);
+			adjust(winner);
+		}
+
+		/**
+		 * Replay the matches from the leaf of run s to the root
+		 */
+		private void adjust(int s) {
+			for (int t = (s + k) >> 1; t > 0; t >>= 1) {
+				int loser = tree[t];
+				if (s != -1 && (loser == -1 || beats(loser, s))) {
+					tree[t] = s;
+					s = loser;
+				}
+			}
+			tree[0] = s;
+		}
+
+		/**
+		 * @return true if the row of run a is before the row of run b
+		 */
+		private boolean beats(int a, int b) {
+			if (done[a]) {
+				return false;
+			}
+			if (done[b]) {
+				return true;
+			}
+			int c = compare(rows[a], 0, rows[b], 0);
+			return c < 0 || (c == 0 && a < b);
+		}
+
+		void close() throws IOException {
+			IOException error = null;
+			for (SortRun.Input input : inputs) {
+				if (input == null) {
+					continue;
+				}
+				try {
+					input.close();
+				}
+				catch (IOException e) {
+					error = e;
+				}
+			}
+			if (error != null) {
+				throw error;
+			}
+		}
+	}
+}
@@ -0,0 +1,224 @@
+package csv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+* Class FollowInputStream
+* An input stream of a file which is being appended to. At the end of the file a read waits
+* for more data instead of returning -1: it is woken by a WatchService on the directory of the file
+* and checks the file at least every poll interval in case an event is missed.
+*
+* If the file is truncated the stream goes on from the start of the file. If the file is replaced
+* (rotation: the path has a new file) the stream goes on from the start of the new file once the
+* old file is read to its end. In both cases read() returns -1 at the end of the old data, as at
+* the end of a file, until nextFile() is called: the reader ends its pending row there and parses
+* the new data from a new row. Otherwise -1 is only returned once the stream is closed.
+* @version
+*/
+
+final class FollowInputStream extends InputStream {
+
+	private final Path path;
+
+	/**
+	 * max time (ms) between two checks of the file
+	 */
+	private final long pollInterval;
+
+	private FileChannel channel;
+
+	/**
+	 * identity of the opened file, null if the file system has none
+	 */
+	private Object fileKey;
+
+	/**
+	 * null if the file system cannot watch the directory
+	 */
+	private WatchService watcher;
+
+	private volatile boolean closed;
+
+	/**
+	 * true at the end of the old data of a truncated or replaced file, until nextFile()
+	 */
+	private boolean endOfFile;
+
+	/**
+	 * Constructs FollowInputStream
+	 *
+	 * @param filename      the file
+	 * @param offset        offset of the first byte to read
+	 * @param pollInterval  max time (ms) between two checks of the file
+	 * @throws IOException
+	 */
+	FollowInputStream(String filename, long offset, long pollInterval) throws IOException {
+		this.path = Paths.get(filename).toAbsolutePath();
+		this.pollInterval = Math.max(pollInterval, 1);
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+		this.channel.position(offset);
+		this.fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+		try {
+			watcher = path.getFileSystem().newWatchService();
+			path.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+		}
+		catch (IOException e) {
+			closeWatcher();
+		}
+		catch (UnsupportedOperationException e) {
+			closeWatcher();
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return (read(b, 0, 1) < 0) ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		try {
+			while (!closed) {
+				if (endOfFile) {
+					return -1;
+				}
+				int n = channel.read(ByteBuffer.wrap(b, off, len));
+				if (n > 0) {
+					return n;
+				}
+				if (!checkFile()) {
+					await();
+				}
+			}
+		}
+		catch (ClosedChannelException e) {
+			if (!closed) {
+				throw e;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Check the file at the end of the data
+	 *
+	 * @return true if there is data to read: the old file has grown, the file is truncated or replaced
+	 */
+	private boolean checkFile() throws IOException {
+		long position = channel.position();
+		long size = channel.size();
+		if (size > position) {
+			return true;
+		}
+		if (size < position) {
+			// truncated
+			channel.position(0);
+			endOfFile = true;
+			return true;
+		}
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		}
+		catch (NoSuchFileException e) {
+			// moved or deleted, wait for the new file
+			return false;
+		}
+		Object key = attributes.fileKey();
+		if (key != null && !key.equals(fileKey)) {
+			// replaced, the old file is read to its end
+			FileChannel next = FileChannel.open(path, StandardOpenOption.READ);
+			channel.close();
+			channel = next;
+			fileKey = key;
+			endOfFile = true;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Go on with the data of the new file once read() has returned -1 at the end of the old data
+	 *
+	 * @return true if the old data of a truncated or replaced file ended, false if the stream is closed
+	 */
+	boolean nextFile() {
+		boolean next = endOfFile && !closed;
+		endOfFile = false;
+		return next;
+	}
+
+	/**
+	 * Wait for an event of the directory or for the poll interval
+	 */
+	private void await() throws IOException {
+		try {
+			if (watcher != null) {
+				WatchKey key = watcher.poll(pollInterval, TimeUnit.MILLISECONDS);
+				if (key != null) {
+					key.pollEvents();
+					key.reset();
+				}
+			}
+			else {
+				Thread.sleep(pollInterval);
+			}
+		}
+		catch (ClosedWatchServiceException e) {
+			// closed by another thread
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for " + path);
+		}
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (closed || endOfFile) {
+			return 0;
+		}
+		return (int) Math.min(Math.max(channel.size() - channel.position(), 0), Integer.MAX_VALUE);
+	}
+
+	private void closeWatcher() throws IOException {
+		if (watcher != null) {
+			watcher.close();
+			watcher = null;
+		}
+	}
+
+	/**
+	 * Close the file, a waiting read returns -1. It can be called by another thread.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		WatchService w = watcher;
+		if (w != null) {
+			w.close();
+		}
+		channel.close();
+	}
+}
@@ -0,0 +1,572 @@
+package csv;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+* Class JoinTable
+* The build side of CsvJoiner: an open-addressing hash table of the keys and a list of the rows
+* of each key, all in primitive arrays. The keys and the other cells of the rows are encoded
+* in one byte arena, no String is kept. A probe row is looked up from the chars of its CsvRow.
+*
+* A key is the values of its cells (without enclosing double quotation), each encoded as its length
+* then its chars; a row is the number of its cells then each cell in the same way. A char is encoded
+* in 1 to 3 bytes like UTF-8 (a surrogate is encoded alone), so the encodings of two cells are equal
+* when the cells are equal. The same encoding is used by the spill records:
+*   hash (int), key length (int), key, row length (int), row
+* @version
+*/
+
+final class JoinTable {
+
+	/**
+	 * max size of the arena
+	 */
+	private static final int MAX_ARENA = Integer.MAX_VALUE - 16;
+
+	private byte[] arena = new byte[64 * 1024];
+
+	private int arenaSize;
+
+	/**
+	 * key + 1 of each slot, 0 for an empty slot
+	 */
+	private int[] slots = new int[1024];
+
+	private int mask = slots.length - 1;
+
+	/**
+	 * number of keys
+	 */
+	private int keyCount;
+
+	/**
+	 * offset and length of each key in the arena, hash, first and last row of each key
+	 */
+	private int[] keyOffsets = new int[512];
+	private int[] keyLengths = new int[512];
+	private int[] hashes = new int[512];
+	private int[] firstRows = new int[512];
+	private int[] lastRows = new int[512];
+
+	/**
+	 * number of rows
+	 */
+	private int rowCount;
+
+	/**
+	 * offset of each row in the arena, next row of the same key (-1 for the last one)
+	 */
+	private int[] rowOffsets = new int[512];
+	private int[] nextRows = new int[512];
+
+	/**
+	 * key being looked up, set by setKey() or readRecord()
+	 */
+	byte[] key = new byte[256];
+	int keyLength;
+	int hash;
+
+	/**
+	 * row being added, set by setRow() or readRecord()
+	 */
+	byte[] row = new byte[1024];
+	int rowLength;
+
+	/**
+	 * chars of the cell being decoded
+	 */
+	private char[] cellChars = new char[256];
+
+	/**
+	 * @return the number of bytes of the table in memory (about)
+	 */
+	long size() {
+		return arenaSize + 4L * slots.length + 20L * keyCount + 8L * rowCount;
+	}
+
+	int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Set the key being looked up to the values of some cells of a row, a missing cell is an empty value
+	 */
+	void setKey(CsvRow csvRow, int[] columns) {
+		keyLength = 0;
+		char[] buf = csvRow.buffer();
+		int size = csvRow.size();
+		for (int column : columns) {
+			if (column >= size) {
+				key = putInt(key, keyLength, 0);
+				keyLength += 4;
+				continue;
+			}
+			int start = csvRow.start(column);
+			int end = csvRow.end(column);
+			int lengthPos = keyLength;
+			keyLength += 4;
+			if (end - start >= 2 && buf[start] == '"' && buf[end - 1] == '"') {
+				// the value of the cell: without the enclosing double quotation and with single quotes
+				key = ensure(key, keyLength + 3 * (end - start));
+				for (int i = start + 1; i < end - 1; i++) {
+					char ch = buf[i];
+					keyLength = putChar(key, keyLength, ch);
+					if (ch == '"' && i + 1 < end - 1 && buf[i + 1] == '"') {
+						i++;
+					}
+				}
+			}
+			else {
+				key = ensure(key, keyLength + 3 * (end - start));
+				for (int i = start; i < end; i++) {
+					keyLength = putChar(key, keyLength, buf[i]);
+				}
+			}
+			putInt(key, lengthPos, keyLength - lengthPos - 4);
+		}
+		hash = hash(key, keyLength);
+	}
+
+	/**
+	 * Set the key being looked up to the key being looked up in another table
+	 */
+	void setKey(JoinTable other) {
+		key = ensure(key, other.keyLength);
+		System.arraycopy(other.key, 0, key, 0, other.keyLength);
+		keyLength = other.keyLength;
+		hash = other.hash;
+	}
+
+	/**
+	 * Set the row being added to the cells of a row which are not in some columns
+	 *
+	 * @param skipColumns  the columns which are not encoded, sorted
+	 */
+	void setRow(CsvRow csvRow, int[] skipColumns) {
+		char[] buf = csvRow.buffer();
+		int size = csvRow.size();
+		int cells = 0;
+		rowLength = 4;
+		int skip = 0;
+		for (int c = 0; c < size; c++) {
+			if (skip < skipColumns.length && skipColumns[skip] == c) {
+				skip++;
+				continue;
+			}
+			int start = csvRow.start(c);
+			int end = csvRow.end(c);
+			row = ensure(row, rowLength + 4 + 3 * (end - start));
+			int lengthPos = rowLength;
+			rowLength += 4;
+			for (int i = start; i < end; i++) {
+				rowLength = putChar(row, rowLength, buf[i]);
+			}
+			putInt(row, lengthPos, rowLength - lengthPos - 4);
+			cells++;
+		}
+		putInt(row, 0, cells);
+	}
+
+	/**
+	 * @return the number of cells of the row being added
+	 */
+	int rowCells() {
+		return getInt(row, 0);
+	}
+
+	/**
+	 * Add the row being added with the key being looked up
+	 */
+	void add() throws IOException {
+		if ((long) arenaSize + keyLength + rowLength > MAX_ARENA) {
+			throw new IOException("The rows of a key of the build side are too large");
+		}
+		int k = find();
+		if (k < 0) {
+			k = addKey();
+		}
+		int offset = append(row, rowLength);
+		int r = rowCount;
+		if (r == rowOffsets.length) {
+			rowOffsets = Arrays.copyOf(rowOffsets, r * 2);
+			nextRows = Arrays.copyOf(nextRows, r * 2);
+		}
+		rowOffsets[r] = offset;
+		nextRows[r] = -1;
+		if (firstRows[k] < 0) {
+			firstRows[k] = r;
+		}
+		else {
+			nextRows[lastRows[k]] = r;
+		}
+		lastRows[k] = r;
+		rowCount++;
+	}
+
+	/**
+	 * @return the first row of the key being looked up, -1 if there is none
+	 */
+	int firstRow() {
+		int k = find();
+		return (k < 0) ? -1 : firstRows[k];
+	}
+
+	/**
+	 * @return the next row of the same key, -1 after the last one
+	 */
+	int nextRow(int r) {
+		return nextRows[r];
+	}
+
+	/**
+	 * Add the cells of a row to a list, in CSV format like CSVReader returns them
+	 */
+	void getCells(int r, List<String> cells) {
+		getCells(arena, rowOffsets[r], cells);
+	}
+
+	/**
+	 * Add the cells of an encoded row to a list
+	 */
+	void getCells(byte[] bytes, int offset, List<String> cells) {
+		int count = getInt(bytes, offset);
+		int pos = offset + 4;
+		for (int c = 0; c < count; c++) {
+			int length = getInt(bytes, pos);
+			pos += 4;
+			int end = pos + length;
+			if (cellChars.length < length) {
+				cellChars = new char[Math.max(cellChars.length * 2, length)];
+			}
+			int n = 0;
+			while (pos < end) {
+				int b = bytes[pos++] & 0xFF;
+				if (b < 0x80) {
+					cellChars[n++] = (char) b;
+				}
+				else if (b < 0xE0) {
+					cellChars[n++] = (char) (((b & 0x1F) << 6) | (bytes[pos++] & 0x3F));
+				}
+				else {
+					cellChars[n++] = (char) (((b & 0x0F) << 12) | ((bytes[pos] & 0x3F) << 6) | (bytes[pos + 1] & 0x3F));
+					pos += 2;
+				}
+			}
+			cells.add(new String(cellChars, 0, n));
+		}
+	}
+
+	/**
+	 * Write the spill record of the key being looked up and the row being added
+	 */
+	void writeRecord(DataOutputStream out) throws IOException {
+		out.writeInt(hash);
+		out.writeInt(keyLength);
+		out.write(key, 0, keyLength);
+		out.writeInt(rowLength);
+		out.write(row, 0, rowLength);
+	}
+
+	/**
+	 * Read a spill record into the key being looked up and the row being added
+	 *
+	 * @return false at the end of the file
+	 */
+	boolean readRecord(DataInputStream in) throws IOException {
+		try {
+			hash = in.readInt();
+		}
+		catch (EOFException e) {
+			return false;
+		}
+		keyLength = in.readInt();
+		key = ensure(key, keyLength);
+		in.readFully(key, 0, keyLength);
+		rowLength = in.readInt();
+		row = ensure(row, rowLength);
+		in.readFully(row, 0, rowLength);
+		return true;
+	}
+
+	/**
+	 * Write the spill records of all the rows, the rows of a key stay in their order
+	 */
+	void writeRecords(Partitions partitions) throws IOException {
+		for (int k = 0; k < keyCount; k++) {
+			keyLength = keyLengths[k];
+			key = ensure(key, keyLength);
+			System.arraycopy(arena, keyOffsets[k], key, 0, keyLength);
+			hash = hashes[k];
+			for (int r = firstRows[k]; r >= 0; r = nextRows[r]) {
+				int offset = rowOffsets[r];
+				rowLength = rowLength(arena, offset);
+				row = ensure(row, rowLength);
+				System.arraycopy(arena, offset, row, 0, rowLength);
+				writeRecord(partitions.get(hash));
+			}
+		}
+	}
+
+	/**
+	 * Remove all the rows
+	 */
+	void clear() {
+		Arrays.fill(slots, 0);
+		keyCount = 0;
+		rowCount = 0;
+		arenaSize = 0;
+	}
+
+	/**
+	 * @return the key of the key being looked up, -1 if it is not in the table
+	 */
+	private int find() {
+		int slot = hash & mask;
+		int entry;
+		while ((entry = slots[slot]) != 0) {
+			int k = entry - 1;
+			if (hashes[k] == hash && keyEquals(k)) {
+				return k;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private boolean keyEquals(int k) {
+		if (keyLengths[k] != keyLength) {
+			return false;
+		}
+		int offset = keyOffsets[k];
+		for (int i = 0; i < keyLength; i++) {
+			if (arena[offset + i] != key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Add the key being looked up, it is not in the table
+	 */
+	private int addKey() {
+		int k = keyCount;
+		if (k == hashes.length) {
+			int length = k * 2;
+			keyOffsets = Arrays.copyOf(keyOffsets, length);
+			keyLengths = Arrays.copyOf(keyLengths, length);
+			hashes = Arrays.copyOf(hashes, length);
+			firstRows = Arrays.copyOf(firstRows, length);
+			lastRows = Arrays.copyOf(lastRows, length);
+		}
+		keyOffsets[k] = append(key, keyLength);
+		keyLengths[k] = keyLength;
+		hashes[k] = hash;
+		firstRows[k] = -1;
+		keyCount++;
+		if (keyCount * 2 > slots.length) {
+			rehash(slots.length * 2);
+		}
+		else {
+			int slot = hash & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = k + 1;
+		}
+		return k;
+	}
+
+	private void rehash(int capacity) {
+		slots = new int[capacity];
+		mask = capacity - 1;
+		for (int k = 0; k < keyCount; k++) {
+			int slot = hashes[k] & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = k + 1;
+		}
+	}
+
+	/**
+	 * @return the offset of the bytes in the arena
+	 */
+	private int append(byte[] bytes, int length) {
+		if (arenaSize + length > arena.length) {
+			arena = Arrays.copyOf(arena, (int) Math.min(Math.max(arena.length * 2L, (long) arenaSize + length), MAX_ARENA));
+		}
+		System.arraycopy(bytes, 0, arena, arenaSize, length);
+		int offset = arenaSize;
+		arenaSize += length;
+		return offset;
+	}
+
+	/**
+	 * @return the number of bytes of an encoded row
+	 */
+	private static int rowLength(byte[] bytes, int offset) {
+		int count = getInt(bytes, offset);
+		int pos = offset + 4;
+		for (int c = 0; c < count; c++) {
+			pos += 4 + getInt(bytes, pos);
+		}
+		return pos - offset;
+	}
+
+	/**
+	 * @return the hash of a key
+	 */
+	static int hash(byte[] bytes, int length) {
+		int h = 0;
+		for (int i = 0; i < length; i++) {
+			h = 31 * h + bytes[i];
+		}
+		return mix(h);
+	}
+
+	/**
+	 * @return the bits of h spread over all the bits
+	 */
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		h *= 0xC2B2AE35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	private static byte[] ensure(byte[] bytes, int length) {
+		return (length <= bytes.length) ? bytes : Arrays.copyOf(bytes, Math.max(bytes.length * 2, length));
+	}
+
+	/**
+	 * @return the position after the char, the bytes must have room for 3 bytes
+	 */
+	private static int putChar(byte[] bytes, int pos, char ch) {
+		if (ch < 0x80) {
+			bytes[pos++] = (byte) ch;
+		}
+		else if (ch < 0x800) {
+			bytes[pos++] = (byte) (0xC0 | (ch >> 6));
+			bytes[pos++] = (byte) (0x80 | (ch & 0x3F));
+		}
+		else {
+			bytes[pos++] = (byte) (0xE0 | (ch >> 12));
+			bytes[pos++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+			bytes[pos++] = (byte) (0x80 | (ch & 0x3F));
+		}
+		return pos;
+	}
+
+	private static byte[] putInt(byte[] bytes, int pos, int value) {
+		bytes = ensure(bytes, pos + 4);
+		bytes[pos] = (byte) (value >>> 24);
+		bytes[pos + 1] = (byte) (value >>> 16);
+		bytes[pos + 2] = (byte) (value >>> 8);
+		bytes[pos + 3] = (byte) value;
+		return bytes;
+	}
+
+	private static int getInt(byte[] bytes, int pos) {
+		return ((bytes[pos] & 0xFF) << 24) | ((bytes[pos + 1] & 0xFF) << 16) | ((bytes[pos + 2] & 0xFF) << 8)
+				| (bytes[pos + 3] & 0xFF);
+	}
+
+	/**
+	 * The spill files of a level of partitioning. The partition of a key at a level is the top
+	 * PARTITION_BITS of its hash mixed with the level, so a partition which is still too large
+	 * is split again by other bits, and the slots of the table (the low bits of the hash) stay spread.
+	 */
+	static final class Partitions {
+
+		static final int PARTITION_BITS = 5;
+		static final int PARTITIONS = 1 << PARTITION_BITS;
+
+		private final int seed;
+
+		private final File tempDirectory;
+
+		private final File[] files = new File[PARTITIONS];
+
+		private final DataOutputStream[] outputs = new DataOutputStream[PARTITIONS];
+
+		/**
+		 * @param level          the level of partitioning, from 0
+		 * @param tempDirectory  directory of the files, null for the default temporary directory
+		 */
+		Partitions(int level, File tempDirectory) {
+			this.seed = (level + 1) * 0x9E3779B9;
+			this.tempDirectory = tempDirectory;
+		}
+
+		/**
+		 * @return the output of the partition of a hash
+		 */
+		DataOutputStream get(int hash) throws IOException {
+			int p = mix(hash ^ seed) >>> (32 - PARTITION_BITS);
+			DataOutputStream out = outputs[p];
+			if (out == null) {
+				File file = File.createTempFile("csvjoin", ".spill", tempDirectory);
+				file.deleteOnExit();
+				files[p] = file;
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+				outputs[p] = out;
+			}
+			return out;
+		}
+
+		/**
+		 * Close the files
+		 *
+		 * @return the file of each partition, null for an empty partition
+		 */
+		File[] finish() throws IOException {
+			IOException error = null;
+			for (DataOutputStream out : outputs) {
+				if (out == null) {
+					continue;
+				}
+				try {
+					out.close();
+				}
+				catch (IOException e) {
+					error = e;
+				}
+			}
+			if (error != null) {
+				delete();
+				throw error;
+			}
+			return files;
+		}
+
+		/**
+		 * Close and delete the files
+		 */
+		void delete() {
+			for (int p = 0; p < PARTITIONS; p++) {
+				if (outputs[p] != null) {
+					try {
+						outputs[p].close();
+					}
+					catch (IOException e) {
+						// the file is deleted
+					}
+				}
+				if (files[p] != null) {
+					files[p].delete();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,788 @@
+package csv;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+* Class MappedCSVReader
+* This class reads an UTF-8 CSV file through memory mapped regions of the file.
+* SEPARATOR, quote and line-feed are ASCII, so they are found directly on the bytes
+* without decoding. A row only keeps the byte offsets of its cells, a cell is decoded
+* to String when it is asked for.
+* The rows are the same as the rows of CSVReader with charset "UTF-8".
+* Files larger than 2GB are read through a rolling mapping which starts at the current row.
+* @version
+*/
+
+public class MappedCSVReader {
+
+	/**
+	 * Character Double quote '"'
+	 */
+	private static final int CHAR_QUOTE = '"';
+
+	/**
+	 * Character comma ','
+	 */
+	private static final int CHAR_SEPARATOR = ',';
+
+	/**
+	 * Character Enter '\n'
+	 */
+	private static final int CHAR_LINE_FEED = '\n';
+
+	/**
+	 * Character carriage return '\r'
+	 */
+	private static final int CHAR_CR = '\r';
+
+	/**
+	 * returned when the position is at the end of file
+	 */
+	private static final int EOF = -1;
+
+	/**
+	 * returned when the position is at the end of the mapping but not of the file
+	 */
+	private static final int MORE = -2;
+
+	/**
+	 * Default size of a mapping (64MB)
+	 */
+	public static final int DEFAULT_MAP_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * cell flag: the cell is enclosed in double quotation, it is returned as it is
+	 */
+	private static final byte FLAG_QUOTED = 1;
+
+	/**
+	 * cell flag: the cell is not enclosed in double quotation and contains a quote, it is normalized
+	 */
+	private static final byte FLAG_NORMALIZE = 2;
+
+	/**
+	 * cell flag: the cell contains line breaks, each CR, LF or CRLF is returned as LF
+	 */
+	private static final byte FLAG_MULTI_LINE = 4;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * for reading file
+	 */
+	private RandomAccessFile file;
+
+	private FileChannel channel;
+
+	private long fileSize;
+
+	/**
+	 * current mapping of the file
+	 */
+	private MappedByteBuffer map;
+
+	/**
+	 * offset in the file of the first byte of the mapping
+	 */
+	private long mapBase;
+
+	/**
+	 * number of bytes of the mapping
+	 */
+	private int mapLen;
+
+	/**
+	 * size of the next mappings, it grows if a row is longer
+	 */
+	private int mapSize;
+
+	/**
+	 * position in the mapping of the next row
+	 */
+	private int pos;
+
+	/**
+	 * true if the previous row ends with CR, so a following LF is skipped
+	 */
+	private boolean skipLF;
+
+	/**
+	 * offset in the file of the current row
+	 */
+	private long rowOffset = -1;
+
+	/**
+	 * rows starting at or after this offset are not read
+	 */
+	private long endOffset = Long.MAX_VALUE;
+
+	/**
+	 * position of the next line start, set by scanLine()
+	 */
+	private int scanEnd;
+
+	/**
+	 * cells of the current row: start and end in the mapping, flags
+	 */
+	private int cellCount;
+	private int[] cellStarts = new int[16];
+	private int[] cellEnds = new int[16];
+	private byte[] cellFlags = new byte[16];
+
+	/**
+	 * buffer for decoding a cell
+	 */
+	private byte[] scratch = new byte[256];
+
+	/**
+	 * chars of a cell parsed as a number
+	 */
+	private char[] numberChars = new char[64];
+
+	/**
+	 * chars of a cell copied to a CsvRow
+	 */
+	private char[] chars = new char[256];
+
+	/**
+	 * Constructs MappedCSVReader of an UTF-8 file
+	 *
+	 * @param filename:
+	 *            the filename of input CSV source
+	 * @throws IOException
+	 */
+	public MappedCSVReader(String filename) throws FileNotFoundException, IOException {
+		this(filename, DEFAULT_MAP_SIZE);
+	}
+
+	/**
+	 * Constructs MappedCSVReader of an UTF-8 file
+	 *
+	 * @param filename:
+	 *            the filename of input CSV source
+	 * @param mapSize:
+	 *            size of a mapping, it grows if a row is longer
+	 * @throws IOException
+	 */
+	public MappedCSVReader(String filename, int mapSize) throws FileNotFoundException, IOException {
+		this(filename, 0, Long.MAX_VALUE, mapSize);
+	}
+
+	/**
+	 * Constructs MappedCSVReader which reads the rows starting in a range of an UTF-8 file
+	 *
+	 * @param filename:
+	 *            the filename of input CSV source
+	 * @param start:
+	 *            offset of a row start
+	 * @param end:
+	 *            rows starting at or after this offset are not read, the last row may end after it
+	 * @param mapSize:
+	 *            size of a mapping, it grows if a row is longer
+	 * @throws IOException
+	 */
+	MappedCSVReader(String filename, long start, long end, int mapSize) throws FileNotFoundException, IOException {
+		this.file = new RandomAccessFile(filename, "r");
+		this.channel = file.getChannel();
+		this.fileSize = channel.size();
+		this.mapSize = Math.max(mapSize, 16);
+		this.endOffset = end;
+		map(Math.min(start, fileSize));
+	}
+
+	/**
+	 * Map the file from the offset base
+	 */
+	private void map(long base) throws IOException {
+		long len = Math.min(mapSize, fileSize - base);
+		map = channel.map(FileChannel.MapMode.READ_ONLY, base, len);
+		// the scanner reads 8 bytes at a time, the first byte is the lowest
+		map.order(ByteOrder.LITTLE_ENDIAN);
+		mapBase = base;
+		mapLen = (int) len;
+		pos = 0;
+	}
+
+	/**
+	 * Get a byte of the mapping
+	 *
+	 * @return the byte (0..255), EOF or MORE if the mapping must move forward
+	 */
+	private int at(int p) {
+		if (p < mapLen) {
+			return map.get(p) & 0xFF;
+		}
+		return (mapBase + mapLen >= fileSize) ? EOF : MORE;
+	}
+
+	/**
+	 * Add a cell to the current row
+	 */
+	private void addCell(int start, int end, int flags) {
+		if (cellCount == cellStarts.length) {
+			int size = cellCount * 2;
+			cellStarts = Arrays.copyOf(cellStarts, size);
+			cellEnds = Arrays.copyOf(cellEnds, size);
+			cellFlags = Arrays.copyOf(cellFlags, size);
+		}
+		cellStarts[cellCount] = start;
+		cellEnds[cellCount] = end;
+		cellFlags[cellCount] = (byte) flags;
+		cellCount++;
+	}
+
+	/**
+	 * Get flags of a cell which is completed out of double quotation
+	 */
+	private static int cellFlags(boolean cellInQuote, boolean hasQuote, boolean multiLine) {
+		if (cellInQuote) {
+			return multiLine ? FLAG_QUOTED | FLAG_MULTI_LINE : FLAG_QUOTED;
+		}
+		return hasQuote ? FLAG_NORMALIZE : 0;
+	}
+
+	/**
+	 * Scan the next row from pos. The rules are the same as CSVReader.getNextRow().
+	 *
+	 * @return 1 if a row is scanned, EOF if there is no more row,
+	 *         MORE if the row does not end in the mapping
+	 */
+	private int scanRow() {
+		int p = pos;
+		if (skipLF) {
+			int c = at(p);
+			if (c == MORE) {
+				return MORE;
+			}
+			if (c == CHAR_LINE_FEED) {
+				p++;
+			}
+		}
+		int rowStart = p;
+		int first = (mapBase + p < endOffset) ? at(p) : EOF;
+		if (first < 0) {
+			if (first == EOF) {
+				pos = p;
+				skipLF = false;
+			}
+			return first;
+		}
+
+		cellCount = 0;
+		boolean inCell = false;
+		boolean cellInQuote = false;
+		boolean hasQuote = false;
+		boolean multiLine = false;
+		int linePos = 0;	// position in the physical line
+		int last = 0;		// previous byte in the physical line
+		int quoteCnt = 0;	// number of quotes just before p (the first byte of line is not counted)
+		int cellStart = p;
+		boolean endsWithCR = false;
+
+		while (true) {
+			// skip the bytes which are not special 8 at a time
+			int special = ByteScanner.indexOfSpecial(map, p, mapLen);
+			if (special > p) {
+				linePos += special - p;
+				last = map.get(special - 1) & 0xFF;
+				quoteCnt = 0;
+				p = special;
+			}
+			int c = at(p);
+			if (c == MORE) {
+				return MORE;
+			}
+			if (c == EOF) {
+				if (inCell) {
+					addCell(cellStart, p, FLAG_NORMALIZE | (multiLine ? FLAG_MULTI_LINE : 0));
+				}
+				else if (linePos > 0 && last != CHAR_SEPARATOR) {
+					addCell(cellStart, p, cellFlags(cellInQuote, hasQuote, multiLine));
+				}
+				break;
+			}
+
+			if (c == CHAR_QUOTE) {
+				if (!inCell) {
+					// Get all the following quotes
+					int count = 1;
+					int next;
+					while ((next = at(p + count)) == CHAR_QUOTE) {
+						count++;
+					}
+					if (next == MORE) {
+						return MORE;
+					}
+
+					/* check if the first quote */
+					if ((linePos == 0 || last == CHAR_SEPARATOR) && (count - 1) % 2 == 0) {
+						inCell = true;
+					}
+					else if (next == CHAR_SEPARATOR || next == CHAR_LINE_FEED || next == CHAR_CR || next == EOF) {
+						// the cell has only quotes and enclosed in double quotation
+						cellInQuote = true;
+					}
+					p += count;
+					linePos += count;
+					quoteCnt = 0;
+				}
+				else {
+					/* check if the last quote */
+					int next = at(p + 1);
+					if (next == MORE) {
+						return MORE;
+					}
+					if ((next == CHAR_SEPARATOR || next == CHAR_LINE_FEED || next == CHAR_CR || next == EOF)
+							&& quoteCnt % 2 == 0) {
+						inCell = false;
+						cellInQuote = true;
+					}
+					quoteCnt = (linePos > 0) ? quoteCnt + 1 : 0;
+					p++;
+					linePos++;
+				}
+				hasQuote = true;
+				last = CHAR_QUOTE;
+				continue;
+			}
+			quoteCnt = 0;
+
+			if (c == CHAR_LINE_FEED || c == CHAR_CR) {
+				if (!inCell) {
+					// end of row, a line ending with SEPARATOR has no empty last cell
+					if (linePos > 0 && last != CHAR_SEPARATOR) {
+						addCell(cellStart, p, cellFlags(cellInQuote, hasQuote, multiLine));
+					}
+					p++;
+					endsWithCR = (c == CHAR_CR);
+					break;
+				}
+				int lineEnd = p;
+				p++;
+				if (c == CHAR_CR) {
+					int next = at(p);
+					if (next == MORE) {
+						return MORE;
+					}
+					if (next == CHAR_LINE_FEED) {
+						p++;
+					}
+				}
+				int next = at(p);
+				if (next == MORE) {
+					return MORE;
+				}
+				if (next == EOF) {
+					// EOF inside a quoted cell
+					addCell(cellStart, lineEnd, FLAG_NORMALIZE | (multiLine ? FLAG_MULTI_LINE : 0));
+					break;
+				}
+				// the cell continues on the next line
+				multiLine = true;
+				linePos = 0;
+				last = 0;
+				continue;
+			}
+
+			if (c == CHAR_SEPARATOR && !inCell) {
+				addCell(cellStart, p, cellFlags(cellInQuote, hasQuote, multiLine));
+				cellInQuote = false;
+				hasQuote = false;
+				multiLine = false;
+				cellStart = p + 1;
+			}
+			p++;
+			linePos++;
+			last = c;
+		}
+		pos = p;
+		skipLF = endsWithCR;
+		rowOffset = mapBase + rowStart;
+		return 1;
+	}
+
+	/**
+	 * Read the next row. The cells are not decoded.
+	 *
+	 * @return false if the reader reaches EOF
+	 * @throws IOException
+	 */
+	public boolean nextRow() throws IOException {
+		while (true) {
+			int result = scanRow();
+			if (result != MORE) {
+				return result > 0;
+			}
+			// the row does not end in the mapping, map again from the row
+			if (pos == 0) {
+				if (mapSize == Integer.MAX_VALUE) {
+					throw new IOException("Row at offset " + mapBase + " is longer than 2GB");
+				}
+				mapSize = (int) Math.min(mapSize * 2L, Integer.MAX_VALUE);
+			}
+			map(mapBase + pos);
+		}
+	}
+
+	/**
+	 * Find the first line start at or after an offset of the file
+	 *
+	 * @param offset  offset in the file
+	 * @return offset of the line start, the file size if there is no more line
+	 * @throws IOException
+	 */
+	long lineStartFrom(long offset) throws IOException {
+		if (offset <= 0) {
+			return 0;
+		}
+		if (offset >= fileSize) {
+			return fileSize;
+		}
+		map(offset - 1);
+		int p = 1;
+		while (true) {
+			int prev = at(p - 1);
+			int c = at(p);
+			if (c == MORE) {
+				map(mapBase + p - 1);
+				p = 1;
+				continue;
+			}
+			if (prev == CHAR_LINE_FEED || (prev == CHAR_CR && c != CHAR_LINE_FEED) || c == EOF) {
+				return mapBase + p;
+			}
+			p++;
+		}
+	}
+
+	/**
+	 * Scan the lines between two line starts of the file. Only the quote state is followed,
+	 * with the same rules as scanRow().
+	 *
+	 * @param from         a line start
+	 * @param inCell       true if the line start 'from' is inside a quoted cell
+	 * @param to           a line start after 'from'
+	 * @param firstRow     firstRow[0] is set to the first row start in [from, to), -1 if none
+	 * @return true if the line start 'to' is inside a quoted cell
+	 * @throws IOException
+	 */
+	boolean scanLines(long from, boolean inCell, long to, long[] firstRow) throws IOException {
+		firstRow[0] = -1;
+		map(from);
+		int lineStart = 0;
+		while (mapBase + lineStart < to) {
+			if (!inCell && firstRow[0] < 0) {
+				firstRow[0] = mapBase + lineStart;
+			}
+			int result = scanLine(lineStart, inCell);
+			if (result == EOF) {
+				break;
+			}
+			if (result == MORE) {
+				// the line does not end in the mapping, map again from the line
+				if (lineStart == 0) {
+					if (mapSize == Integer.MAX_VALUE) {
+						throw new IOException("Line at offset " + mapBase + " is longer than 2GB");
+					}
+					mapSize = (int) Math.min(mapSize * 2L, Integer.MAX_VALUE);
+				}
+				map(mapBase + lineStart);
+				lineStart = 0;
+				continue;
+			}
+			inCell = (result == 1);
+			lineStart = scanEnd;
+		}
+		return inCell;
+	}
+
+	/**
+	 * Scan a physical line from p, scanEnd is set to the next line start
+	 *
+	 * @return 1 if the next line start is inside a quoted cell, 0 if not,
+	 *         EOF if the line is not terminated, MORE if the line does not end in the mapping
+	 */
+	private int scanLine(int p, boolean inCell) {
+		int linePos = 0;
+		int last = 0;
+		int quoteCnt = 0;
+		while (true) {
+			// skip the bytes which are not special 8 at a time
+			int special = ByteScanner.indexOfSpecial(map, p, mapLen);
+			if (special > p) {
+				linePos += special - p;
+				last = map.get(special - 1) & 0xFF;
+				quoteCnt = 0;
+				p = special;
+			}
+			int c = at(p);
+			if (c < 0) {
+				return c;
+			}
+			if (c == CHAR_QUOTE) {
+				if (!inCell) {
+					int count = 1;
+					int next;
+					while ((next = at(p + count)) == CHAR_QUOTE) {
+						count++;
+					}
+					if (next == MORE) {
+						return MORE;
+					}
+					if ((linePos == 0 || last == CHAR_SEPARATOR) && (count - 1) % 2 == 0) {
+						inCell = true;
+					}
+					p += count;
+					linePos += count;
+					quoteCnt = 0;
+				}
+				else {
+					int next = at(p + 1);
+					if (next == MORE) {
+						return MORE;
+					}
+					if ((next == CHAR_SEPARATOR || next == CHAR_LINE_FEED || next == CHAR_CR || next == EOF)
+							&& quoteCnt % 2 == 0) {
+						inCell = false;
+					}
+					quoteCnt = (linePos > 0) ? quoteCnt + 1 : 0;
+					p++;
+					linePos++;
+				}
+				last = CHAR_QUOTE;
+				continue;
+			}
+			quoteCnt = 0;
+			if (c == CHAR_LINE_FEED || c == CHAR_CR) {
+				p++;
+				if (c == CHAR_CR) {
+					int next = at(p);
+					if (next == MORE) {
+						return MORE;
+					}
+					if (next == CHAR_LINE_FEED) {
+						p++;
+					}
+				}
+				scanEnd = p;
+				return inCell ? 1 : 0;
+			}
+			p++;
+			linePos++;
+			last = c;
+		}
+	}
+
+	/**
+	 * @return the number of cells of the current row
+	 */
+	public int getCellCount() {
+		return cellCount;
+	}
+
+	/**
+	 * @return offset in the file of the current row
+	 */
+	public long getRowOffset() {
+		return rowOffset;
+	}
+
+	/**
+	 * Decode a cell of the current row
+	 *
+	 * @param index  index of the cell
+	 * @return the cell, the same as the cell of CSVReader.getNextRow()
+	 */
+	public String getCell(int index) {
+		if (index < 0 || index >= cellCount) {
+			throw new IndexOutOfBoundsException("Cell " + index + " of " + cellCount);
+		}
+		int start = cellStarts[index];
+		int len = cellEnds[index] - start;
+		int flags = cellFlags[index];
+		if (scratch.length < len) {
+			scratch = new byte[Math.max(len, scratch.length * 2)];
+		}
+		map.position(start);
+		map.get(scratch, 0, len);
+
+		if ((flags & FLAG_MULTI_LINE) != 0) {
+			// CR, LF and CRLF of the cell are returned as LF
+			int n = 0;
+			for (int i = 0; i < len; i++) {
+				byte b = scratch[i];
+				if (b == CHAR_CR) {
+					b = CHAR_LINE_FEED;
+					if (i + 1 < len && scratch[i + 1] == CHAR_LINE_FEED) {
+						i++;
+					}
+				}
+				scratch[n++] = b;
+			}
+			len = n;
+		}
+		String cell = new String(scratch, 0, len, UTF_8);
+		if ((flags & FLAG_NORMALIZE) != 0) {
+			return CSVReader.normalizeCell(cell.toCharArray(), 0, cell.length());
+		}
+		return cell;
+	}
+
+	/**
+	 * Copy the bytes of a cell to numberChars, the chars of a number are ASCII
+	 *
+	 * @return number of chars
+	 */
+	private int numberChars(int index) {
+		if (index < 0 || index >= cellCount) {
+			throw new IndexOutOfBoundsException("Cell " + index + " of " + cellCount);
+		}
+		int start = cellStarts[index];
+		int len = cellEnds[index] - start;
+		if (numberChars.length < len) {
+			numberChars = new char[Math.max(len, numberChars.length * 2)];
+		}
+		for (int i = 0; i < len; i++) {
+			numberChars[i] = (char) (map.get(start + i) & 0xFF);
+		}
+		return len;
+	}
+
+	/**
+	 * Parse a cell of the current row as an int without decoding it
+	 *
+	 * @param index  index of the cell
+	 * @return the value, the same as Integer.parseInt (a cell enclosed in double quotation is parsed without the quotes)
+	 * @throws NumberFormatException if the cell is not an int
+	 */
+	public int getInt(int index) {
+		return NumberParser.parseInt(numberChars, 0, numberChars(index));
+	}
+
+	/**
+	 * Parse a cell of the current row as a long without decoding it
+	 *
+	 * @param index  index of the cell
+	 * @return the value, the same as Long.parseLong (a cell enclosed in double quotation is parsed without the quotes)
+	 * @throws NumberFormatException if the cell is not a long
+	 */
+	public long getLong(int index) {
+		return NumberParser.parseLong(numberChars, 0, numberChars(index));
+	}
+
+	/**
+	 * Parse a cell of the current row as a double without decoding it
+	 *
+	 * @param index  index of the cell
+	 * @return the value, the same as Double.parseDouble (a cell enclosed in double quotation is parsed without the quotes)
+	 * @throws NumberFormatException if the cell is not a double
+	 */
+	public double getDouble(int index) {
+		return NumberParser.parseDouble(numberChars, 0, numberChars(index));
+	}
+
+	/**
+	 * Read the next row and decode all the cells
+	 *
+	 * @return A string array of which each element is separated by comma. Null
+	 *         if the reader reaches EOF
+	 * @throws IOException
+	 */
+	public List<String> getNextRow() throws IOException {
+		if (!nextRow()) {
+			return null;
+		}
+		List<String> cellArray = new ArrayList<String>(cellCount);
+		for (int i = 0; i < cellCount; i++) {
+			cellArray.add(getCell(i));
+		}
+		return cellArray;
+	}
+
+	/**
+	 * Read the next row into a reusable row. The cells are the same as getNextRow(),
+	 * an ASCII cell is copied to the row without creating a String.
+	 *
+	 * @param row  the row to fill, its previous cells are removed
+	 * @return false if the reader reaches EOF
+	 * @throws IOException
+	 */
+	public boolean getNextRow(CsvRow row) throws IOException {
+		return getNextRow(row, null);
+	}
+
+	/**
+	 * Read the next row into a reusable row, with only some columns
+	 *
+	 * @param row      the row to fill, its previous cells are removed
+	 * @param columns  the columns copied to the row, in this order (a missing column is an empty cell),
+	 *                 null for all the columns
+	 * @return false if the reader reaches EOF
+	 * @throws IOException
+	 */
+	boolean getNextRow(CsvRow row, int[] columns) throws IOException {
+		if (!nextRow()) {
+			return false;
+		}
+		row.clear();
+		int n = (columns == null) ? cellCount : columns.length;
+		for (int i = 0; i < n; i++) {
+			int index = (columns == null) ? i : columns[i];
+			if (index >= cellCount) {
+				row.addCell(chars, 0, 0, false);
+				continue;
+			}
+			int start = cellStarts[index];
+			int len = cellEnds[index] - start;
+			if (chars.length < len) {
+				chars = new char[Math.max(len, chars.length * 2)];
+			}
+			// a quoted cell is returned as it is, the other flags change the chars
+			boolean ascii = (cellFlags[index] & (FLAG_NORMALIZE | FLAG_MULTI_LINE)) == 0;
+			if (ascii) {
+				if (scratch.length < len) {
+					scratch = new byte[Math.max(len, scratch.length * 2)];
+				}
+				map.position(start);
+				map.get(scratch, 0, len);
+				for (int j = 0; j < len; j++) {
+					byte b = scratch[j];
+					if (b < 0) {
+						ascii = false;
+						break;
+					}
+					chars[j] = (char) b;
+				}
+			}
+			if (!ascii) {
+				String cell = getCell(index);
+				len = cell.length();
+				if (chars.length < len) {
+					chars = new char[Math.max(len, chars.length * 2)];
+				}
+				cell.getChars(0, len, chars, 0);
+			}
+			row.addCell(chars, 0, len, false);
+		}
+		return true;
+	}
+
+	/**
+	 * Closes the underlying file.
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		map = null;
+		channel.close();
+		file.close();
+	}
+}
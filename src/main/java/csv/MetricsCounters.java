@@ -0,0 +1,140 @@
+package csv;
+
+/**
+* Class MetricsCounters
+* The counts of one reader or writer which are not added to its CsvMetrics yet.
+* They are plain fields updated by the thread of the reader or writer, and added
+* to the shared metrics about every CsvMetrics.REPORT_INTERVAL ms.
+*
+* A time measured around a call includes the time of the calls it makes: for example the
+* parse time of a row includes the refill of the window in the middle of the row.
+* Such inner times are taken out with innerNanos(), so each time is counted once.
+* @version
+*/
+
+final class MetricsCounters {
+
+	long rows;
+
+	long cells;
+
+	long bytes;
+
+	long quotedCells;
+
+	long multiLineCells;
+
+	long refills;
+
+	long decodeNanos;
+
+	long parseNanos;
+
+	long escapeNanos;
+
+	long encodeNanos;
+
+	long flushNanos;
+
+	/**
+	 * metrics the counts are added to, null for the counts of a chunk (see add(MetricsCounters))
+	 */
+	private final CsvMetrics metrics;
+
+	/**
+	 * time of the last report
+	 */
+	private long reported = System.nanoTime();
+
+	MetricsCounters(CsvMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	CsvMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @return the sum of the times which can be measured inside a row
+	 */
+	long innerNanos() {
+		return decodeNanos + encodeNanos + flushNanos;
+	}
+
+	/**
+	 * Count a row read by a reader
+	 *
+	 * @param start  time at the start of the row
+	 * @param inner  innerNanos() at the start of the row
+	 * @param cellCount  number of cells of the row
+	 */
+	void parsed(long start, long inner, int cellCount) {
+		long now = System.nanoTime();
+		parseNanos += now - start - (innerNanos() - inner);
+		rows++;
+		cells += cellCount;
+		reportIfDue(now);
+	}
+
+	/**
+	 * Count a row formatted by a writer
+	 *
+	 * @param start  time at the start of the row
+	 * @param inner  innerNanos() at the start of the row
+	 * @param cellCount  number of cells of the row
+	 */
+	void escaped(long start, long inner, int cellCount) {
+		long now = System.nanoTime();
+		escapeNanos += now - start - (innerNanos() - inner);
+		rows++;
+		cells += cellCount;
+		reportIfDue(now);
+	}
+
+	/**
+	 * Add the counts of a chunk formatted by another thread
+	 */
+	void add(MetricsCounters chunk) {
+		rows += chunk.rows;
+		cells += chunk.cells;
+		bytes += chunk.bytes;
+		quotedCells += chunk.quotedCells;
+		multiLineCells += chunk.multiLineCells;
+		refills += chunk.refills;
+		decodeNanos += chunk.decodeNanos;
+		parseNanos += chunk.parseNanos;
+		escapeNanos += chunk.escapeNanos;
+		encodeNanos += chunk.encodeNanos;
+		flushNanos += chunk.flushNanos;
+		reportIfDue(System.nanoTime());
+	}
+
+	private void reportIfDue(long now) {
+		if (metrics != null && now - reported >= CsvMetrics.REPORT_INTERVAL * 1000000L) {
+			reported = now;
+			metrics.add(this);
+		}
+	}
+
+	/**
+	 * Add the counts to the metrics now
+	 */
+	void report() {
+		reported = System.nanoTime();
+		metrics.add(this);
+	}
+
+	void clear() {
+		rows = 0;
+		cells = 0;
+		bytes = 0;
+		quotedCells = 0;
+		multiLineCells = 0;
+		refills = 0;
+		decodeNanos = 0;
+		parseNanos = 0;
+		escapeNanos = 0;
+		encodeNanos = 0;
+		flushNanos = 0;
+	}
+}
@@ -0,0 +1,106 @@
+package csv;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+* Class MpscRingBuffer
+* Bounded lock-free queue for many producers and one consumer.
+* Each slot has a sequence number: a producer claims a slot by a CAS on the tail and
+* publishes the element by setting the sequence of the slot, the consumer takes the element
+* when the sequence shows it is published and gives the slot back to the producers.
+* @version
+*/
+
+final class MpscRingBuffer<E> {
+
+	private final int mask;
+
+	private final AtomicReferenceArray<E> elements;
+
+	/**
+	 * sequence of each slot: index        the slot is free for the producer of this index
+	 *                        index + 1    the element of this index is published
+	 */
+	private final AtomicLongArray sequences;
+
+	/**
+	 * next index for the producers
+	 */
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * next index for the consumer, only changed by the consumer thread
+	 */
+	private volatile long head;
+
+	/**
+	 * @param capacity  number of slots, rounded up to a power of 2
+	 */
+	MpscRingBuffer(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		mask = size - 1;
+		elements = new AtomicReferenceArray<E>(size);
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * Add an element, called by any producer thread
+	 *
+	 * @return false if the queue is full
+	 */
+	boolean offer(E element) {
+		while (true) {
+			long index = tail.get();
+			int slot = (int) index & mask;
+			long diff = sequences.get(slot) - index;
+			if (diff == 0) {
+				if (tail.compareAndSet(index, index + 1)) {
+					elements.lazySet(slot, element);
+					sequences.set(slot, index + 1);
+					return true;
+				}
+			}
+			else if (diff < 0) {
+				return false;
+			}
+			// else another producer has claimed the slot, try again
+		}
+	}
+
+	/**
+	 * Take the next element, called by the consumer thread only
+	 *
+	 * @return null if no element is published
+	 */
+	E poll() {
+		long index = head;
+		int slot = (int) index & mask;
+		if (sequences.get(slot) != index + 1) {
+			return null;
+		}
+		E element = elements.get(slot);
+		elements.lazySet(slot, null);
+		sequences.set(slot, index + mask + 1);
+		head = index + 1;
+		return element;
+	}
+
+	/**
+	 * @return true if no element is claimed by a producer and not taken
+	 */
+	boolean isEmpty() {
+		return tail.get() == head;
+	}
+
+	/**
+	 * @return the number of slots
+	 */
+	int capacity() {
+		return mask + 1;
+	}
+}
@@ -0,0 +1,192 @@
+package csv;
+
+/**
+* Class NumberParser
+* Parse numbers from the chars of a cell without creating a String.
+* The results and the errors are the same as Integer.parseInt, Long.parseLong and
+* Double.parseDouble. A cell enclosed in double quotation is parsed without the quotes.
+* @version
+*/
+
+final class NumberParser {
+
+	/**
+	 * powers of ten which are exact doubles
+	 */
+	private static final double[] POW10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	/**
+	 * max number of digits of a mantissa which is an exact double
+	 */
+	private static final int MAX_EXACT_DIGITS = 15;
+
+	private NumberParser() {
+	}
+
+	/**
+	 * @return start of the number: after the opening quote if the cell is enclosed in double quotation
+	 */
+	private static int unquotedStart(char[] buf, int start, int end) {
+		return (end - start >= 2 && buf[start] == '"' && buf[end - 1] == '"') ? start + 1 : start;
+	}
+
+	private static NumberFormatException error(char[] buf, int start, int end) {
+		return new NumberFormatException("For input string: \"" + new String(buf, start, end - start) + "\"");
+	}
+
+	/**
+	 * Parse a decimal long
+	 *
+	 * @param buf    buffer holding the cell
+	 * @param start  index of the first char of the cell
+	 * @param end    index after the last char of the cell
+	 * @return the value
+	 * @throws NumberFormatException if the cell is not a long
+	 */
+	static long parseLong(char[] buf, int start, int end) {
+		int i = unquotedStart(buf, start, end);
+		if (i > start) {
+			end--;
+		}
+		start = i;
+		if (i == end) {
+			throw error(buf, start, end);
+		}
+		// the value is accumulated negatively, as Long.parseLong does, to reach Long.MIN_VALUE
+		boolean negative = false;
+		long limit = -Long.MAX_VALUE;
+		char c = buf[i];
+		if (c == '-') {
+			negative = true;
+			limit = Long.MIN_VALUE;
+			i++;
+		}
+		else if (c == '+') {
+			i++;
+		}
+		if (i == end) {
+			throw error(buf, start, end);
+		}
+		long multmin = limit / 10;
+		long result = 0;
+		for (; i < end; i++) {
+			int digit = buf[i] - '0';
+			if (digit < 0 || digit > 9 || result < multmin) {
+				throw error(buf, start, end);
+			}
+			result *= 10;
+			if (result < limit + digit) {
+				throw error(buf, start, end);
+			}
+			result -= digit;
+		}
+		return negative ? result : -result;
+	}
+
+	/**
+	 * Parse a decimal int
+	 *
+	 * @throws NumberFormatException if the cell is not an int
+	 */
+	static int parseInt(char[] buf, int start, int end) {
+		long value = parseLong(buf, start, end);
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+			throw error(buf, start, end);
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Parse a double. A decimal number with at most 15 significant digits and a small exponent
+	 * is computed exactly from its mantissa and a power of ten, other numbers are parsed by
+	 * Double.parseDouble.
+	 *
+	 * @throws NumberFormatException if the cell is not a double
+	 */
+	static double parseDouble(char[] buf, int start, int end) {
+		int i = unquotedStart(buf, start, end);
+		if (i > start) {
+			end--;
+		}
+		start = i;
+		boolean negative = false;
+		if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+			negative = buf[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;			// significant digits in mantissa
+		int scale = 0;			// power of ten of the last digit
+		boolean hasDigit = false;
+		boolean point = false;
+		for (; i < end; i++) {
+			char c = buf[i];
+			if (c >= '0' && c <= '9') {
+				hasDigit = true;
+				if (mantissa != 0 || c != '0') {
+					if (++digits > MAX_EXACT_DIGITS) {
+						return slowParseDouble(buf, start, end);
+					}
+					mantissa = mantissa * 10 + (c - '0');
+				}
+				if (point) {
+					scale--;
+				}
+			}
+			else if (c == '.' && !point) {
+				point = true;
+			}
+			else {
+				break;
+			}
+		}
+		if (!hasDigit) {
+			return slowParseDouble(buf, start, end);
+		}
+		if (i < end) {
+			// exponent
+			if (buf[i] != 'e' && buf[i] != 'E') {
+				return slowParseDouble(buf, start, end);
+			}
+			i++;
+			boolean negativeExp = false;
+			if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+				negativeExp = buf[i] == '-';
+				i++;
+			}
+			if (i == end) {
+				throw error(buf, start, end);
+			}
+			int exp = 0;
+			for (; i < end; i++) {
+				int digit = buf[i] - '0';
+				if (digit < 0 || digit > 9 || exp > 1000) {
+					return slowParseDouble(buf, start, end);
+				}
+				exp = exp * 10 + digit;
+			}
+			scale += negativeExp ? -exp : exp;
+		}
+		double value;
+		if (mantissa == 0) {
+			value = 0.0;
+		}
+		else if (scale >= 0 && scale < POW10.length) {
+			value = mantissa * POW10[scale];
+		}
+		else if (scale < 0 && -scale < POW10.length) {
+			value = mantissa / POW10[-scale];
+		}
+		else {
+			return slowParseDouble(buf, start, end);
+		}
+		return negative ? -value : value;
+	}
+
+	private static double slowParseDouble(char[] buf, int start, int end) {
+		return Double.parseDouble(new String(buf, start, end - start));
+	}
+}
@@ -0,0 +1,207 @@
+package csv;
+
+import java.util.Arrays;
+
+/**
+* Class NumericColumn
+* A column of a CSV file read into a growable array of primitive values
+* (see CSVReader.readColumns). The cells are parsed from the chars of the row, no String is created.
+* @version
+*/
+
+public final class NumericColumn {
+
+	/**
+	 * Type of the values of a column
+	 */
+	public enum Type {
+		INT, LONG, DOUBLE
+	}
+
+	/**
+	 * index of the column in the file
+	 */
+	private final int column;
+
+	private final Type type;
+
+	/**
+	 * values, only the array of the type is used
+	 */
+	private int[] ints;
+	private long[] longs;
+	private double[] doubles;
+
+	/**
+	 * number of values
+	 */
+	private int size;
+
+	/**
+	 * Constructs an empty NumericColumn
+	 *
+	 * @param column  index of the column in the file, from 0
+	 * @param type    type of the values
+	 */
+	public NumericColumn(int column, Type type) {
+		if (column < 0) {
+			throw new IllegalArgumentException("Invalid column " + column);
+		}
+		this.column = column;
+		this.type = type;
+		switch (type) {
+		case INT:
+			ints = new int[64];
+			break;
+		case LONG:
+			longs = new long[64];
+			break;
+		default:
+			doubles = new double[64];
+		}
+	}
+
+	/**
+	 * @return index of the column in the file
+	 */
+	public int getColumn() {
+		return column;
+	}
+
+	/**
+	 * @return type of the values
+	 */
+	public Type getType() {
+		return type;
+	}
+
+	/**
+	 * @return number of values
+	 */
+	public int size() {
+		return size;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Value " + index + " of " + size);
+		}
+	}
+
+	/**
+	 * @param index  index of the value (the row)
+	 * @return the value of an INT column
+	 */
+	public int getInt(int index) {
+		checkIndex(index);
+		if (type != Type.INT) {
+			throw new IllegalStateException("Column " + column + " is " + type);
+		}
+		return ints[index];
+	}
+
+	/**
+	 * @param index  index of the value (the row)
+	 * @return the value of an INT or LONG column
+	 */
+	public long getLong(int index) {
+		checkIndex(index);
+		if (type == Type.DOUBLE) {
+			throw new IllegalStateException("Column " + column + " is " + type);
+		}
+		return (type == Type.INT) ? ints[index] : longs[index];
+	}
+
+	/**
+	 * @param index  index of the value (the row)
+	 * @return the value of any column
+	 */
+	public double getDouble(int index) {
+		checkIndex(index);
+		switch (type) {
+		case INT:
+			return ints[index];
+		case LONG:
+			return longs[index];
+		default:
+			return doubles[index];
+		}
+	}
+
+	/**
+	 * @return a copy of the values of an INT column
+	 */
+	public int[] toIntArray() {
+		if (type != Type.INT) {
+			throw new IllegalStateException("Column " + column + " is " + type);
+		}
+		return Arrays.copyOf(ints, size);
+	}
+
+	/**
+	 * @return a copy of the values of an INT or LONG column
+	 */
+	public long[] toLongArray() {
+		if (type == Type.LONG) {
+			return Arrays.copyOf(longs, size);
+		}
+		long[] values = new long[size];
+		for (int i = 0; i < size; i++) {
+			values[i] = getLong(i);
+		}
+		return values;
+	}
+
+	/**
+	 * @return a copy of the values of any column
+	 */
+	public double[] toDoubleArray() {
+		if (type == Type.DOUBLE) {
+			return Arrays.copyOf(doubles, size);
+		}
+		double[] values = new double[size];
+		for (int i = 0; i < size; i++) {
+			values[i] = getDouble(i);
+		}
+		return values;
+	}
+
+	/**
+	 * Remove all the values
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Parse a cell and add its value
+	 *
+	 * @param row    the row
+	 * @param index  index of the cell in the row
+	 * @throws NumberFormatException if the cell is not a number of the type
+	 */
+	void add(CsvRow row, int index) {
+		switch (type) {
+		case INT:
+			int i = row.getInt(index);
+			if (size == ints.length) {
+				ints = Arrays.copyOf(ints, size * 2);
+			}
+			ints[size++] = i;
+			break;
+		case LONG:
+			long l = row.getLong(index);
+			if (size == longs.length) {
+				longs = Arrays.copyOf(longs, size * 2);
+			}
+			longs[size++] = l;
+			break;
+		default:
+			double d = row.getDouble(index);
+			if (size == doubles.length) {
+				doubles = Arrays.copyOf(doubles, size * 2);
+			}
+			doubles[size++] = d;
+		}
+	}
+}
@@ -0,0 +1,327 @@
+package csv;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+* Class ParallelCSVReader
+* This class reads an UTF-8 CSV file with several threads. The file is split into chunks
+* of bytes which are parsed by MappedCSVReader on a fork-join pool.
+* 
+* A chunk does not start at a row start: a line start may be inside a quoted cell with
+* line-feeds. At a line start the only state of the parser is "inside a quoted cell or not",
+* so the lines of each chunk are first scanned for both states in parallel. The real state
+* of each chunk is then known from the first chunk in one sequential pass, and each chunk
+* is parsed from its first real row start. The rows are the same as the rows of CSVReader.
+* @version
+*/
+
+public class ParallelCSVReader {
+
+	/**
+	 * Default size of a chunk (16MB)
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+	private String filename;
+
+	private int chunkSize;
+
+	private ForkJoinPool pool;
+
+	/**
+	 * Constructs ParallelCSVReader of an UTF-8 file on the common fork-join pool
+	 *
+	 * @param filename:
+	 *            the filename of input CSV source
+	 */
+	public ParallelCSVReader(String filename) {
+		this(filename, DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constructs ParallelCSVReader of an UTF-8 file
+	 *
+	 * @param filename:
+	 *            the filename of input CSV source
+	 * @param chunkSize:
+	 *            size in bytes of the chunks parsed by one task
+	 * @param pool:
+	 *            the pool which parses the chunks
+	 */
+	public ParallelCSVReader(String filename, int chunkSize, ForkJoinPool pool) {
+		this.filename = filename;
+		this.chunkSize = Math.max(chunkSize, 1);
+		this.pool = pool;
+	}
+
+	/**
+	 * Find the first row start of each chunk
+	 *
+	 * @return offsets of the first row start of each chunk (-1 for a chunk inside one row),
+	 *         the last element is the file size
+	 * @throws IOException
+	 */
+	long[] findRowStarts() throws IOException {
+		final long fileSize = new File(filename).length();
+		final int n = (int) ((fileSize + chunkSize - 1) / chunkSize);
+
+		// for each chunk and each state at its first line start: state at the next chunk and first row start
+		final boolean[][] inCellAtEnd = new boolean[n][2];
+		final long[][] firstRow = new long[n][2];
+		List<Future<Void>> tasks = new ArrayList<Future<Void>>(n);
+		for (int i = 0; i < n; i++) {
+			final int chunk = i;
+			tasks.add(pool.submit(new Callable<Void>() {
+				public Void call() throws IOException {
+					MappedCSVReader reader = new MappedCSVReader(filename, chunkSize);
+					try {
+						long from = reader.lineStartFrom((long) chunk * chunkSize);
+						long to = reader.lineStartFrom((long) (chunk + 1) * chunkSize);
+						long[] first = new long[1];
+						for (int state = 0; state < 2; state++) {
+							inCellAtEnd[chunk][state] = reader.scanLines(from, state == 1, to, first);
+							firstRow[chunk][state] = first[0];
+						}
+					}
+					finally {
+						reader.close();
+					}
+					return null;
+				}
+			}));
+		}
+		for (Future<Void> task : tasks) {
+			get(task);
+		}
+
+		long[] rowStarts = new long[n + 1];
+		boolean inCell = false;
+		for (int i = 0; i < n; i++) {
+			int state = inCell ? 1 : 0;
+			rowStarts[i] = firstRow[i][state];
+			inCell = inCellAtEnd[i][state];
+		}
+		rowStarts[n] = fileSize;
+		return rowStarts;
+	}
+
+	/**
+	 * Open a reader of the rows of chunk i
+	 *
+	 * @param rowStarts  the result of findRowStarts()
+	 * @param i          index of a chunk which has a row start
+	 */
+	MappedCSVReader openChunk(long[] rowStarts, int i) throws IOException {
+		int next = i + 1;
+		while (rowStarts[next] < 0) {
+			next++;
+		}
+		long end = (next == rowStarts.length - 1) ? Long.MAX_VALUE : rowStarts[next];
+		return new MappedCSVReader(filename, rowStarts[i], end, chunkSize);
+	}
+
+	/**
+	 * Create the task which reads the rows of chunk i
+	 */
+	private Callable<List<List<String>>> chunkTask(final long[] rowStarts, final int i) {
+		return new Callable<List<List<String>>>() {
+			public List<List<String>> call() throws IOException {
+				List<List<String>> rows = new ArrayList<List<String>>();
+				MappedCSVReader reader = openChunk(rowStarts, i);
+				try {
+					List<String> cells;
+					while ((cells = reader.getNextRow()) != null) {
+						rows.add(cells);
+					}
+				}
+				finally {
+					reader.close();
+				}
+				return rows;
+			}
+		};
+	}
+
+	/**
+	 * @return size in bytes of the chunks
+	 */
+	int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * @return the filename of input CSV source
+	 */
+	String getFilename() {
+		return filename;
+	}
+
+	/**
+	 * @return the pool which parses the chunks
+	 */
+	ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Create a parallel stream of the rows of the file. The stream is split by chunks,
+	 * each part reads its chunks with its own MappedCSVReader. Closing the stream closes
+	 * the readers of the chunks being read, so a stream which is not read to its end
+	 * (findFirst(), limit(), ...) must be closed.
+	 *
+	 * @return the rows in the order of the file
+	 */
+	public Stream<List<String>> rows() {
+		final ChunkSpliterator spliterator = new ChunkSpliterator(this);
+		return StreamSupport.stream(spliterator, true).onClose(closer(spliterator));
+	}
+
+	/**
+	 * @return a task which closes the readers of the chunks of a spliterator, for Stream.onClose()
+	 */
+	static Runnable closer(final ChunkSpliterator spliterator) {
+		return new Runnable() {
+			public void run() {
+				try {
+					spliterator.close();
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Read all the rows of the file
+	 *
+	 * @return the rows in the order of the file
+	 * @throws IOException
+	 */
+	public List<List<String>> readAll() throws IOException {
+		final List<List<String>> rows = new ArrayList<List<String>>();
+		forEach(new RowHandler() {
+			public void handleRow(List<String> cells) {
+				rows.add(cells);
+			}
+		}, true);
+		return rows;
+	}
+
+	/**
+	 * Read all the rows of the file and give them to a handler
+	 *
+	 * @param handler   receives the rows
+	 * @param ordered   true: the handler is called by the current thread in the order of the file,
+	 *                  at most 2 chunks per thread of the pool are kept in memory.
+	 *                  false: the handler is called by the threads of the pool as soon as a chunk is parsed,
+	 *                  the rows of a chunk are in order, the handler must be thread-safe.
+	 * @throws IOException
+	 */
+	public void forEach(final RowHandler handler, boolean ordered) throws IOException {
+		final long[] rowStarts = findRowStarts();
+		int n = rowStarts.length - 1;
+
+		if (!ordered) {
+			List<Future<Void>> tasks = new ArrayList<Future<Void>>();
+			for (int i = 0; i < n; i++) {
+				if (rowStarts[i] < 0) {
+					continue;
+				}
+				final Callable<List<List<String>>> chunk = chunkTask(rowStarts, i);
+				tasks.add(pool.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						for (List<String> cells : chunk.call()) {
+							handler.handleRow(cells);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> task : tasks) {
+				get(task);
+			}
+			return;
+		}
+
+		int window = Math.max(pool.getParallelism() * 2, 2);
+		Deque<Future<List<List<String>>>> inFlight = new ArrayDeque<Future<List<List<String>>>>();
+		int i = 0;
+		try {
+			while (i < n || !inFlight.isEmpty()) {
+				while (i < n && inFlight.size() < window) {
+					if (rowStarts[i] >= 0) {
+						inFlight.add(pool.submit(chunkTask(rowStarts, i)));
+					}
+					i++;
+				}
+				if (inFlight.isEmpty()) {
+					continue;
+				}
+				for (List<String> cells : get(inFlight.poll())) {
+					handler.handleRow(cells);
+				}
+			}
+		}
+		finally {
+			for (Future<List<List<String>>> task : inFlight) {
+				task.cancel(false);
+			}
+		}
+	}
+
+	/**
+	 * Wait for a task, an IOException of the task is thrown again
+	 */
+	static <T> T get(Future<T> task) throws IOException {
+		try {
+			return task.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading the file", e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * @return the number of tasks a pool runs at a time: the parallelism of a fork-join pool,
+	 *         the max threads of a thread pool (at most the number of processors), else the number of processors
+	 */
+	static int parallelism(ExecutorService pool) {
+		if (pool instanceof ForkJoinPool) {
+			return ((ForkJoinPool) pool).getParallelism();
+		}
+		int processors = Runtime.getRuntime().availableProcessors();
+		if (pool instanceof ThreadPoolExecutor) {
+			return Math.min(((ThreadPoolExecutor) pool).getMaximumPoolSize(), processors);
+		}
+		return processors;
+	}
+}
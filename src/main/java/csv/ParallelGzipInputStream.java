@@ -0,0 +1,324 @@
+package csv;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+* Class ParallelGzipInputStream
+* A gzip input stream which decompresses the members of a multi-member gzip file on several
+* threads ahead of the reader. A member written by ParallelGzipOutputStream has its size in its
+* header, so it is read and given to a thread without being decompressed first; at most
+* readAhead members are read ahead. From the first member without its size (a file written by
+* another tool), the rest of the file is decompressed by one GZIPInputStream.
+* @version
+*/
+
+public final class ParallelGzipInputStream extends InputStream {
+
+	/**
+	 * flags of a gzip header
+	 */
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+
+	/**
+	 * max size of a header read before the member is known to have its size
+	 */
+	private static final int MAX_EXTRA_HEADER = 12 + 0xFFFF;
+
+	/**
+	 * max ratio of the size of the data to the size of its deflate stream (about 1032 for deflate),
+	 * and max size of the data of a member
+	 */
+	private static final int MAX_DEFLATE_RATIO = 1032;
+	private static final int MAX_MEMBER_DATA = Integer.MAX_VALUE - 8;
+
+	private final BufferedInputStream in;
+
+	private final ExecutorService pool;
+
+	private final int readAhead;
+
+	/**
+	 * decompressed members, in the order of the file
+	 */
+	private final Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+	/**
+	 * current decompressed member
+	 */
+	private byte[] current = new byte[0];
+	private int currentPos;
+
+	/**
+	 * true once the end of the file or a member without its size is reached
+	 */
+	private boolean endOfMembers;
+
+	/**
+	 * the rest of the file after a member without its size
+	 */
+	private InputStream sequential;
+
+	private boolean closed;
+
+	/**
+	 * Constructs ParallelGzipInputStream on the common fork-join pool
+	 *
+	 * @param in  the stream of the compressed data
+	 */
+	public ParallelGzipInputStream(InputStream in) {
+		this(in, ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism() * 2);
+	}
+
+	/**
+	 * Constructs ParallelGzipInputStream
+	 *
+	 * @param in         the stream of the compressed data
+	 * @param pool       the threads which decompress the members
+	 * @param readAhead  max number of members read ahead of the reader
+	 */
+	public ParallelGzipInputStream(InputStream in, ExecutorService pool, int readAhead) {
+		this.in = new BufferedInputStream(in, 64 * 1024);
+		this.pool = pool;
+		this.readAhead = Math.max(readAhead, 1);
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return (read(b, 0, 1) < 0) ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		if (len == 0) {
+			return 0;
+		}
+		while (currentPos == current.length) {
+			readMembers();
+			if (pending.isEmpty()) {
+				return (sequential == null) ? -1 : sequential.read(b, off, len);
+			}
+			current = ParallelCSVReader.get(pending.poll());
+			currentPos = 0;
+		}
+		int n = Math.min(len, current.length - currentPos);
+		System.arraycopy(current, currentPos, b, off, n);
+		currentPos += n;
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return current.length - currentPos;
+	}
+
+	/**
+	 * Read members and submit them until readAhead members are pending
+	 */
+	private void readMembers() throws IOException {
+		while (!endOfMembers && pending.size() < readAhead) {
+			final byte[] member = readMember();
+			if (member == null) {
+				endOfMembers = true;
+				break;
+			}
+			pending.add(pool.submit(new Callable<byte[]>() {
+				public byte[] call() throws IOException {
+					return decompress(member);
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Read the next member if its header has its size
+	 *
+	 * @return the member, null at the end of the file or if the member has no size
+	 *         (then the rest of the file is read by sequential)
+	 */
+	private byte[] readMember() throws IOException {
+		in.mark(MAX_EXTRA_HEADER);
+		int first = in.read();
+		if (first < 0) {
+			return null;
+		}
+		int size = -1;
+		byte[] header = new byte[10];
+		header[0] = (byte) first;
+		if (readFully(header, 1, 9) && (header[0] & 0xFF) == 0x1f && (header[1] & 0xFF) == 0x8b
+				&& (header[3] & FEXTRA) != 0) {
+			byte[] xlen = new byte[2];
+			if (readFully(xlen, 0, 2)) {
+				byte[] extra = new byte[getShort(xlen, 0)];
+				if (readFully(extra, 0, extra.length)) {
+					size = findSize(extra);
+				}
+			}
+		}
+		in.reset();
+		if (size >= 0 && size < 18) {
+			throw new ZipException("Corrupt gzip member: wrong member size " + size);
+		}
+		if (size < 0) {
+			sequential = new GZIPInputStream(in, 64 * 1024);
+			return null;
+		}
+		byte[] member = new byte[size];
+		if (!readFully(member, 0, size)) {
+			throw new EOFException("Unexpected end of gzip member");
+		}
+		return member;
+	}
+
+	/**
+	 * @return the size of the member in the extra field, -1 if there is none
+	 */
+	private static int findSize(byte[] extra) {
+		int p = 0;
+		while (p + 4 <= extra.length) {
+			int len = getShort(extra, p + 2);
+			if ((extra[p] & 0xFF) == ParallelGzipOutputStream.SUBFIELD_ID1
+					&& (extra[p + 1] & 0xFF) == ParallelGzipOutputStream.SUBFIELD_ID2
+					&& len == 4 && p + 8 <= extra.length) {
+				return getInt(extra, p + 4);
+			}
+			p += 4 + len;
+		}
+		return -1;
+	}
+
+	private boolean readFully(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			int n = in.read(b, off, len);
+			if (n < 0) {
+				return false;
+			}
+			off += n;
+			len -= n;
+		}
+		return true;
+	}
+
+	/**
+	 * Decompress a gzip member and check its CRC32 and size
+	 */
+	static byte[] decompress(byte[] member) throws IOException {
+		int flags = member[3] & 0xFF;
+		int p = 10;
+		int trailer = member.length - 8;
+		if ((flags & FEXTRA) != 0) {
+			p += 2 + getShort(member, p);
+		}
+		if ((flags & FNAME) != 0) {
+			p = skipString(member, p, trailer);
+		}
+		if ((flags & FCOMMENT) != 0) {
+			p = skipString(member, p, trailer);
+		}
+		if ((flags & FHCRC) != 0) {
+			p += 2;
+		}
+		if (p > trailer) {
+			throw new ZipException("Corrupt gzip member: header larger than the member");
+		}
+		int expectedCrc = getInt(member, trailer);
+		// the size in the trailer is checked before the data is allocated: a deflate stream
+		// cannot expand more than MAX_DEFLATE_RATIO times
+		int size = getInt(member, trailer + 4);
+		if (size < 0 || size > Math.min((long) (trailer - p) * MAX_DEFLATE_RATIO + 1024, MAX_MEMBER_DATA)) {
+			throw new ZipException("Corrupt gzip member: wrong size " + (size & 0xFFFFFFFFL));
+		}
+		byte[] data = new byte[size];
+
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(member, p, trailer - p);
+			int n = 0;
+			while (n < data.length) {
+				int k = inflater.inflate(data, n, data.length - n);
+				if (k == 0 && (inflater.finished() || inflater.needsInput())) {
+					break;
+				}
+				n += k;
+			}
+			if (n == data.length && !inflater.finished() && inflater.inflate(new byte[1]) > 0) {
+				// more data than the size of the trailer
+				n++;
+			}
+			if (n != data.length || !inflater.finished()) {
+				throw new ZipException("Corrupt gzip member: wrong size");
+			}
+		}
+		catch (DataFormatException e) {
+			throw new ZipException("Corrupt gzip member: " + e.getMessage());
+		}
+		finally {
+			inflater.end();
+		}
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		if ((int) crc.getValue() != expectedCrc) {
+			throw new ZipException("Corrupt gzip member: wrong CRC32");
+		}
+		return data;
+	}
+
+	/**
+	 * @return the position after the zero which ends a string of the header
+	 */
+	private static int skipString(byte[] member, int p, int end) throws ZipException {
+		while (p < end) {
+			if (member[p++] == 0) {
+				return p;
+			}
+		}
+		throw new ZipException("Corrupt gzip member: header larger than the member");
+	}
+
+	private static int getShort(byte[] b, int off) {
+		return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8;
+	}
+
+	private static int getInt(byte[] b, int off) {
+		return getShort(b, off) | getShort(b, off + 2) << 16;
+	}
+
+	/**
+	 * Close the file, the members read ahead are dropped
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		for (Future<byte[]> task : pending) {
+			task.cancel(false);
+		}
+		pending.clear();
+		if (sequential != null) {
+			sequential.close();
+		}
+		in.close();
+	}
+}
@@ -0,0 +1,241 @@
+package csv;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+* Class ParallelGzipOutputStream
+* A gzip output stream which compresses blocks of data on several threads.
+* Each block is compressed alone into a gzip member and the members are written in order,
+* so the output is a valid multi-member gzip file (gunzip and GZIPInputStream read it).
+* Each member has its compressed size in an extra field (subfield "CS"), which lets
+* ParallelGzipInputStream decompress the members in parallel.
+* flush() ends the current member, frequent flushes make the compression worse.
+* @version
+*/
+
+public final class ParallelGzipOutputStream extends OutputStream {
+
+	/**
+	 * Default number of bytes of a block (1MB)
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+	/**
+	 * id of the extra subfield holding the size of a member
+	 */
+	static final int SUBFIELD_ID1 = 'C';
+	static final int SUBFIELD_ID2 = 'S';
+
+	/**
+	 * size of the header of a member: fixed header, XLEN, subfield
+	 */
+	private static final int HEADER_SIZE = 10 + 2 + 8;
+
+	private static final int TRAILER_SIZE = 8;
+
+	private final OutputStream out;
+
+	private final ExecutorService pool;
+
+	private final int level;
+
+	private final int blockSize;
+
+	/**
+	 * max number of blocks compressed or waiting to be written
+	 */
+	private final int window;
+
+	/**
+	 * current block
+	 */
+	private byte[] block;
+	private int count;
+
+	/**
+	 * compressed members, in the order of the blocks
+	 */
+	private final Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+	private boolean anyMember;
+
+	private boolean closed;
+
+	/**
+	 * Constructs ParallelGzipOutputStream with the default block size on the common fork-join pool
+	 *
+	 * @param out  the stream of the compressed data
+	 */
+	public ParallelGzipOutputStream(OutputStream out) {
+		this(out, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION, ForkJoinPool.commonPool(),
+				ForkJoinPool.getCommonPoolParallelism() * 2);
+	}
+
+	/**
+	 * Constructs ParallelGzipOutputStream
+	 *
+	 * @param out        the stream of the compressed data
+	 * @param blockSize  number of bytes of a block
+	 * @param level      compression level (Deflater)
+	 * @param pool       the threads which compress the blocks
+	 * @param window     max number of blocks compressed or waiting to be written
+	 */
+	public ParallelGzipOutputStream(OutputStream out, int blockSize, int level, ExecutorService pool, int window) {
+		this.out = out;
+		this.blockSize = Math.max(blockSize, 1024);
+		this.level = level;
+		this.pool = pool;
+		this.window = Math.max(window, 1);
+		this.block = new byte[this.blockSize];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		checkOpen();
+		block[count++] = (byte) b;
+		if (count == blockSize) {
+			submit();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		checkOpen();
+		while (len > 0) {
+			int n = Math.min(len, blockSize - count);
+			System.arraycopy(b, off, block, count, n);
+			count += n;
+			off += n;
+			len -= n;
+			if (count == blockSize) {
+				submit();
+			}
+		}
+	}
+
+	private void checkOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+
+	/**
+	 * Compress the current block, wait for the oldest member if the window is full
+	 */
+	private void submit() throws IOException {
+		final byte[] data = block;
+		final int length = count;
+		pending.add(pool.submit(new Callable<byte[]>() {
+			public byte[] call() {
+				return compress(data, length);
+			}
+		}));
+		block = new byte[blockSize];
+		count = 0;
+		anyMember = true;
+		while (pending.size() >= window) {
+			out.write(ParallelCSVReader.get(pending.poll()));
+		}
+	}
+
+	/**
+	 * Compress a block into a gzip member
+	 */
+	private byte[] compress(byte[] data, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, length);
+		byte[] member = new byte[HEADER_SIZE + length + length / 1000 + 64 + TRAILER_SIZE];
+		Deflater deflater = new Deflater(level, true);
+		int n = HEADER_SIZE;
+		try {
+			deflater.setInput(data, 0, length);
+			deflater.finish();
+			while (!deflater.finished()) {
+				if (n == member.length - TRAILER_SIZE) {
+					member = Arrays.copyOf(member, member.length * 2);
+				}
+				n += deflater.deflate(member, n, member.length - TRAILER_SIZE - n);
+			}
+		}
+		finally {
+			deflater.end();
+		}
+		int size = n + TRAILER_SIZE;
+
+		// header: magic, deflate, FEXTRA, no time, unknown OS
+		member[0] = (byte) 0x1f;
+		member[1] = (byte) 0x8b;
+		member[2] = 8;
+		member[3] = 4;
+		member[9] = (byte) 0xff;
+		putShort(member, 10, 8);
+		member[12] = (byte) SUBFIELD_ID1;
+		member[13] = (byte) SUBFIELD_ID2;
+		putShort(member, 14, 4);
+		putInt(member, 16, size);
+		// trailer: CRC32 and size of the data
+		putInt(member, n, (int) crc.getValue());
+		putInt(member, n + 4, length);
+		return (size == member.length) ? member : Arrays.copyOf(member, size);
+	}
+
+	private static void putShort(byte[] b, int off, int value) {
+		b[off] = (byte) value;
+		b[off + 1] = (byte) (value >>> 8);
+	}
+
+	private static void putInt(byte[] b, int off, int value) {
+		putShort(b, off, value);
+		putShort(b, off + 2, value >>> 16);
+	}
+
+	/**
+	 * Compress the current block and write all the members
+	 */
+	@Override
+	public void flush() throws IOException {
+		checkOpen();
+		if (count > 0) {
+			submit();
+		}
+		while (!pending.isEmpty()) {
+			out.write(ParallelCSVReader.get(pending.poll()));
+		}
+		out.flush();
+	}
+
+	/**
+	 * Write all the members and close the underlying stream.
+	 * An empty stream is written as one empty member, so the file is a valid gzip file.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			if (!anyMember && count == 0) {
+				submit();
+			}
+			flush();
+		}
+		finally {
+			closed = true;
+			for (Future<byte[]> task : pending) {
+				task.cancel(false);
+			}
+			pending.clear();
+			out.close();
+		}
+	}
+}
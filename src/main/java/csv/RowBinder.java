@@ -0,0 +1,677 @@
+package csv;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+* Class RowBinder
+* Creates objects of a type from the rows of a CSV file. The columns of the header row are bound
+* to the properties of the type with the same name (case, spaces, '_' and '-' are ignored):
+*   . a class has a constructor without arguments, its properties are its fields (not static,
+*     transient or final, of the class and its superclasses), set by their setter if there is one
+*   . a record (Java 16) is created by its canonical constructor, its properties are its components
+* The properties are found once per type, each property gets a MethodHandle of its setter or field
+* and a converter of its type, so no reflection is done per row.
+*
+* The cells are converted from the chars of the row, int, long and double without a String:
+*   . String: the cell, the same as CSVReader.getNextRow()
+*   . int, long, double, float, short, byte and their wrappers, BigDecimal, BigInteger
+*   . boolean ("true" or "false", any case), char (a cell of one char), enums (by name)
+*   . LocalDate, LocalTime, LocalDateTime (ISO format)
+* The cells other than String are converted without their enclosing double quotation.
+* An empty or missing cell leaves a primitive to 0 or false and an object to null.
+* @version
+*/
+
+public final class RowBinder<T> {
+
+	/**
+	 * kinds of property, the primitive kinds are set without boxing
+	 */
+	private static final int KIND_INT = 0;
+	private static final int KIND_LONG = 1;
+	private static final int KIND_DOUBLE = 2;
+	private static final int KIND_OBJECT = 3;
+
+	/**
+	 * properties of each type, found once
+	 */
+	private static final ClassValue<TypeModel> MODELS = new ClassValue<TypeModel>() {
+		@Override
+		protected TypeModel computeValue(Class<?> type) {
+			return new TypeModel(type);
+		}
+	};
+
+	private final Class<T> type;
+
+	private final TypeModel model;
+
+	/**
+	 * bound properties
+	 */
+	private final Property[] properties;
+
+	/**
+	 * column of each bound property
+	 */
+	private final int[] columns;
+
+	private RowBinder(Class<T> type, TypeModel model, Property[] properties, int[] columns) {
+		this.type = type;
+		this.model = model;
+		this.properties = properties;
+		this.columns = columns;
+	}
+
+	/**
+	 * Bind the columns of a header row to the properties of a type
+	 *
+	 * @param type    the class or record of the objects
+	 * @param header  the cells of the header row
+	 * @return the binder of the type for files with this header
+	 * @throws IllegalArgumentException if the type cannot be created or no column matches a property
+	 */
+	public static <T> RowBinder<T> of(Class<T> type, List<String> header) {
+		TypeModel model = MODELS.get(type);
+		List<Property> bound = new ArrayList<Property>();
+		List<Integer> boundColumns = new ArrayList<Integer>();
+		boolean[] used = new boolean[model.properties.length];
+		for (int column = 0; column < header.size(); column++) {
+			Integer index = model.byName.get(normalize(header.get(column)));
+			if (index != null && !used[index]) {
+				Property property = model.properties[index];
+				if (property.kind == KIND_OBJECT && property.converter == null) {
+					throw new IllegalArgumentException("Cannot bind " + type.getName() + "." + property.name
+							+ " of type " + property.type.getName());
+				}
+				used[index] = true;
+				bound.add(model.properties[index]);
+				boundColumns.add(column);
+			}
+		}
+		if (bound.isEmpty()) {
+			throw new IllegalArgumentException("No column of the header " + header + " is a property of " + type.getName());
+		}
+		int[] columns = new int[boundColumns.size()];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = boundColumns.get(i);
+		}
+		return new RowBinder<T>(type, model, bound.toArray(new Property[bound.size()]), columns);
+	}
+
+	/**
+	 * @return the name without enclosing double quotation, spaces, '_' and '-', in lower case
+	 */
+	private static String normalize(String name) {
+		String s = name.trim();
+		if (s.length() >= 2 && s.charAt(0) == '"' && s.charAt(s.length() - 1) == '"') {
+			s = s.substring(1, s.length() - 1);
+		}
+		StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c != ' ' && c != '_' && c != '-') {
+				sb.append(c);
+			}
+		}
+		return sb.toString().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * @return the type of the objects
+	 */
+	public Class<T> getType() {
+		return type;
+	}
+
+	/**
+	 * @return the columns bound to a property, in the order of the header
+	 */
+	public int[] getColumns() {
+		return columns.clone();
+	}
+
+	/**
+	 * Create an object from a whole row (no columns selected)
+	 *
+	 * @param row  a row read by CSVReader.getNextRow(CsvRow)
+	 * @return the object
+	 * @throws CSVFormatException if a cell cannot be converted, its row is 0 (CSVReader.readObject() gives the row)
+	 */
+	public T bind(CsvRow row) throws CSVFormatException {
+		return bind(row, columns, 0);
+	}
+
+	/**
+	 * Get the cell of each bound property in the rows of a reader
+	 *
+	 * @param columnSlots  the selected columns of the reader (see CSVReader.selectColumns()), or null
+	 * @return the index of the cell of each property in the rows, -1 if the column is not read
+	 */
+	int[] cellIndexes(int[] columnSlots) {
+		int[] cells = new int[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			int column = columns[i];
+			if (columnSlots == null) {
+				cells[i] = column;
+			}
+			else {
+				cells[i] = (column < columnSlots.length) ? columnSlots[column] : -1;
+			}
+		}
+		return cells;
+	}
+
+	/**
+	 * Create an object from a row
+	 *
+	 * @param row        the row
+	 * @param cells      the index of the cell of each property, -1 if it is missing
+	 * @param rowNumber  number of the row in the file, for the errors
+	 */
+	T bind(CsvRow row, int[] cells, long rowNumber) throws CSVFormatException {
+		if (model.recordConstructor != null) {
+			return bindRecord(row, cells, rowNumber);
+		}
+		Object target;
+		try {
+			target = (Object) model.constructor.invokeExact();
+		}
+		catch (Throwable e) {
+			throw creationError(e);
+		}
+		for (int i = 0; i < properties.length; i++) {
+			int cell = cells[i];
+			if (cell < 0 || cell >= row.size() || row.length(cell) == 0) {
+				// the default value of the new object
+				continue;
+			}
+			Property property = properties[i];
+			try {
+				switch (property.kind) {
+				case KIND_INT:
+					property.setter.invokeExact(target, row.getInt(cell));
+					break;
+				case KIND_LONG:
+					property.setter.invokeExact(target, row.getLong(cell));
+					break;
+				case KIND_DOUBLE:
+					property.setter.invokeExact(target, row.getDouble(cell));
+					break;
+				default:
+					property.setter.invokeExact(target, property.converter.convert(row, cell));
+				}
+			}
+			catch (IllegalArgumentException e) {
+				throw formatError(property, row, cell, rowNumber, columns[i], e);
+			}
+			catch (DateTimeException e) {
+				throw formatError(property, row, cell, rowNumber, columns[i], e);
+			}
+			catch (Throwable e) {
+				throw creationError(e);
+			}
+		}
+		return type.cast(target);
+	}
+
+	private T bindRecord(CsvRow row, int[] cells, long rowNumber) throws CSVFormatException {
+		Object[] args = model.defaults.clone();
+		for (int i = 0; i < properties.length; i++) {
+			int cell = cells[i];
+			if (cell < 0 || cell >= row.size() || row.length(cell) == 0) {
+				continue;
+			}
+			Property property = properties[i];
+			try {
+				switch (property.kind) {
+				case KIND_INT:
+					args[property.argIndex] = row.getInt(cell);
+					break;
+				case KIND_LONG:
+					args[property.argIndex] = row.getLong(cell);
+					break;
+				case KIND_DOUBLE:
+					args[property.argIndex] = row.getDouble(cell);
+					break;
+				default:
+					args[property.argIndex] = property.converter.convert(row, cell);
+				}
+			}
+			catch (IllegalArgumentException e) {
+				throw formatError(property, row, cell, rowNumber, columns[i], e);
+			}
+			catch (DateTimeException e) {
+				throw formatError(property, row, cell, rowNumber, columns[i], e);
+			}
+		}
+		try {
+			return type.cast((Object) model.recordConstructor.invokeExact(args));
+		}
+		catch (Throwable e) {
+			throw creationError(e);
+		}
+	}
+
+	/**
+	 * A wrong value of a conversion (IllegalArgumentException, or DateTimeException for a date or a time) or a setter
+	 */
+	private CSVFormatException formatError(Property property, CsvRow row, int cell, long rowNumber, int column,
+			RuntimeException e) {
+		return new CSVFormatException("Invalid " + property.type.getSimpleName() + " value " + row.toString(cell)
+				+ " of " + type.getSimpleName() + "." + property.name, rowNumber, column, e);
+	}
+
+	/**
+	 * Another error of a constructor or a setter, a checked exception is wrapped
+	 */
+	private RuntimeException creationError(Throwable e) {
+		if (e instanceof RuntimeException) {
+			return (RuntimeException) e;
+		}
+		if (e instanceof Error) {
+			throw (Error) e;
+		}
+		return new IllegalStateException("Cannot create " + type.getName(), e);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("RowBinder[").append(type.getName());
+		for (int i = 0; i < properties.length; i++) {
+			sb.append(i == 0 ? ": " : ", ").append(columns[i]).append("->").append(properties[i].name);
+		}
+		return sb.append("]").toString();
+	}
+
+	/**
+	 * The properties of a type and how to create it
+	 */
+	private static final class TypeModel {
+
+		final Property[] properties;
+
+		/**
+		 * index of each property by its normalized name
+		 */
+		final Map<String, Integer> byName = new HashMap<String, Integer>();
+
+		/**
+		 * creates an empty object: ()Object, null for a record
+		 */
+		final MethodHandle constructor;
+
+		/**
+		 * canonical constructor of a record: (Object[])Object, null for a class
+		 */
+		final MethodHandle recordConstructor;
+
+		/**
+		 * default values of the arguments of the record constructor
+		 */
+		final Object[] defaults;
+
+		TypeModel(Class<?> type) {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			List<Property> found = new ArrayList<Property>();
+			try {
+				Object[] components = recordComponents(type);
+				if (components != null) {
+					Class<?>[] argTypes = new Class<?>[components.length];
+					defaults = new Object[components.length];
+					for (int i = 0; i < components.length; i++) {
+						Method getName = components[i].getClass().getMethod("getName");
+						Method getType = components[i].getClass().getMethod("getType");
+						argTypes[i] = (Class<?>) getType.invoke(components[i]);
+						defaults[i] = argTypes[i].isPrimitive() ? Array.get(Array.newInstance(argTypes[i], 1), 0) : null;
+						found.add(new Property((String) getName.invoke(components[i]), argTypes[i], null, i));
+					}
+					Constructor<?> canonical = type.getDeclaredConstructor(argTypes);
+					if (!setAccessible(canonical)) {
+						throw new IllegalArgumentException("Cannot create " + type.getName());
+					}
+					recordConstructor = lookup.unreflectConstructor(canonical)
+							.asSpreader(Object[].class, components.length)
+							.asType(MethodType.methodType(Object.class, Object[].class));
+					constructor = null;
+				}
+				else {
+					if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+						throw new IllegalArgumentException("Cannot create " + type.getName());
+					}
+					Constructor<?> empty;
+					try {
+						empty = type.getDeclaredConstructor();
+					}
+					catch (NoSuchMethodException e) {
+						throw new IllegalArgumentException("No constructor without arguments in " + type.getName());
+					}
+					if (!setAccessible(empty)) {
+						throw new IllegalArgumentException("Cannot create " + type.getName());
+					}
+					constructor = lookup.unreflectConstructor(empty).asType(MethodType.methodType(Object.class));
+					recordConstructor = null;
+					defaults = null;
+					for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+						for (Field field : c.getDeclaredFields()) {
+							int modifiers = field.getModifiers();
+							if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)
+									|| Modifier.isFinal(modifiers) || field.isSynthetic()) {
+								continue;
+							}
+							MethodHandle setter = setter(lookup, type, field);
+							if (setter != null) {
+								found.add(new Property(field.getName(), field.getType(), setter, -1));
+							}
+						}
+					}
+				}
+			}
+			catch (NoSuchMethodException e) {
+				throw new IllegalArgumentException("Cannot bind " + type.getName(), e);
+			}
+			catch (IllegalAccessException e) {
+				throw new IllegalArgumentException("Cannot bind " + type.getName(), e);
+			}
+			catch (InvocationTargetException e) {
+				throw new IllegalArgumentException("Cannot bind " + type.getName(), e);
+			}
+			properties = found.toArray(new Property[found.size()]);
+			for (int i = 0; i < properties.length; i++) {
+				String name = normalize(properties[i].name);
+				if (!byName.containsKey(name)) {
+					// a field of a subclass hides the field of a superclass
+					byName.put(name, i);
+				}
+			}
+		}
+
+		/**
+		 * @return false if the member cannot be made accessible (SecurityException,
+		 *         or InaccessibleObjectException of Java 9)
+		 */
+		private static boolean setAccessible(AccessibleObject member) {
+			try {
+				member.setAccessible(true);
+				return true;
+			}
+			catch (RuntimeException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * @return the record components of the type, null if it is not a record (or before Java 16)
+		 */
+		private static Object[] recordComponents(Class<?> type) throws IllegalAccessException, InvocationTargetException {
+			Method getRecordComponents;
+			try {
+				getRecordComponents = Class.class.getMethod("getRecordComponents");
+			}
+			catch (NoSuchMethodException e) {
+				return null;
+			}
+			return (Object[]) getRecordComponents.invoke(type);
+		}
+
+		/**
+		 * @return the public setter of a field, or the field, as (Object, value)void,
+		 *         null if the field cannot be set (a field of a module which is not open)
+		 */
+		private static MethodHandle setter(MethodHandles.Lookup lookup, Class<?> type, Field field) throws IllegalAccessException {
+			String name = field.getName();
+			String setterName = "set" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+			MethodHandle handle;
+			try {
+				Method method = type.getMethod(setterName, field.getType());
+				if (Modifier.isStatic(method.getModifiers())) {
+					throw new NoSuchMethodException(setterName);
+				}
+				if (!setAccessible(method)) {
+					return null;
+				}
+				handle = lookup.unreflect(method);
+			}
+			catch (NoSuchMethodException e) {
+				if (!setAccessible(field)) {
+					return null;
+				}
+				handle = lookup.unreflectSetter(field);
+			}
+			Class<?> valueType = field.getType();
+			if (valueType != int.class && valueType != long.class && valueType != double.class) {
+				valueType = Object.class;
+			}
+			return handle.asType(MethodType.methodType(void.class, Object.class, valueType));
+		}
+	}
+
+	/**
+	 * A property of a type: its setter and the converter of its cells
+	 */
+	private static final class Property {
+
+		final String name;
+
+		final Class<?> type;
+
+		final int kind;
+
+		/**
+		 * converter of the cells, for KIND_OBJECT (null if the type is not supported)
+		 */
+		final Converter converter;
+
+		/**
+		 * (Object, value)void, null for a record
+		 */
+		final MethodHandle setter;
+
+		/**
+		 * index in the arguments of the record constructor, -1 for a class
+		 */
+		final int argIndex;
+
+		Property(String name, Class<?> type, MethodHandle setter, int argIndex) {
+			this.name = name;
+			this.type = type;
+			this.setter = setter;
+			this.argIndex = argIndex;
+			if (type == int.class) {
+				kind = KIND_INT;
+			}
+			else if (type == long.class) {
+				kind = KIND_LONG;
+			}
+			else if (type == double.class) {
+				kind = KIND_DOUBLE;
+			}
+			else {
+				kind = KIND_OBJECT;
+			}
+			converter = (kind == KIND_OBJECT) ? Converter.of(type) : null;
+		}
+	}
+
+	/**
+	 * Converts a cell to a value of a type
+	 */
+	private abstract static class Converter {
+
+		/**
+		 * @param row   the row
+		 * @param cell  index of a cell which is not empty
+		 * @return the value
+		 * @throws IllegalArgumentException if the cell is not a value of the type
+		 */
+		abstract Object convert(CsvRow row, int cell);
+
+		/**
+		 * @return the converter of a type, null if the type is not supported
+		 */
+		static Converter of(final Class<?> type) {
+			if (type == String.class) {
+				return new Converter() {
+					Object convert(CsvRow row, int cell) {
+						return row.toString(cell);
+					}
+				};
+			}
+			if (type == Integer.class) {
+				return new Converter() {
+					Object convert(CsvRow row, int cell) {
+						return row.getInt(cell);
+					}
+				};
+			}
+			if (type == Long.class) {
+				return new Converter() {
+					Object convert(CsvRow row, int cell) {
+						return row.getLong(cell);
+					}
+				};
+			}
+			if (type == Double.class) {
+				return new Converter() {
+					Object convert(CsvRow row, int cell) {
+						return row.getDouble(cell);
+					}
+				};
+			}
+			if (type == float.class || type == Float.class) {
+				return new Converter() {
+					Object convert(CsvRow row, int cell) {
+						return Float.parseFloat(text(row, cell));
+					}
+				};
+			}
+			if (type == short.class || type == Short.class) {
+				return new Converter() {
+					Object convert(CsvRow row, int cell) {
+						int value = row.getInt(cell);
+						if (value != (short) value) {
+							throw new NumberFormatException("Value out of range: " + value);
+						}
+						return (short) value;
+					}
+				};
+			}
+			if (type == byte.class || type == Byte.class) {
+				return new Converter() {
+					Object convert(CsvRow row, int cell) {
+						int value = row.getInt(cell);
+						if (value != (byte) value) {
+							throw new NumberFormatException("Value out of range: " + value);
+						}
+						return (byte) value;
+					}
+				};
+			}
+			if (type == boolean.class || type == Boolean.class) {
+				return new Converter() {
+					Object convert(CsvRow row, int cell) {
+						String text = text(row, cell);
+						if (text.equalsIgnoreCase("true")) {
+							return Boolean.TRUE;
+						}
+						if (text.equalsIgnoreCase("false")) {
+							return Boolean.FALSE;
+						}
+						throw new IllegalArgumentException("Not a boolean: " + text);
+					}
+				};
+			}
+			if (type == char.class || type == Character.class) {
+				return new Converter() {
+					Object convert(CsvRow row, int cell) {
+						String text = text(row, cell);
+						if (text.length() != 1) {
+							throw new IllegalArgumentException("Not a char: " + text);
+						}
+						return text.charAt(0);
+					}
+				};
+			}
+			if (type == BigDecimal.class) {
+				return new Converter() {
+					Object convert(CsvRow row, int cell) {
+						return new BigDecimal(text(row, cell));
+					}
+				};
+			}
+			if (type == BigInteger.class) {
+				return new Converter() {
+					Object convert(CsvRow row, int cell) {
+						return new BigInteger(text(row, cell));
+					}
+				};
+			}
+			if (type == LocalDate.class) {
+				return new Converter() {
+					Object convert(CsvRow row, int cell) {
+						return LocalDate.parse(unquoted(row, cell));
+					}
+				};
+			}
+			if (type == LocalTime.class) {
+				return new Converter() {
+					Object convert(CsvRow row, int cell) {
+						return LocalTime.parse(unquoted(row, cell));
+					}
+				};
+			}
+			if (type == LocalDateTime.class) {
+				return new Converter() {
+					Object convert(CsvRow row, int cell) {
+						return LocalDateTime.parse(unquoted(row, cell));
+					}
+				};
+			}
+			if (type.isEnum()) {
+				return new Converter() {
+					@SuppressWarnings({ "unchecked", "rawtypes" })
+					Object convert(CsvRow row, int cell) {
+						return Enum.valueOf((Class) type, text(row, cell));
+					}
+				};
+			}
+			return null;
+		}
+
+		/**
+		 * @return the cell without its enclosing double quotation, as a view
+		 */
+		static CharSequence unquoted(CsvRow row, int cell) {
+			CharSequence chars = row.get(cell);
+			int len = chars.length();
+			if (len >= 2 && chars.charAt(0) == '"' && chars.charAt(len - 1) == '"') {
+				return chars.subSequence(1, len - 1);
+			}
+			return chars;
+		}
+
+		static String text(CsvRow row, int cell) {
+			return unquoted(row, cell).toString();
+		}
+	}
+}
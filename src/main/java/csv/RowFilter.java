@@ -0,0 +1,305 @@
+package csv;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+* Class RowFilter
+* A condition on the cells of a row, evaluated by CSVReader on the chars of the row before
+* any String is created (see CSVReader.setFilter()). A filter is built by the static methods:
+* conditions on one column (equalTo, startsWith, in, between) combined by and, or and not.
+*
+* The cells are compared as CSVReader.getNextRow() returns them. A column missing in a row
+* is an empty cell. The columns are the columns of the file, from 0.
+* @version
+*/
+
+public abstract class RowFilter {
+
+	RowFilter() {
+	}
+
+	/**
+	 * @param row          a row read by CSVReader
+	 * @param columnSlots  the selected columns of the reader, or null
+	 * @return true if the row matches
+	 */
+	abstract boolean matches(CsvRow row, int[] columnSlots);
+
+	/**
+	 * @return the last column used by the filter
+	 */
+	abstract int lastColumn();
+
+	/**
+	 * Add the columns used by the filter to a list, once each
+	 */
+	abstract void addColumns(List<Integer> columns);
+
+	/**
+	 * @return the cell of a column in a row, -1 if the row has no cell for the column
+	 * @throws IllegalStateException if the column is not read
+	 */
+	static int cell(CsvRow row, int[] columnSlots, int column) {
+		int cell = column;
+		if (columnSlots != null) {
+			cell = (column < columnSlots.length) ? columnSlots[column] : -1;
+			if (cell < 0) {
+				throw new IllegalStateException("Column " + column + " of the filter is not selected");
+			}
+		}
+		return (cell < row.size()) ? cell : -1;
+	}
+
+	private static void addColumn(List<Integer> columns, int column) {
+		if (!columns.contains(column)) {
+			columns.add(column);
+		}
+	}
+
+	private static void checkColumn(int column) {
+		if (column < 0) {
+			throw new IllegalArgumentException("Invalid column " + column);
+		}
+	}
+
+	/**
+	 * @return a filter of the rows with a cell equal to a value
+	 */
+	public static RowFilter equalTo(final int column, final String value) {
+		checkColumn(column);
+		return new RowFilter() {
+			boolean matches(CsvRow row, int[] columnSlots) {
+				int cell = cell(row, columnSlots, column);
+				return (cell < 0) ? value.isEmpty() : row.equals(cell, value);
+			}
+
+			int lastColumn() {
+				return column;
+			}
+
+			void addColumns(List<Integer> columns) {
+				addColumn(columns, column);
+			}
+		};
+	}
+
+	/**
+	 * @return a filter of the rows with a cell not equal to a value
+	 */
+	public static RowFilter notEqualTo(int column, String value) {
+		return not(equalTo(column, value));
+	}
+
+	/**
+	 * @return a filter of the rows with a cell starting with a prefix
+	 */
+	public static RowFilter startsWith(final int column, final String prefix) {
+		checkColumn(column);
+		return new RowFilter() {
+			boolean matches(CsvRow row, int[] columnSlots) {
+				int cell = cell(row, columnSlots, column);
+				if (cell < 0) {
+					return prefix.isEmpty();
+				}
+				int len = prefix.length();
+				if (row.length(cell) < len) {
+					return false;
+				}
+				for (int i = 0; i < len; i++) {
+					if (row.charAt(cell, i) != prefix.charAt(i)) {
+						return false;
+					}
+				}
+				return true;
+			}
+
+			int lastColumn() {
+				return column;
+			}
+
+			void addColumns(List<Integer> columns) {
+				addColumn(columns, column);
+			}
+		};
+	}
+
+	/**
+	 * @return a filter of the rows with a cell equal to one of the values
+	 */
+	public static RowFilter in(final int column, String... values) {
+		checkColumn(column);
+		// the values sorted by their String.hashCode(), a cell is looked up by its hash
+		final String[] byHash = values.clone();
+		Arrays.sort(byHash, new Comparator<String>() {
+			public int compare(String a, String b) {
+				return Integer.compare(a.hashCode(), b.hashCode());
+			}
+		});
+		final int[] hashes = new int[byHash.length];
+		for (int i = 0; i < byHash.length; i++) {
+			hashes[i] = byHash[i].hashCode();
+		}
+		return new RowFilter() {
+			boolean matches(CsvRow row, int[] columnSlots) {
+				int cell = cell(row, columnSlots, column);
+				int len = (cell < 0) ? 0 : row.length(cell);
+				int h = 0;
+				for (int i = 0; i < len; i++) {
+					h = 31 * h + row.charAt(cell, i);
+				}
+				int i = Arrays.binarySearch(hashes, h);
+				if (i < 0) {
+					return false;
+				}
+				// the first value with the hash
+				while (i > 0 && hashes[i - 1] == h) {
+					i--;
+				}
+				for (; i < hashes.length && hashes[i] == h; i++) {
+					if ((cell < 0) ? byHash[i].isEmpty() : row.equals(cell, byHash[i])) {
+						return true;
+					}
+				}
+				return false;
+			}
+
+			int lastColumn() {
+				return column;
+			}
+
+			void addColumns(List<Integer> columns) {
+				addColumn(columns, column);
+			}
+		};
+	}
+
+	/**
+	 * @return a filter of the rows with a cell which is a number from min to max (inclusive).
+	 *         An empty cell or a cell which is not a number does not match.
+	 */
+	public static RowFilter between(final int column, final double min, final double max) {
+		checkColumn(column);
+		return new RowFilter() {
+			boolean matches(CsvRow row, int[] columnSlots) {
+				int cell = cell(row, columnSlots, column);
+				if (cell < 0 || !isNumber(row, cell)) {
+					return false;
+				}
+				try {
+					double value = row.getDouble(cell);
+					return value >= min && value <= max;
+				}
+				catch (NumberFormatException e) {
+					return false;
+				}
+			}
+
+			int lastColumn() {
+				return column;
+			}
+
+			void addColumns(List<Integer> columns) {
+				addColumn(columns, column);
+			}
+		};
+	}
+
+	/**
+	 * @return false if the cell does not start like a number, so most texts are rejected without an exception
+	 */
+	private static boolean isNumber(CsvRow row, int cell) {
+		int len = row.length(cell);
+		int i = (len > 0 && row.charAt(cell, 0) == '"') ? 1 : 0;
+		if (i >= len) {
+			return false;
+		}
+		char c = row.charAt(cell, i);
+		return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.';
+	}
+
+	/**
+	 * @return a filter of the rows matching all the filters
+	 */
+	public static RowFilter and(final RowFilter... filters) {
+		final int last = lastColumn(filters);
+		return new RowFilter() {
+			boolean matches(CsvRow row, int[] columnSlots) {
+				for (RowFilter filter : filters) {
+					if (!filter.matches(row, columnSlots)) {
+						return false;
+					}
+				}
+				return true;
+			}
+
+			int lastColumn() {
+				return last;
+			}
+
+			void addColumns(List<Integer> columns) {
+				for (RowFilter filter : filters) {
+					filter.addColumns(columns);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return a filter of the rows matching one of the filters
+	 */
+	public static RowFilter or(final RowFilter... filters) {
+		final int last = lastColumn(filters);
+		return new RowFilter() {
+			boolean matches(CsvRow row, int[] columnSlots) {
+				for (RowFilter filter : filters) {
+					if (filter.matches(row, columnSlots)) {
+						return true;
+					}
+				}
+				return false;
+			}
+
+			int lastColumn() {
+				return last;
+			}
+
+			void addColumns(List<Integer> columns) {
+				for (RowFilter filter : filters) {
+					filter.addColumns(columns);
+				}
+			}
+		};
+	}
+
+	/**
+	 * @return a filter of the rows not matching a filter
+	 */
+	public static RowFilter not(final RowFilter filter) {
+		return new RowFilter() {
+			boolean matches(CsvRow row, int[] columnSlots) {
+				return !filter.matches(row, columnSlots);
+			}
+
+			int lastColumn() {
+				return filter.lastColumn();
+			}
+
+			void addColumns(List<Integer> columns) {
+				filter.addColumns(columns);
+			}
+		};
+	}
+
+	private static int lastColumn(RowFilter[] filters) {
+		if (filters.length == 0) {
+			throw new IllegalArgumentException("No filter");
+		}
+		int last = 0;
+		for (RowFilter filter : filters) {
+			last = Math.max(last, filter.lastColumn());
+		}
+		return last;
+	}
+}
@@ -0,0 +1,21 @@
+package csv;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+* Interface RowHandler
+* Receives the rows read from a CSV file
+* @version
+*/
+
+public interface RowHandler {
+
+	/**
+	 * Handle a row
+	 *
+	 * @param cells  the cells of the row, the same as CSVReader.getNextRow()
+	 * @throws IOException
+	 */
+	void handleRow(List<String> cells) throws IOException;
+}
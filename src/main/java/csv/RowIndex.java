@@ -0,0 +1,330 @@
+package csv;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+/**
+* Class RowIndex
+* Byte offsets of rows of a CSV file, so a reader can go to a row without parsing the rows before it
+* (see CSVReader.seekToRow). The offset of at least one row of each interval rows is kept, the
+* rows are found by the parser so line-feeds in quoted cells are not taken as row ends.
+* 
+* The index is built in parallel by chunks (see ParallelCSVReader) and can be saved in a sidecar
+* file (filename + ".idx") with the size and the modification time of the CSV file, a sidecar
+* of a changed file is not loaded.
+* The offsets are found on the bytes, so the charset of the file must keep SEPARATOR, quote and
+* line-feeds as single ASCII bytes (UTF-8, Shift-JIS, ISO-8859-1...).
+* @version
+*/
+
+public final class RowIndex {
+
+	/**
+	 * Default number of rows between two kept offsets
+	 */
+	public static final int DEFAULT_INTERVAL = 1024;
+
+	/**
+	 * Suffix of the sidecar file
+	 */
+	public static final String SUFFIX = ".idx";
+
+	/**
+	 * "CSVI"
+	 */
+	private static final int MAGIC = 0x43535649;
+
+	private static final int VERSION = 1;
+
+	private final String filename;
+
+	private final long fileSize;
+
+	private final long lastModified;
+
+	private final int interval;
+
+	/**
+	 * number of rows of the file
+	 */
+	private final long rowCount;
+
+	/**
+	 * kept rows (increasing) and their offsets
+	 */
+	private final long[] rows;
+	private final long[] offsets;
+
+	private RowIndex(String filename, long fileSize, long lastModified, int interval, long rowCount,
+			long[] rows, long[] offsets) {
+		this.filename = filename;
+		this.fileSize = fileSize;
+		this.lastModified = lastModified;
+		this.interval = interval;
+		this.rowCount = rowCount;
+		this.rows = rows;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * Build the index of a file on the common fork-join pool
+	 *
+	 * @param filename  the filename of input CSV source
+	 * @param interval  max number of rows between two kept offsets
+	 * @return the index
+	 * @throws IOException
+	 */
+	public static RowIndex build(String filename, int interval) throws IOException {
+		return build(new ParallelCSVReader(filename), interval);
+	}
+
+	/**
+	 * Build the index of a file, each chunk of the reader is indexed by a task of its pool
+	 *
+	 * @param reader    gives the file, the chunks and the pool
+	 * @param interval  max number of rows between two kept offsets
+	 * @return the index
+	 * @throws IOException
+	 */
+	public static RowIndex build(final ParallelCSVReader reader, int interval) throws IOException {
+		if (interval < 1) {
+			throw new IllegalArgumentException("Invalid interval " + interval);
+		}
+		final int step = interval;
+		File file = new File(reader.getFilename());
+		long lastModified = file.lastModified();
+		final long[] rowStarts = reader.findRowStarts();
+
+		// each task keeps the offsets of the rows 0, interval, 2*interval... of its chunk
+		List<Future<long[]>> tasks = new ArrayList<Future<long[]>>();
+		for (int i = 0; i < rowStarts.length - 1; i++) {
+			if (rowStarts[i] < 0) {
+				continue;
+			}
+			final int chunk = i;
+			tasks.add(reader.getPool().submit(new Callable<long[]>() {
+				public long[] call() throws IOException {
+					long[] chunkOffsets = new long[16];
+					int kept = 0;
+					long count = 0;
+					MappedCSVReader chunkReader = reader.openChunk(rowStarts, chunk);
+					try {
+						while (chunkReader.nextRow()) {
+							if (count % step == 0) {
+								if (kept == chunkOffsets.length) {
+									chunkOffsets = Arrays.copyOf(chunkOffsets, kept * 2);
+								}
+								chunkOffsets[kept++] = chunkReader.getRowOffset();
+							}
+							count++;
+						}
+					}
+					finally {
+						chunkReader.close();
+					}
+					// the number of rows of the chunk is the last element
+					long[] result = Arrays.copyOf(chunkOffsets, kept + 1);
+					result[kept] = count;
+					return result;
+				}
+			}));
+		}
+
+		List<long[]> chunks = new ArrayList<long[]>(tasks.size());
+		int size = 0;
+		for (Future<long[]> task : tasks) {
+			long[] chunk = ParallelCSVReader.get(task);
+			chunks.add(chunk);
+			size += chunk.length - 1;
+		}
+		long[] rows = new long[size];
+		long[] offsets = new long[size];
+		long rowCount = 0;
+		int n = 0;
+		for (long[] chunk : chunks) {
+			for (int i = 0; i < chunk.length - 1; i++) {
+				rows[n] = rowCount + (long) i * step;
+				offsets[n++] = chunk[i];
+			}
+			rowCount += chunk[chunk.length - 1];
+		}
+		return new RowIndex(reader.getFilename(), rowStarts[rowStarts.length - 1], lastModified, step,
+				rowCount, rows, offsets);
+	}
+
+	/**
+	 * Load the sidecar file of a CSV file
+	 *
+	 * @param filename  the filename of input CSV source
+	 * @return the index, null if there is no sidecar file or if the CSV file has changed since it was saved
+	 * @throws IOException if the sidecar file cannot be read
+	 */
+	public static RowIndex load(String filename) throws IOException {
+		File sidecar = new File(filename + SUFFIX);
+		if (!sidecar.isFile()) {
+			return null;
+		}
+		File file = new File(filename);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+			long fileSize = in.readLong();
+			long lastModified = in.readLong();
+			if (fileSize != file.length() || lastModified != file.lastModified()) {
+				return null;
+			}
+			int interval = in.readInt();
+			long rowCount = in.readLong();
+			int size = in.readInt();
+			long[] rows = new long[size];
+			long[] offsets = new long[size];
+			long row = 0;
+			long offset = 0;
+			for (int i = 0; i < size; i++) {
+				row += readVarLong(in);
+				offset += readVarLong(in);
+				rows[i] = row;
+				offsets[i] = offset;
+			}
+			return new RowIndex(filename, fileSize, lastModified, interval, rowCount, rows, offsets);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Load the sidecar file of a CSV file, or build the index and save it if the sidecar file
+	 * is missing, has another interval or is older than the CSV file
+	 *
+	 * @param filename  the filename of input CSV source
+	 * @param interval  max number of rows between two kept offsets
+	 * @return the index
+	 * @throws IOException
+	 */
+	public static RowIndex open(String filename, int interval) throws IOException {
+		RowIndex index = load(filename);
+		if (index == null || index.interval != interval) {
+			index = build(filename, interval);
+			index.save();
+		}
+		return index;
+	}
+
+	/**
+	 * Save the index in the sidecar file (filename + ".idx").
+	 * The offsets are written as variable length differences.
+	 *
+	 * @throws IOException
+	 */
+	public void save() throws IOException {
+		File sidecar = new File(filename + SUFFIX);
+		File tmp = new File(filename + SUFFIX + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(fileSize);
+			out.writeLong(lastModified);
+			out.writeInt(interval);
+			out.writeLong(rowCount);
+			out.writeInt(rows.length);
+			long row = 0;
+			long offset = 0;
+			for (int i = 0; i < rows.length; i++) {
+				writeVarLong(out, rows[i] - row);
+				writeVarLong(out, offsets[i] - offset);
+				row = rows[i];
+				offset = offsets[i];
+			}
+		}
+		finally {
+			out.close();
+		}
+		if (!tmp.renameTo(sidecar)) {
+			sidecar.delete();
+			if (!tmp.renameTo(sidecar)) {
+				throw new IOException("Cannot write " + sidecar);
+			}
+		}
+	}
+
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Invalid variable length number in index file");
+	}
+
+	/**
+	 * @return the filename of the indexed CSV file
+	 */
+	public String getFilename() {
+		return filename;
+	}
+
+	/**
+	 * @return max number of rows between two kept offsets
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * @return the number of rows of the file
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Find the last kept row at or before a row
+	 *
+	 * @param row  number of a row, from 0
+	 * @return index of the kept row, -1 if no row is kept (empty file)
+	 */
+	int find(long row) {
+		int i = Arrays.binarySearch(rows, row);
+		return (i >= 0) ? i : -i - 2;
+	}
+
+	/**
+	 * @return number of the i-th kept row
+	 */
+	long getRow(int i) {
+		return rows[i];
+	}
+
+	/**
+	 * @return offset of the i-th kept row
+	 */
+	long getOffset(int i) {
+		return offsets[i];
+	}
+}
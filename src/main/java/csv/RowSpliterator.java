@@ -0,0 +1,88 @@
+package csv;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+* Class RowSpliterator
+* Spliterator of the rows of a CSVReader. The reader can only be read by one thread,
+* so trySplit() reads a batch of rows and gives them to a new array spliterator.
+* Each batch is larger than the previous one.
+* @version
+*/
+
+final class RowSpliterator implements Spliterator<List<String>> {
+
+	/**
+	 * increment of the batch size
+	 */
+	private static final int BATCH_UNIT = 1 << 10;
+
+	/**
+	 * max batch size
+	 */
+	private static final int MAX_BATCH = 1 << 25;
+
+	private final CSVReader reader;
+
+	/**
+	 * size of the previous batch
+	 */
+	private int batch;
+
+	RowSpliterator(CSVReader reader) {
+		this.reader = reader;
+	}
+
+	private List<String> next() {
+		try {
+			return reader.getNextRow();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public boolean tryAdvance(Consumer<? super List<String>> action) {
+		List<String> cells = next();
+		if (cells == null) {
+			return false;
+		}
+		action.accept(cells);
+		return true;
+	}
+
+	public void forEachRemaining(Consumer<? super List<String>> action) {
+		List<String> cells;
+		while ((cells = next()) != null) {
+			action.accept(cells);
+		}
+	}
+
+	public Spliterator<List<String>> trySplit() {
+		int n = Math.min(batch + BATCH_UNIT, MAX_BATCH);
+		Object[] rows = new Object[n];
+		int j = 0;
+		List<String> cells;
+		while (j < n && (cells = next()) != null) {
+			rows[j++] = cells;
+		}
+		if (j == 0) {
+			return null;
+		}
+		batch = j;
+		return Spliterators.spliterator(rows, 0, j, characteristics());
+	}
+
+	public long estimateSize() {
+		return Long.MAX_VALUE;
+	}
+
+	public int characteristics() {
+		return ORDERED | NONNULL;
+	}
+}
@@ -0,0 +1,23 @@
+package csv;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+* Interface RowTransform
+* Transforms the rows of a stage of CsvPipeline. A stage with several threads calls
+* the same transform from all its threads, so it must be thread-safe.
+* @version
+*/
+
+public interface RowTransform {
+
+	/**
+	 * Transform a row
+	 *
+	 * @param cells  the cells of the row, as the previous stage gives them (CSVReader.getNextRow() for the first stage)
+	 * @return the cells of the transformed row, null to drop the row
+	 * @throws IOException
+	 */
+	List<String> transform(List<String> cells) throws IOException;
+}
@@ -0,0 +1,346 @@
+package csv;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+* Class SortRun
+* The rows of a run of CsvSorter: the cells as CSVReader returns them and the numbers of the
+* numeric sort keys, parsed once when the row is added. All the chars are in one buffer and a
+* cell is two offsets in it, so a run of a million rows is a few arrays.
+*
+* A run is written to a run file by Output and read back row by row by Input. The format of a row:
+*   . number of cells (var int)
+*   . each cell: number of chars (var int), then the chars (1 byte below 0x80, 2 bytes below 0x800, else 3 bytes)
+*   . each numeric key: 0 if the cell is not a number, else 1 and the 8 bytes of the number
+* @version
+*/
+
+final class SortRun {
+
+	/**
+	 * chars of all the cells
+	 */
+	char[] chars = new char[1024];
+	int charCount;
+
+	/**
+	 * cell i is chars[bounds[i], bounds[i + 1])
+	 */
+	int[] bounds = new int[64];
+	int cellCount;
+
+	/**
+	 * row i is the cells rowCells[i] to rowCells[i + 1] - 1
+	 */
+	int[] rowCells = new int[16];
+	int rowCount;
+
+	/**
+	 * numbers of the numeric keys, numberKeys per row (see CsvSorter.number())
+	 */
+	long[] numbers;
+
+	/**
+	 * true for a key cell which is not a number
+	 */
+	boolean[] notNumbers;
+
+	private final int numberKeys;
+
+	SortRun(int numberKeys) {
+		this.numberKeys = numberKeys;
+		numbers = new long[16 * numberKeys];
+		notNumbers = new boolean[16 * numberKeys];
+	}
+
+	/**
+	 * @return the number of bytes of the rows in memory (about)
+	 */
+	long size() {
+		return 2L * charCount + 4L * cellCount + (4L + 9L * numberKeys) * rowCount;
+	}
+
+	void clear() {
+		charCount = 0;
+		cellCount = 0;
+		rowCount = 0;
+	}
+
+	/**
+	 * @return the number of cells of a row
+	 */
+	int cells(int row) {
+		return rowCells[row + 1] - rowCells[row];
+	}
+
+	/**
+	 * @return the first char of a cell of a row, cell must be less than cells(row)
+	 */
+	int start(int row, int cell) {
+		return bounds[rowCells[row] + cell];
+	}
+
+	/**
+	 * @return the index after the last char of a cell of a row
+	 */
+	int end(int row, int cell) {
+		return bounds[rowCells[row] + cell + 1];
+	}
+
+	/**
+	 * @return the cells of a row, the same as CSVReader.getNextRow()
+	 */
+	List<String> toList(int row) {
+		int first = rowCells[row];
+		int last = rowCells[row + 1];
+		List<String> cellArray = new ArrayList<String>(last - first);
+		for (int i = first; i < last; i++) {
+			cellArray.add(new String(chars, bounds[i], bounds[i + 1] - bounds[i]));
+		}
+		return cellArray;
+	}
+
+	/**
+	 * Add a row read by CSVReader, the numbers of its keys are set by the caller
+	 *
+	 * @return the index of the row
+	 */
+	int add(CsvRow row) {
+		int size = row.size();
+		int row0 = startRow(size);
+		for (int i = 0; i < size; i++) {
+			int len = row.length(i);
+			ensureChars(len);
+			row.getChars(i, chars, charCount);
+			charCount += len;
+			bounds[++cellCount] = charCount;
+		}
+		rowCells[rowCount] = cellCount;
+		return row0;
+	}
+
+	/**
+	 * Make room for a row of n cells and start it
+	 *
+	 * @return the index of the row
+	 */
+	private int startRow(int n) {
+		if (rowCount + 2 > rowCells.length) {
+			int length = rowCells.length * 2;
+			rowCells = Arrays.copyOf(rowCells, length);
+			numbers = Arrays.copyOf(numbers, length * numberKeys);
+			notNumbers = Arrays.copyOf(notNumbers, length * numberKeys);
+		}
+		if (cellCount + n + 1 > bounds.length) {
+			bounds = Arrays.copyOf(bounds, Math.max(bounds.length * 2, cellCount + n + 1));
+		}
+		rowCells[rowCount] = cellCount;
+		return rowCount++;
+	}
+
+	private void ensureChars(int n) {
+		if (charCount + n > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charCount + n));
+		}
+	}
+
+	/**
+	 * Writer of a run file
+	 */
+	static final class Output {
+
+		private final OutputStream stream;
+
+		private final byte[] buf;
+
+		private int pos;
+
+		Output(File file, int bufferSize) throws IOException {
+			stream = new FileOutputStream(file);
+			buf = new byte[Math.max(bufferSize, 64)];
+		}
+
+		/**
+		 * Write a row of a run
+		 */
+		void write(SortRun run, int row) throws IOException {
+			int first = run.rowCells[row];
+			int last = run.rowCells[row + 1];
+			writeVarInt(last - first);
+			char[] chars = run.chars;
+			int limit = buf.length - 3;
+			for (int i = first; i < last; i++) {
+				int start = run.bounds[i];
+				int end = run.bounds[i + 1];
+				writeVarInt(end - start);
+				for (int j = start; j < end; j++) {
+					if (pos > limit) {
+						flush();
+					}
+					char c = chars[j];
+					if (c < 0x80) {
+						buf[pos++] = (byte) c;
+					}
+					else if (c < 0x800) {
+						buf[pos++] = (byte) (0xC0 | (c >> 6));
+						buf[pos++] = (byte) (0x80 | (c & 0x3F));
+					}
+					else {
+						buf[pos++] = (byte) (0xE0 | (c >> 12));
+						buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+						buf[pos++] = (byte) (0x80 | (c & 0x3F));
+					}
+				}
+			}
+			int keys = run.numberKeys;
+			for (int k = row * keys; k < (row + 1) * keys; k++) {
+				if (pos > buf.length - 9) {
+					flush();
+				}
+				if (run.notNumbers[k]) {
+					buf[pos++] = 0;
+				}
+				else {
+					buf[pos++] = 1;
+					long value = run.numbers[k];
+					for (int shift = 56; shift >= 0; shift -= 8) {
+						buf[pos++] = (byte) (value >>> shift);
+					}
+				}
+			}
+		}
+
+		private void writeVarInt(int value) throws IOException {
+			if (pos > buf.length - 5) {
+				flush();
+			}
+			while ((value & ~0x7F) != 0) {
+				buf[pos++] = (byte) (0x80 | (value & 0x7F));
+				value >>>= 7;
+			}
+			buf[pos++] = (byte) value;
+		}
+
+		private void flush() throws IOException {
+			stream.write(buf, 0, pos);
+			pos = 0;
+		}
+
+		void close() throws IOException {
+			try {
+				flush();
+			}
+			finally {
+				stream.close();
+			}
+		}
+	}
+
+	/**
+	 * Reader of a run file
+	 */
+	static final class Input {
+
+		private final InputStream stream;
+
+		private final byte[] buf;
+
+		private int pos;
+
+		private int limit;
+
+		Input(File file, int bufferSize) throws IOException {
+			stream = new FileInputStream(file);
+			buf = new byte[Math.max(bufferSize, 64)];
+		}
+
+		/**
+		 * Read the next row into a run, the run is cleared first
+		 *
+		 * @return false at the end of the file
+		 */
+		boolean read(SortRun run) throws IOException {
+			run.clear();
+			if (pos == limit && !fill()) {
+				return false;
+			}
+			int size = readVarInt();
+			run.startRow(size);
+			for (int i = 0; i < size; i++) {
+				int len = readVarInt();
+				run.ensureChars(len);
+				char[] chars = run.chars;
+				int n = run.charCount;
+				for (int j = 0; j < len; j++) {
+					int b = readByte();
+					if (b < 0x80) {
+						chars[n++] = (char) b;
+					}
+					else if (b < 0xE0) {
+						chars[n++] = (char) (((b & 0x1F) << 6) | (readByte() & 0x3F));
+					}
+					else {
+						int b2 = readByte();
+						chars[n++] = (char) (((b & 0x0F) << 12) | ((b2 & 0x3F) << 6) | (readByte() & 0x3F));
+					}
+				}
+				run.charCount = n;
+				run.bounds[++run.cellCount] = n;
+			}
+			run.rowCells[1] = run.cellCount;
+			for (int k = 0; k < run.numberKeys; k++) {
+				boolean notNumber = readByte() == 0;
+				run.notNumbers[k] = notNumber;
+				if (!notNumber) {
+					long value = 0;
+					for (int b = 0; b < 8; b++) {
+						value = (value << 8) | readByte();
+					}
+					run.numbers[k] = value;
+				}
+			}
+			return true;
+		}
+
+		private int readVarInt() throws IOException {
+			int value = 0;
+			for (int shift = 0;; shift += 7) {
+				int b = readByte();
+				value |= (b & 0x7F) << shift;
+				if (b < 0x80) {
+					return value;
+				}
+			}
+		}
+
+		private int readByte() throws IOException {
+			if (pos == limit && !fill()) {
+				throw new EOFException("Truncated run file");
+			}
+			return buf[pos++] & 0xFF;
+		}
+
+		private boolean fill() throws IOException {
+			int n = stream.read(buf);
+			if (n <= 0) {
+				return false;
+			}
+			pos = 0;
+			limit = n;
+			return true;
+		}
+
+		void close() throws IOException {
+			stream.close();
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package csv;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+* Class StageMetrics
+* Counts and times of a stage of CsvPipeline: the reader, each transform stage and the writer.
+* The times are the sums of the times of the threads of the stage, in nanoseconds:
+*   . busy: reading, transforming or writing rows
+*   . input wait: waiting for a batch from the previous stage (the stage is starved)
+*   . output wait: waiting for room in the queue of the next stage (the stage is blocked)
+* The bottleneck is the stage which is busy while the stages before it wait for output
+* and the stages after it wait for input; its input queue is usually full.
+* @version
+*/
+
+public final class StageMetrics {
+
+	private final String name;
+
+	private final int threads;
+
+	/**
+	 * queue of the batches given to the stage, null for the reader
+	 */
+	private final BlockingQueue<?> input;
+
+	private final AtomicLong rowsIn = new AtomicLong();
+
+	private final AtomicLong rowsOut = new AtomicLong();
+
+	private final AtomicLong batches = new AtomicLong();
+
+	private final AtomicLong busyNanos = new AtomicLong();
+
+	private final AtomicLong inputWaitNanos = new AtomicLong();
+
+	private final AtomicLong outputWaitNanos = new AtomicLong();
+
+	private final AtomicLong maxQueueDepth = new AtomicLong();
+
+	private volatile long startNanos;
+
+	private volatile long endNanos;
+
+	StageMetrics(String name, int threads, BlockingQueue<?> input) {
+		this.name = name;
+		this.threads = threads;
+		this.input = input;
+	}
+
+	void started(long now) {
+		startNanos = now;
+	}
+
+	void ended() {
+		endNanos = System.nanoTime();
+	}
+
+	/**
+	 * Count a batch handled by the stage
+	 */
+	void batch(int in, int out, long busy) {
+		rowsIn.addAndGet(in);
+		rowsOut.addAndGet(out);
+		batches.incrementAndGet();
+		busyNanos.addAndGet(busy);
+	}
+
+	void inputWait(long nanos) {
+		inputWaitNanos.addAndGet(nanos);
+	}
+
+	void outputWait(long nanos) {
+		outputWaitNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * Record the depth of the input queue after a batch is put in it
+	 */
+	void queued(int depth) {
+		long max;
+		while (depth > (max = maxQueueDepth.get())) {
+			if (maxQueueDepth.compareAndSet(max, depth)) {
+				break;
+			}
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of threads of the stage
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @return the number of rows given to the stage (0 for the reader)
+	 */
+	public long getRowsIn() {
+		return rowsIn.get();
+	}
+
+	/**
+	 * @return the number of rows given by the stage to the next one (the rows written for the writer)
+	 */
+	public long getRowsOut() {
+		return rowsOut.get();
+	}
+
+	public long getBatches() {
+		return batches.get();
+	}
+
+	public long getBusyNanos() {
+		return busyNanos.get();
+	}
+
+	public long getInputWaitNanos() {
+		return inputWaitNanos.get();
+	}
+
+	public long getOutputWaitNanos() {
+		return outputWaitNanos.get();
+	}
+
+	/**
+	 * @return the number of batches waiting in the input queue of the stage now
+	 */
+	public int getQueueDepth() {
+		return (input == null) ? 0 : input.size();
+	}
+
+	/**
+	 * @return the max number of batches which waited in the input queue of the stage
+	 */
+	public long getMaxQueueDepth() {
+		return maxQueueDepth.get();
+	}
+
+	/**
+	 * @return the rows given by the stage per second, since the pipeline started
+	 *         and until the stage ended
+	 */
+	public double getRowsPerSecond() {
+		long start = startNanos;
+		if (start == 0) {
+			return 0;
+		}
+		long end = endNanos;
+		long elapsed = ((end == 0) ? System.nanoTime() : end) - start;
+		return (elapsed <= 0) ? 0 : getRowsOut() * 1e9 / elapsed;
+	}
+
+	@Override
+	public String toString() {
+		return "StageMetrics[" + name + ", threads=" + threads + ", rowsIn=" + getRowsIn() + ", rowsOut=" + getRowsOut()
+				+ ", rowsPerSecond=" + (long) getRowsPerSecond() + ", busyMs=" + getBusyNanos() / 1000000
+				+ ", inputWaitMs=" + getInputWaitNanos() / 1000000 + ", outputWaitMs=" + getOutputWaitNanos() / 1000000
+				+ ", queueDepth=" + getQueueDepth() + ", maxQueueDepth=" + getMaxQueueDepth() + "]";
+	}
+}
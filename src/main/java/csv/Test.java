@@ -1,13 +1,24 @@
 package csv;
 
+import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Test {
 	public static void main(String[] args) throws Exception{
 		readCsvFile();
 		
+		readUsers();
+		
+		filterRows();
+		
+		readWithoutAllocation();
+		
 		writeCsvFile();
 
 	}
@@ -26,6 +37,124 @@ public class Test {
 		reader.close();
 	}
 	
+	/**
+	 * A row of test.csv
+	 */
+	public static class User{
+		int id;
+		String name;
+		String password;
+	}
+	
+	public static void readUsers() throws IOException{
+		CSVReader reader = new CSVReader("test.csv","UTF-8");
+		RowBinder<User> binder = reader.bind(User.class);
+		User user = reader.readObject(binder);
+		while(user != null){
+			System.out.println(user.id + ":" + user.name.trim());
+			user = reader.readObject(binder);
+		}
+		
+		reader.close();
+	}
+	
+	/**
+	 * The rows of rows() and of getNextRow() are the same when a filter is set
+	 */
+	public static void filterRows() throws IOException{
+		File file = File.createTempFile("filter", ".csv");
+		try{
+			CSVWriter writer = new CSVWriter(file.getPath(), "UTF-8");
+			for(int i = 0; i < 1000; i++){
+				writer.appendRow(Arrays.asList((i % 20 == 0) ? "ACTIVE" : "CLOSED", String.valueOf(1000 + i)));
+			}
+			writer.close();
+			
+			List<List<String>> expected = new ArrayList<List<String>>();
+			CSVReader reader = new CSVReader(file.getPath(), "UTF-8");
+			reader.setFilter(RowFilter.equalTo(0, "ACTIVE"));
+			List<String> cells;
+			while((cells = reader.getNextRow()) != null){
+				expected.add(cells);
+			}
+			reader.close();
+			
+			reader = new CSVReader(file.getPath(), "UTF-8");
+			reader.setFilter(RowFilter.equalTo(0, "ACTIVE"));
+			Stream<List<String>> rows = reader.rows();
+			List<List<String>> streamed = rows.collect(Collectors.<List<String>>toList());
+			rows.close();
+			
+			if(expected.size() != 50 || !expected.equals(streamed)){
+				throw new IllegalStateException("rows() returned " + streamed.size() + " rows, getNextRow() " + expected.size());
+			}
+			
+			// the sum of the second column of the filtered rows, the filter is on another column
+			reader = new CSVReader(file.getPath(), "UTF-8");
+			reader.setFilter(RowFilter.equalTo(0, "ACTIVE"));
+			NumericColumn ids = new NumericColumn(1, NumericColumn.Type.LONG);
+			reader.readColumns(ids);
+			reader.close();
+			long sum = 0;
+			for(long id: ids.toLongArray()){
+				sum += id;
+			}
+			if(ids.size() != 50 || sum != 74500){
+				throw new IllegalStateException("readColumns() read " + ids.size() + " rows, sum " + sum);
+			}
+			System.out.println("filter: " + streamed.size() + " rows, sum " + sum);
+		}
+		finally{
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Reading rows into a CsvRow allocates nothing per row once its buffers are large enough
+	 */
+	public static void readWithoutAllocation() throws IOException{
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(!(bean instanceof com.sun.management.ThreadMXBean)){
+			System.out.println("allocation: not measured by this JVM");
+			return;
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		long threadId = Thread.currentThread().getId();
+		
+		File file = File.createTempFile("allocation", ".csv");
+		try{
+			CSVWriter writer = new CSVWriter(file.getPath(), "UTF-8");
+			for(int i = 0; i < 5000; i++){
+				writer.appendRow(Arrays.asList(String.valueOf(i), "name " + i, "a, \"quoted\" cell", "12.5"));
+			}
+			writer.close();
+			
+			CsvRow row = new CsvRow();
+			long rows = 0;
+			long allocated = 0;
+			// the first passes warm up the reader and let the JIT compile the loop
+			for(int pass = 0; pass < 20; pass++){
+				CSVReader reader = new CSVReader(file.getPath(), "UTF-8");
+				reader.getNextRow(row);
+				long before = threads.getThreadAllocatedBytes(threadId);
+				rows = 0;
+				while(reader.getNextRow(row)){
+					rows++;
+				}
+				allocated = threads.getThreadAllocatedBytes(threadId) - before;
+				reader.close();
+			}
+			// a few bytes per buffer of chars read from the file, not one per row
+			if(allocated >= rows){
+				throw new IllegalStateException("getNextRow(CsvRow) allocated " + allocated + " bytes for " + rows + " rows");
+			}
+			System.out.println("allocation: " + allocated + " bytes for " + rows + " rows");
+		}
+		finally{
+			file.delete();
+		}
+	}
+	
 	public static void writeCsvFile() throws IOException{
 		List<String> cells = new ArrayList<String>();
 		cells.add(",col,umn1");